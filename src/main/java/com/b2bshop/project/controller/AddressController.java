@@ -1,13 +1,12 @@
 package com.b2bshop.project.controller;
 
+import com.b2bshop.project.dto.AddressResponse;
 import com.b2bshop.project.model.Address;
 import com.b2bshop.project.service.AddressService;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/api/address")
@@ -20,13 +19,13 @@ public class AddressController {
     }
 
     @GetMapping()
-    public List<Map<String, Object>> getAllProducts(HttpServletRequest request) {
-        return addressService.getAllAddresses(request);
+    public List<AddressResponse> getAllProducts() {
+        return addressService.getAllAddresses();
     }
 
     @PostMapping()
-    public Address createAddress(HttpServletRequest request, @RequestBody JsonNode json) {
-        return addressService.createAddress(request, json);
+    public Address createAddress(@RequestBody JsonNode json) {
+        return addressService.createAddress(json);
     }
 
     @GetMapping("/{addressId}")
@@ -1,10 +1,10 @@
 package com.b2bshop.project.controller;
 
+import com.b2bshop.project.dto.BasketResponse;
 import com.b2bshop.project.model.Basket;
 import com.b2bshop.project.repository.BasketRepository;
 import com.b2bshop.project.service.BasketService;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
@@ -21,18 +21,18 @@ public class BasketController {
     }
 
     @GetMapping()
-    public Map<String, Object> getBasket(HttpServletRequest request) {
-        return basketService.getBasket(request);
+    public BasketResponse getBasket() {
+        return basketService.getBasket();
     }
 
     @PostMapping("/addItem")
-    public Map<String, String> addItemOnBasket(HttpServletRequest request, @RequestBody JsonNode json) {
-        return basketService.addItemOnBasket(request, json);
+    public Map<String, String> addItemOnBasket(@RequestBody JsonNode json) {
+        return basketService.addItemOnBasket(json);
     }
 
     @PostMapping("/removeItem")
-    public Basket removeItemOnBasket(HttpServletRequest request, @RequestBody JsonNode json) {
-        return basketService.removeItem(request, json);
+    public Basket removeItemOnBasket(@RequestBody JsonNode json) {
+        return basketService.removeItem(json);
     }
 
     @GetMapping("/{basketId}")
@@ -41,8 +41,8 @@ public class BasketController {
     }
 
     @PostMapping("/cleanBasket")
-    public Map<String, String> cleanBasket(HttpServletRequest request) {
-        return basketService.cleanBasket(request);
+    public Map<String, String> cleanBasket() {
+        return basketService.cleanBasket();
     }
 
     @DeleteMapping("/{basketId}")
@@ -1,15 +1,16 @@
 package com.b2bshop.project.controller;
 
+import com.b2bshop.project.dto.NamedRef;
 import com.b2bshop.project.model.Brand;
 import com.b2bshop.project.service.BrandService;
+import com.b2bshop.project.util.ConditionalRequests;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/api/brand")
@@ -19,8 +20,11 @@ public class BrandController {
     private BrandService brandService;
 
     @GetMapping
-    public List<Map<String, Object>> getAllBrands(HttpServletRequest request) {
-        return brandService.getAllBrands(request);
+    public List<NamedRef> getAllBrands(ServletWebRequest webRequest) {
+        if (ConditionalRequests.notModified(webRequest, brandService.getAllBrandsETag())) {
+            return null;
+        }
+        return brandService.getAllBrands();
     }
 
     @GetMapping("/{id}")
@@ -29,8 +33,8 @@ public class BrandController {
     }
 
     @PostMapping()
-    public ResponseEntity<Brand> createBrand(HttpServletRequest request, @RequestBody JsonNode json) {
-        Brand createdBrand = brandService.createBrand(request, json);
+    public ResponseEntity<Brand> createBrand(@RequestBody JsonNode json) {
+        Brand createdBrand = brandService.createBrand(json);
         return ResponseEntity.ok(createdBrand);
     }
 
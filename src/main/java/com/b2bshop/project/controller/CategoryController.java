@@ -1,14 +1,15 @@
 package com.b2bshop.project.controller;
 
+import com.b2bshop.project.dto.CategoryNode;
 import com.b2bshop.project.model.Category;
 import com.b2bshop.project.service.CategoryService;
+import com.b2bshop.project.util.ConditionalRequests;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/api/category")
@@ -21,8 +22,11 @@ public class CategoryController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Map<String, Object>>> getAllCategories(HttpServletRequest request) {
-        List<Map<String, Object>> categories = categoryService.getAllCategories(request);
+    public ResponseEntity<List<CategoryNode>> getAllCategories(ServletWebRequest webRequest) {
+        if (ConditionalRequests.notModified(webRequest, categoryService.getAllCategoriesETag())) {
+            return null;
+        }
+        List<CategoryNode> categories = categoryService.getAllCategories();
         return ResponseEntity.ok(categories);
     }
 
@@ -33,13 +37,13 @@ public class CategoryController {
     }
 
     @GetMapping("/{id}")
-    public Map<String, Object> getCategoryById(HttpServletRequest request, @PathVariable Long id) {
-        return categoryService.getCategoryById(request, id);
+    public CategoryNode getCategoryById(@PathVariable Long id) {
+        return categoryService.getCategoryById(id);
     }
 
     @PostMapping
-    public ResponseEntity<Category> createCategory(HttpServletRequest request, @RequestBody JsonNode json) {
-        Category createdCategory = categoryService.createCategory(request, json);
+    public ResponseEntity<Category> createCategory(@RequestBody JsonNode json) {
+        Category createdCategory = categoryService.createCategory(json);
         return ResponseEntity.ok(createdCategory);
     }
 
@@ -1,12 +1,14 @@
 package com.b2bshop.project.controller;
 
+import com.b2bshop.project.dto.CountryResponse;
 import com.b2bshop.project.service.CountryService;
+import com.b2bshop.project.util.ConditionalRequests;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/api/country")
@@ -19,7 +21,10 @@ public class CountryController {
     }
 
     @GetMapping()
-    public List<Map<String, Object>> getAllProducts() {
+    public List<CountryResponse> getAllProducts(ServletWebRequest webRequest) {
+        if (ConditionalRequests.notModified(webRequest, countryService.getAllCountriesETag())) {
+            return null;
+        }
         return countryService.getAllCountries();
     }
 }
@@ -4,7 +4,6 @@ import com.b2bshop.project.model.Customer;
 import com.b2bshop.project.repository.CustomerRepository;
 import com.b2bshop.project.service.CustomerService;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -21,8 +20,8 @@ public class CustomerController {
     }
 
     @GetMapping()
-    public List<Customer> getAllCustomers(HttpServletRequest request) {
-        return customerService.getAllCustomers(request);
+    public List<Customer> getAllCustomers() {
+        return customerService.getAllCustomers();
     }
 
 //    @PostMapping()
@@ -35,8 +34,8 @@ public class CustomerController {
 //    }
 
     @PostMapping()
-    public Customer addCustomer(HttpServletRequest request, @RequestBody JsonNode json) {
-        return customerService.createCustomer(request, json);
+    public Customer addCustomer(@RequestBody JsonNode json) {
+        return customerService.createCustomer(json);
     }
 
     @GetMapping("/{customerId}")
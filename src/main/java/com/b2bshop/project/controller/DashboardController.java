@@ -1,24 +1,44 @@
 package com.b2bshop.project.controller;
 
+import com.b2bshop.project.dto.DashboardResponse;
+import com.b2bshop.project.dto.SalesTimeseries;
 import com.b2bshop.project.service.DashboardService;
-import jakarta.servlet.http.HttpServletRequest;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import com.b2bshop.project.service.SalesRollupService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/dashboard")
 public class DashboardController {
     private final DashboardService dashboardService;
+    private final SalesRollupService salesRollupService;
 
-    public DashboardController(DashboardService dashboardService) {
+    public DashboardController(DashboardService dashboardService, SalesRollupService salesRollupService) {
         this.dashboardService = dashboardService;
+        this.salesRollupService = salesRollupService;
     }
 
     @GetMapping()
-    public Map<String, Object> getDashboard(HttpServletRequest request) {
-        return dashboardService.getDashboard(request);
+    public DashboardResponse getDashboard() {
+        return dashboardService.getDashboard();
+    }
+
+    @GetMapping("/timeseries")
+    public SalesTimeseries getTimeseries(@RequestParam(required = false) String granularity,
+                                         @RequestParam(required = false)
+                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                         @RequestParam(required = false)
+                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                         @RequestParam(required = false) Long customerId,
+                                         @RequestParam(required = false) Long productId) {
+        return dashboardService.getTimeseries(granularity, from, to, customerId, productId);
+    }
+
+    @PostMapping("/rollups/rebuild")
+    public Map<String, Object> rebuildRollups() {
+        return salesRollupService.rebuild();
     }
 }
@@ -1,7 +1,6 @@
 package com.b2bshop.project.controller;
 
 import com.b2bshop.project.service.ImageService;
-import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,7 +18,7 @@ public class ImageController {
     private final ImageService imageService;
 
     @PostMapping
-    public List<String> upload(HttpServletRequest request, @RequestParam("file") List<MultipartFile> multipartFiles) {
-        return imageService.upload(request, multipartFiles);
+    public List<String> upload(@RequestParam("file") List<MultipartFile> multipartFiles) {
+        return imageService.upload(multipartFiles);
     }
 }
\ No newline at end of file
@@ -1,11 +1,18 @@
 package com.b2bshop.project.controller;
 
+import com.b2bshop.project.dto.OrderFilterRequest;
 import com.b2bshop.project.model.Order;
+import com.b2bshop.project.service.OrderExportService;
 import com.b2bshop.project.service.OrderService;
+import com.b2bshop.project.util.JsonStreaming;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.servlet.http.HttpServletRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -13,19 +20,65 @@ import java.util.Map;
 @RequestMapping("/api/order")
 public class OrderController {
     private final OrderService orderService;
+    private final OrderExportService orderExportService;
+    private final ObjectMapper objectMapper;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, OrderExportService orderExportService,
+                           ObjectMapper objectMapper) {
         this.orderService = orderService;
+        this.orderExportService = orderExportService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping()
-    public List<Map<String, Object>> getAllOrders(HttpServletRequest request) {
-        return orderService.getAllOrders(request);
+    public void getAllOrders(@RequestParam(name = "status", required = false) List<String> statuses,
+                             @RequestParam(required = false)
+                             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                             @RequestParam(required = false)
+                             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                             @RequestParam(required = false) Long customerId,
+                             @RequestParam(required = false) Long createdById,
+                             @RequestParam(required = false) String orderNumber,
+                             HttpServletResponse response) throws IOException {
+        OrderFilterRequest filter = new OrderFilterRequest(statuses, from, to, customerId, createdById, orderNumber);
+        JsonStreaming.writeArray(response, objectMapper, orderService.getAllOrders(filter));
+    }
+
+    @GetMapping("/page")
+    public Map<String, Object> getOrderPage(@RequestParam(required = false) Integer limit,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(name = "status", required = false) List<String> statuses,
+                                            @RequestParam(required = false)
+                                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                            @RequestParam(required = false)
+                                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                            @RequestParam(required = false) Long customerId,
+                                            @RequestParam(required = false) Long createdById,
+                                            @RequestParam(required = false) String orderNumber) {
+        OrderFilterRequest filter = new OrderFilterRequest(statuses, from, to, customerId, createdById, orderNumber);
+        return orderService.getOrderPage(limit, cursor, filter);
+    }
+
+    // Streams a file download; gzip=true compresses it as orders.csv.gz / orders.ndjson.gz.
+    @GetMapping("/export")
+    public void exportOrders(@RequestParam(required = false) String format,
+                             @RequestParam(defaultValue = "false") boolean gzip,
+                             @RequestParam(name = "status", required = false) List<String> statuses,
+                             @RequestParam(required = false)
+                             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                             @RequestParam(required = false)
+                             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                             @RequestParam(required = false) Long customerId,
+                             @RequestParam(required = false) Long createdById,
+                             @RequestParam(required = false) String orderNumber,
+                             HttpServletResponse response) throws IOException {
+        OrderFilterRequest filter = new OrderFilterRequest(statuses, from, to, customerId, createdById, orderNumber);
+        orderExportService.exportOrders(OrderExportService.Format.from(format), gzip, filter, response);
     }
 
     @PostMapping()
-    public Order addOrder(HttpServletRequest request, @RequestBody JsonNode json) {
-        return orderService.createOrder(request, json);
+    public Order addOrder(@RequestBody JsonNode json) {
+        return orderService.createOrder(json);
     }
 
     @GetMapping("/{id}")
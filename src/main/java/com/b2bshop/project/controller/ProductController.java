@@ -1,13 +1,26 @@
 package com.b2bshop.project.controller;
 
+import com.b2bshop.project.dto.CatalogChanges;
+import com.b2bshop.project.dto.ProductImportStatus;
+import com.b2bshop.project.dto.ProductResponse;
+import com.b2bshop.project.dto.ProductSyncResult;
 import com.b2bshop.project.model.Product;
-import com.b2bshop.project.repository.ProductRepository;
+import com.b2bshop.project.service.CatalogChangeService;
+import com.b2bshop.project.service.ProductImportService;
 import com.b2bshop.project.service.ProductService;
+import com.b2bshop.project.service.ProductSyncService;
 import com.b2bshop.project.service.SecurityService;
+import com.b2bshop.project.util.ConditionalRequests;
+import com.b2bshop.project.util.JsonStreaming;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -15,20 +28,61 @@ import java.util.Map;
 @RequestMapping("/api/product")
 public class ProductController {
     final ProductService productService;
-    final ProductRepository productRepository;
     final SecurityService securityService;
+    final ProductImportService productImportService;
+    final ProductSyncService productSyncService;
+    final CatalogChangeService catalogChangeService;
+    final ObjectMapper objectMapper;
 
-    public ProductController(ProductService productService, ProductRepository productRepository, SecurityService securityService) {
+    public ProductController(ProductService productService, SecurityService securityService,
+                             ProductImportService productImportService, ProductSyncService productSyncService,
+                             CatalogChangeService catalogChangeService, ObjectMapper objectMapper) {
         this.productService = productService;
-        this.productRepository = productRepository;
         this.securityService = securityService;
+        this.productImportService = productImportService;
+        this.productSyncService = productSyncService;
+        this.catalogChangeService = catalogChangeService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping()
-    public List<Map<String, Object>> getAllProducts(HttpServletRequest request,
-                                                    @RequestParam(required = false) Long categoryId,
-                                                    @RequestParam(required = false) List<Long> brandIds) {
-        return productService.getAllProducts(request, categoryId, brandIds);
+    public void getAllProducts(@RequestParam(required = false) Long categoryId,
+                               @RequestParam(required = false) List<Long> brandIds,
+                               ServletWebRequest webRequest, HttpServletResponse response) throws IOException {
+        if (ConditionalRequests.notModified(webRequest, productService.getAllProductsETag())) {
+            return;
+        }
+        JsonStreaming.writeArray(response, objectMapper, productService.getAllProducts(categoryId, brandIds));
+    }
+
+    @GetMapping("/search")
+    public Map<String, Object> searchProducts(@RequestParam String q,
+                                              @RequestParam(required = false) Long categoryId,
+                                              @RequestParam(required = false) List<Long> brandIds,
+                                              @RequestParam(required = false) Integer page,
+                                              @RequestParam(required = false) Integer size,
+                                              @RequestParam(defaultValue = "false") boolean includeFacets) {
+        return productService.searchProducts(q, categoryId, brandIds, page, size, includeFacets);
+    }
+
+    @GetMapping("/page")
+    public Map<String, Object> getProductPage(@RequestParam(required = false) Long categoryId,
+                                              @RequestParam(required = false) List<Long> brandIds,
+                                              @RequestParam(required = false) Integer limit,
+                                              @RequestParam(required = false) String cursor,
+                                              @RequestParam(required = false) String sort,
+                                              @RequestParam(defaultValue = "false") boolean includeTotal,
+                                              @RequestParam(defaultValue = "false") boolean includeFacets) {
+        return productService.getProductPage(categoryId, brandIds, limit, cursor, sort, includeTotal, includeFacets);
+    }
+
+    // Delta sync: products, brands and categories changed after version since, plus deletions. Start with since=0
+    // and keep passing the returned version back, and the returned cursor while there is one.
+    @GetMapping("/changes")
+    public CatalogChanges getChanges(@RequestParam(defaultValue = "0") long since,
+                                     @RequestParam(required = false) Integer limit,
+                                     @RequestParam(required = false) String cursor) {
+        return catalogChangeService.getChanges(since, limit, cursor);
     }
 
 //    @PostMapping()
@@ -40,13 +94,32 @@ public class ProductController {
 //        return createdProducts;
 //    }
 
+    // Body is the raw CSV (with a header row) or NDJSON file; poll the returned job id for progress.
+    @PostMapping("/import")
+    public ResponseEntity<ProductImportStatus> importProducts(@RequestParam(required = false) String format,
+                                                              HttpServletRequest request) throws IOException {
+        ProductImportStatus status = productImportService.startImport(
+                ProductImportService.Format.from(format, request.getContentType()), request.getInputStream());
+        return ResponseEntity.accepted().body(status);
+    }
+
+    @GetMapping("/import/{jobId}")
+    public ProductImportStatus getImportStatus(@PathVariable String jobId) {
+        return productImportService.getStatus(jobId);
+    }
+
+    @PutMapping("/price-stock")
+    public ProductSyncResult syncPricesAndStock(@RequestBody JsonNode json) {
+        return productSyncService.syncPricesAndStock(json);
+    }
+
     @PostMapping()
-    public Product addProduct(HttpServletRequest request, @RequestBody JsonNode json) {
-        return productService.createProduct(request, json);
+    public Product addProduct(@RequestBody JsonNode json) {
+        return productService.createProduct(json);
     }
 
     @GetMapping("/{productId}")
-    public Map<String, Object> findProductMapById(@PathVariable Long productId) {
+    public ProductResponse findProductMapById(@PathVariable Long productId) {
         return productService.findProductById(productId);
     }
 
@@ -57,7 +130,7 @@ public class ProductController {
 
     @DeleteMapping("/{productId}")
     public void deleteProductById(@PathVariable Long productId) {
-        productRepository.deleteById(productId);
+        productService.deleteProductById(productId);
     }
 
 }
@@ -1,10 +1,8 @@
 package com.b2bshop.project.controller;
 
 import com.b2bshop.project.model.User;
-import com.b2bshop.project.repository.UserRepository;
 import com.b2bshop.project.service.UserService;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -15,21 +13,19 @@ import java.util.Map;
 public class UserController {
 
     private final UserService userService;
-    private final UserRepository userRepository;
 
-    public UserController(UserService userService, UserRepository userRepository) {
+    public UserController(UserService userService) {
         this.userService = userService;
-        this.userRepository = userRepository;
     }
 
     @GetMapping()
-    public List<User> getAllUsers(HttpServletRequest request) {
-        return userService.getAllUsers(request);
+    public List<User> getAllUsers() {
+        return userService.getAllUsers();
     }
 
     @GetMapping("/me")
-    public User getMe(HttpServletRequest request) {
-        return userService.getMe(request);
+    public User getMe() {
+        return userService.getMe();
     }
 
 //    @PostMapping()
@@ -42,8 +38,8 @@ public class UserController {
 //    }
 
     @PostMapping()
-    public User addUser(HttpServletRequest request, @RequestBody JsonNode json) {
-        return userService.createUser(request, json);
+    public User addUser(@RequestBody JsonNode json) {
+        return userService.createUser(json);
     }
 
     @PostMapping("/createSystemOwners")
@@ -68,7 +64,7 @@ public class UserController {
 
     @DeleteMapping("/{userId}")
     public void deleteUserById(@PathVariable Long userId) {
-        userRepository.deleteById(userId);
+        userService.deleteUserById(userId);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.b2bshop.project.dto;
+
+public record AddressResponse(
+        Long id,
+        String countryName,
+        String title,
+        String city,
+        String addressLine
+) {
+}
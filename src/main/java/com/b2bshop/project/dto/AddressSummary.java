@@ -0,0 +1,8 @@
+package com.b2bshop.project.dto;
+
+public record AddressSummary(
+        Long id,
+        String address,
+        String city
+) {
+}
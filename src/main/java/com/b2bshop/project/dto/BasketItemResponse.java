@@ -0,0 +1,15 @@
+package com.b2bshop.project.dto;
+
+import java.util.List;
+
+public record BasketItemResponse(
+        String basketItemId,
+        String productId,
+        Integer productStock,
+        String productName,
+        Integer quantity,
+        Double grossPrice,
+        Double salesPrice,
+        List<ImageResponse> images
+) {
+}
@@ -0,0 +1,18 @@
+package com.b2bshop.project.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+// An empty basket serialises as {} like before, hence the nullable components.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BasketResponse(
+        Long id,
+        List<BasketItemResponse> basketItems,
+        Integer basketItemCount,
+        Double subTotal,
+        Double totalCost,
+        Double totalTax
+) {
+    public static final BasketResponse EMPTY = new BasketResponse(null, null, null, null, null, null);
+}
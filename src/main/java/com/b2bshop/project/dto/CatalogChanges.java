@@ -0,0 +1,27 @@
+package com.b2bshop.project.dto;
+
+import com.b2bshop.project.model.CatalogEntityType;
+
+import java.util.List;
+
+// Records changed in (since, version]; pass version as the next since. hasMore means call again right away,
+// resetRequired means the since value is too old (or unknown) and the client has to resync from since=0. A sync
+// from since=0 first pages through records that predate change versions; while it does, version stays 0 and
+// cursor has to be passed back along with since=0.
+public record CatalogChanges(
+        long since,
+        long version,
+        boolean hasMore,
+        boolean resetRequired,
+        List<ProductResponse> products,
+        List<NamedRef> brands,
+        List<CategoryChange> categories,
+        List<Deletion> deleted,
+        String cursor
+) {
+    public record CategoryChange(Long id, String name, Boolean isActive, Long parentCategory) {
+    }
+
+    public record Deletion(CatalogEntityType type, Long id) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.b2bshop.project.dto;
+
+import java.util.List;
+
+public record CategoryNode(
+        Long id,
+        String name,
+        Boolean isActive,
+        Long parentCategory,
+        List<CategoryNode> subCategories
+) {
+}
@@ -0,0 +1,8 @@
+package com.b2bshop.project.dto;
+
+public record CategorySummary(
+        Long id,
+        String name,
+        NamedRef parentCategory
+) {
+}
@@ -0,0 +1,8 @@
+package com.b2bshop.project.dto;
+
+public record CountryResponse(
+        Long id,
+        String countryName,
+        String countryCode
+) {
+}
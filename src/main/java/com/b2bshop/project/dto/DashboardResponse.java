@@ -0,0 +1,15 @@
+package com.b2bshop.project.dto;
+
+public record DashboardResponse(
+        long orderCount,
+        long thisMonthOrderCount,
+        double totalRevenue,
+        double thisMonthTotalRevenue,
+        double cancelledRevenue,
+        double thisMonthCancelledRevenue,
+        long customerCount,
+        long thisMonthCustomerCount,
+        long productCount,
+        long thisMonthProductCount
+) {
+}
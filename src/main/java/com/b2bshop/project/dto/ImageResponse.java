@@ -0,0 +1,8 @@
+package com.b2bshop.project.dto;
+
+public record ImageResponse(
+        Long id,
+        String url,
+        Boolean isThumbnail
+) {
+}
@@ -0,0 +1,7 @@
+package com.b2bshop.project.dto;
+
+public record NamedRef(
+        Long id,
+        String name
+) {
+}
@@ -0,0 +1,16 @@
+package com.b2bshop.project.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Optional order list filters; from and to are inclusive order dates.
+public record OrderFilterRequest(
+        List<String> statuses,
+        LocalDate from,
+        LocalDate to,
+        Long customerId,
+        Long createdById,
+        String orderNumber
+) {
+    public static final OrderFilterRequest NONE = new OrderFilterRequest(null, null, null, null, null, null);
+}
@@ -0,0 +1,14 @@
+package com.b2bshop.project.dto;
+
+import java.util.List;
+
+public record OrderItemResponse(
+        Long id,
+        String name,
+        Double grossPrice,
+        Double salesPrice,
+        Integer quantity,
+        Long refProductId,
+        List<ImageResponse> images
+) {
+}
@@ -0,0 +1,25 @@
+package com.b2bshop.project.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Date;
+import java.util.List;
+
+public record OrderResponse(
+        Long orderId,
+        String orderNumber,
+        String orderNote,
+        Date orderDate,
+        Long createdById,
+        String createdByName,
+        Double totalPrice,
+        Double withoutTaxPrice,
+        Double totalTax,
+        OrderStatusResponse orderStatus,
+        List<OrderItemResponse> orderItems,
+        AddressSummary invoiceAddress,
+        AddressSummary receiverAddress,
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        NamedRef customer
+) {
+}
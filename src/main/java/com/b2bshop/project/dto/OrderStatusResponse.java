@@ -0,0 +1,12 @@
+package com.b2bshop.project.dto;
+
+import com.b2bshop.project.model.OrderStatus;
+
+public record OrderStatusResponse(
+        int id,
+        String status
+) {
+    public static OrderStatusResponse from(OrderStatus orderStatus) {
+        return new OrderStatusResponse(orderStatus.getId(), orderStatus.getStatus());
+    }
+}
@@ -0,0 +1,23 @@
+package com.b2bshop.project.dto;
+
+import java.util.Date;
+import java.util.List;
+
+public record ProductImportStatus(
+        String jobId,
+        String status,
+        String format,
+        int processed,
+        int created,
+        int updated,
+        int failed,
+        List<RowError> errors,
+        boolean errorsTruncated,
+        String message,
+        Date submittedAt,
+        Date startedAt,
+        Date finishedAt
+) {
+    public record RowError(int line, String code, String message) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.b2bshop.project.dto;
+
+import java.util.List;
+
+public record ProductResponse(
+        Long id,
+        String name,
+        String description,
+        Double salesPrice,
+        Double grossPrice,
+        Double vatRate,
+        String code,
+        String gtin,
+        int stock,
+        boolean active,
+        NamedRef brand,
+        List<ImageResponse> images,
+        CategorySummary category
+) {
+    public ProductResponse withImages(List<ImageResponse> images) {
+        return new ProductResponse(id, name, description, salesPrice, grossPrice, vatRate, code, gtin, stock, active,
+                brand, List.copyOf(images), category);
+    }
+}
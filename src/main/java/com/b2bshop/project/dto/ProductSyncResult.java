@@ -0,0 +1,24 @@
+package com.b2bshop.project.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+public record ProductSyncResult(
+        int received,
+        int matched,
+        int updated,
+        int unchanged,
+        List<String> notFound,
+        List<RowError> invalid,
+        List<Change> changes
+) {
+    public record RowError(int index, String message) {
+    }
+
+    // Only the fields that changed are present, each as [old, new].
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Change(Long id, String code, List<Double> salesPrice, List<Double> grossPrice, List<Double> vatRate,
+                         List<Integer> stock) {
+    }
+}
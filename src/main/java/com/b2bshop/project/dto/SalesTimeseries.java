@@ -0,0 +1,17 @@
+package com.b2bshop.project.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record SalesTimeseries(
+        String granularity,
+        LocalDate from,
+        LocalDate to,
+        Long customerId,
+        Long productId,
+        List<Point> points
+) {
+    // quantity is only reported for a single product.
+    public record Point(LocalDate start, long orderCount, double revenue, Long quantity) {
+    }
+}
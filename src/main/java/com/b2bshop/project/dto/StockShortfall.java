@@ -0,0 +1,9 @@
+package com.b2bshop.project.dto;
+
+public record StockShortfall(
+        Long productId,
+        String name,
+        int requested,
+        int available
+) {
+}
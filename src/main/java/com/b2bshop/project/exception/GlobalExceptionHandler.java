@@ -2,11 +2,15 @@ package com.b2bshop.project.exception;
 
 import com.b2bshop.project.exception.*;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
@@ -16,5 +20,30 @@ public class GlobalExceptionHandler {
     public ResponseEntity<String> handleNotFoundException(RuntimeException ex) {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
-}
 
+    @ExceptionHandler({
+            BadRequestException.class
+    })
+    public ResponseEntity<String> handleBadRequestException(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    @ExceptionHandler({
+            ServiceUnavailableException.class
+    })
+    public ResponseEntity<String> handleServiceUnavailableException(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler({
+            InsufficientStockException.class
+    })
+    public ResponseEntity<Map<String, Object>> handleInsufficientStockException(InsufficientStockException ex) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("message", ex.getMessage());
+        body.put("shortfalls", ex.getShortfalls());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+    }
+}
@@ -0,0 +1,21 @@
+package com.b2bshop.project.exception;
+
+import com.b2bshop.project.dto.StockShortfall;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.List;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class InsufficientStockException extends RuntimeException {
+    private final List<StockShortfall> shortfalls;
+
+    public InsufficientStockException(List<StockShortfall> shortfalls) {
+        super("Stock is not enough for " + shortfalls.size() + " basket line(s)");
+        this.shortfalls = List.copyOf(shortfalls);
+    }
+
+    public List<StockShortfall> getShortfalls() {
+        return shortfalls;
+    }
+}
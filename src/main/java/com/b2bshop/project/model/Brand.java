@@ -12,6 +12,8 @@ import org.hibernate.annotations.OnDeleteAction;
 @Entity
 @Table(name = "brand", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"name", "tenant_id"})
+}, indexes = {
+        @Index(name = "idx_brand_change_version", columnList = "change_version")
 })
 @Builder
 @NoArgsConstructor
@@ -28,4 +30,6 @@ public class Brand {
     @OnDelete(action = OnDeleteAction.CASCADE)
     @JoinColumn(name = "tenant_id", nullable = false)
     private Shop shop;
+
+    private Long changeVersion;
 }
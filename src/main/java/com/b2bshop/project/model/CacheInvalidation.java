@@ -0,0 +1,30 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Entity
+@Table(name = "cache_invalidation", indexes = {
+        @Index(name = "idx_cache_invalidation_date_created", columnList = "date_created")
+})
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String region;
+    @Column(nullable = false)
+    private String entryKey;
+    @Column(nullable = false)
+    private Date dateCreated;
+}
@@ -0,0 +1,7 @@
+package com.b2bshop.project.model;
+
+public enum CatalogEntityType {
+    PRODUCT,
+    BRAND,
+    CATEGORY
+}
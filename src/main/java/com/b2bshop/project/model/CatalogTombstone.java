@@ -0,0 +1,35 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Entity
+@Table(name = "catalog_tombstone", indexes = {
+        @Index(name = "idx_catalog_tombstone_tenant_version", columnList = "tenant_id, version"),
+        @Index(name = "idx_catalog_tombstone_date_created", columnList = "date_created")
+})
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogTombstone {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long tenantId;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CatalogEntityType entityType;
+    @Column(nullable = false)
+    private Long entityId;
+    private long version;
+    @Column(nullable = false)
+    private Date dateCreated;
+}
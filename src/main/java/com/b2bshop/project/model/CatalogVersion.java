@@ -0,0 +1,26 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One row per shop: the last catalog change version handed out, the versions of the last brand and category
+// changes, and the newest version whose tombstones have been purged (clients that synced before that have to
+// start over).
+@Data
+@Entity
+@Table(name = "catalog_version")
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogVersion {
+    @Id
+    private Long tenantId;
+
+    private long version;
+    private long brandVersion;
+    private long categoryVersion;
+    private long purgedVersion;
+}
@@ -6,10 +6,12 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Table(name = "category", indexes = {
+        @Index(name = "idx_category_change_version", columnList = "change_version")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -27,13 +29,12 @@ public class Category {
     @JoinColumn(name = "parent_category_id")
     private Category parentCategory;
 
-    @ElementCollection
-    private Set<Long> childCategoryIds = new HashSet<>();
-
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "shop_id")
     private Shop shop;
 
     @OneToMany(mappedBy = "category", fetch = FetchType.LAZY)
     private Set<Product> products;
+
+    private Long changeVersion;
 }
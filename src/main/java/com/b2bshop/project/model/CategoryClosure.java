@@ -0,0 +1,36 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+// Closure table of the category tree: one row per ancestor/descendant pair, including each category with itself
+// at depth 0, so a whole subtree is a single lookup on ancestor_id regardless of depth.
+@Data
+@Entity
+@Table(name = "category_closure", indexes = {
+        @Index(name = "idx_category_closure_descendant", columnList = "descendant_id, depth")
+})
+@IdClass(CategoryClosure.Key.class)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryClosure {
+    @Id
+    private Long ancestorId;
+    @Id
+    private Long descendantId;
+    private int depth;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long ancestorId;
+        private Long descendantId;
+    }
+}
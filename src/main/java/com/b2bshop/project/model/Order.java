@@ -11,7 +11,11 @@ import java.util.List;
 
 @Data
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_shop_date", columnList = "shop_id, order_date"),
+        @Index(name = "idx_orders_shop_status_date", columnList = "shop_id, order_status, order_date"),
+        @Index(name = "idx_orders_customer_date", columnList = "customer_id, order_date")
+})
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,21 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// One row per tenant: the highest order sequence number reserved by any node so far.
+@Data
+@Entity
+@Table(name = "order_number_sequence")
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderNumberSequence {
+    @Id
+    private Long tenantId;
+
+    private long reservedUntil;
+}
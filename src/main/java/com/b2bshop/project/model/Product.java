@@ -13,7 +13,9 @@ import java.util.List;
 
 @Data
 @Entity
-@Table(name = "product")
+@Table(name = "product", indexes = {
+        @Index(name = "idx_product_change_version", columnList = "change_version")
+})
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -51,4 +53,6 @@ public class Product {
     @ManyToOne(fetch = FetchType.EAGER)
     private Brand brand;
     private Date dateCreated;
+    // Per-shop catalog version of the last write, see CatalogChangeService.
+    private Long changeVersion;
 }
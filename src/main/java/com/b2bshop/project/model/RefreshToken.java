@@ -0,0 +1,42 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Entity
+@Table(name = "refresh_token", indexes = {
+        @Index(name = "idx_refresh_token_user_id", columnList = "user_id"),
+        @Index(name = "idx_refresh_token_family_id", columnList = "family_id"),
+        @Index(name = "idx_refresh_token_expires_at", columnList = "expires_at")
+})
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshToken {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // SHA-256 of the opaque token; the token itself is only ever held by the client.
+    @Column(nullable = false, unique = true, length = 64)
+    private String tokenHash;
+    @Column(nullable = false)
+    private Long userId;
+    @Column(nullable = false, length = 36)
+    private String familyId;
+    private int tokenVersion;
+    @Column(nullable = false)
+    private Date sessionStarted;
+    @Column(nullable = false)
+    private Date expiresAt;
+    @Column(nullable = false)
+    private Date dateCreated;
+    private Date dateUsed;
+    private boolean revoked;
+}
@@ -0,0 +1,39 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Placed (not cancelled) orders per customer and day, maintained alongside SalesDailyRollup.
+@Data
+@Entity
+@Table(name = "sales_customer_daily_rollup")
+@IdClass(SalesCustomerDailyRollup.Key.class)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesCustomerDailyRollup {
+    @Id
+    private Long tenantId;
+    @Id
+    private Long customerId;
+    @Id
+    private LocalDate salesDate;
+
+    private long orderCount;
+    private double revenue;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long tenantId;
+        private Long customerId;
+        private LocalDate salesDate;
+    }
+}
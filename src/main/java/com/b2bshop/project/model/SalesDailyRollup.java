@@ -0,0 +1,44 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Per-shop daily sales totals, maintained by SalesRollupService in the same transaction as the writes they count.
+// Orders are bucketed by order date: cancelling an order moves it from the order columns to the cancelled ones on
+// the day it was placed. New customers and products are bucketed by their creation date.
+@Data
+@Entity
+@Table(name = "sales_daily_rollup")
+@IdClass(SalesDailyRollup.Key.class)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesDailyRollup {
+    @Id
+    private Long tenantId;
+    @Id
+    private LocalDate salesDate;
+
+    private long orderCount;
+    private double revenue;
+    private double netRevenue;
+    private double tax;
+    private long cancelledCount;
+    private double cancelledRevenue;
+    private long newCustomers;
+    private long newProducts;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long tenantId;
+        private LocalDate salesDate;
+    }
+}
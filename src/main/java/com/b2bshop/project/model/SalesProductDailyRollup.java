@@ -0,0 +1,41 @@
+package com.b2bshop.project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// Ordered quantity and gross revenue per product and day over placed (not cancelled) orders, keyed by the order
+// item's product reference so deleted products keep their history.
+@Data
+@Entity
+@Table(name = "sales_product_daily_rollup")
+@IdClass(SalesProductDailyRollup.Key.class)
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesProductDailyRollup {
+    @Id
+    private Long tenantId;
+    @Id
+    private Long productId;
+    @Id
+    private LocalDate salesDate;
+
+    private long orderCount;
+    private long quantity;
+    private double revenue;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long tenantId;
+        private Long productId;
+        private LocalDate salesDate;
+    }
+}
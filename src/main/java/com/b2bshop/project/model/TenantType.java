@@ -0,0 +1,6 @@
+package com.b2bshop.project.model;
+
+public enum TenantType {
+    SHOP,
+    CUSTOMER
+}
@@ -51,4 +51,5 @@ public class User implements UserDetails {
     private boolean accountNonExpired;
     private boolean credentialsNonExpired;
     private boolean isActive;
+    private int tokenVersion;
 }
@@ -0,0 +1,18 @@
+package com.b2bshop.project.repository;
+
+import com.b2bshop.project.model.CacheInvalidation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface CacheInvalidationRepository extends JpaRepository<CacheInvalidation, Long> {
+    List<CacheInvalidation> findByDateCreatedAfterOrderByIdAsc(Date since);
+
+    @Modifying
+    @Query("DELETE FROM CacheInvalidation invalidation WHERE invalidation.dateCreated < :before")
+    int deleteCreatedBefore(@Param("before") Date before);
+}
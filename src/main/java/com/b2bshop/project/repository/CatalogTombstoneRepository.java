@@ -0,0 +1,11 @@
+package com.b2bshop.project.repository;
+
+import com.b2bshop.project.model.CatalogTombstone;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface CatalogTombstoneRepository extends JpaRepository<CatalogTombstone, Long> {
+    List<CatalogTombstone> findByTenantIdAndVersionGreaterThanAndVersionLessThanEqualOrderByVersionAsc(
+            Long tenantId, long since, long upTo);
+}
@@ -0,0 +1,66 @@
+package com.b2bshop.project.repository;
+
+import com.b2bshop.project.model.CategoryClosure;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface CategoryClosureRepository extends JpaRepository<CategoryClosure, CategoryClosure.Key> {
+
+    // The new category's own row plus one row per ancestor of its parent.
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+            " SELECT ancestor_id, :categoryId, depth + 1 FROM category_closure WHERE descendant_id = :parentId " +
+            " UNION ALL SELECT :categoryId, :categoryId, 0", nativeQuery = true)
+    int insertCategory(@Param("categoryId") Long categoryId, @Param("parentId") Long parentId);
+
+    boolean existsByAncestorIdAndDescendantId(Long ancestorId, Long descendantId);
+
+    boolean existsByAncestorIdAndDescendantIdNot(Long ancestorId, Long descendantId);
+
+    // Cuts the subtree rooted at categoryId loose from all of its current ancestors; paths inside the subtree stay.
+    @Modifying
+    @Query(value = "DELETE link FROM category_closure link " +
+            " JOIN category_closure subtree ON subtree.descendant_id = link.descendant_id " +
+            "  AND subtree.ancestor_id = :categoryId " +
+            " JOIN category_closure ancestor ON ancestor.ancestor_id = link.ancestor_id " +
+            "  AND ancestor.descendant_id = :categoryId AND ancestor.depth > 0", nativeQuery = true)
+    int detachSubtree(@Param("categoryId") Long categoryId);
+
+    // Links every node of the subtree rooted at categoryId below parentId and all of parentId's ancestors.
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+            " SELECT above.ancestor_id, below.descendant_id, above.depth + below.depth + 1 " +
+            " FROM category_closure above " +
+            " JOIN category_closure below ON below.ancestor_id = :categoryId " +
+            " WHERE above.descendant_id = :parentId", nativeQuery = true)
+    int attachSubtree(@Param("categoryId") Long categoryId, @Param("parentId") Long parentId);
+
+    @Modifying
+    @Query("DELETE FROM CategoryClosure closure " +
+            " WHERE closure.ancestorId = :categoryId OR closure.descendantId = :categoryId")
+    int deleteCategory(@Param("categoryId") Long categoryId);
+
+    @Query(value = "SELECT COUNT(*) FROM category " +
+            " LEFT JOIN category_closure self ON self.ancestor_id = category.id AND self.descendant_id = category.id " +
+            " WHERE self.ancestor_id IS NULL", nativeQuery = true)
+    long countMissing();
+
+    @Modifying
+    @Query(value = "DELETE FROM category_closure", nativeQuery = true)
+    int deleteAllPaths();
+
+    // Rebuilds every path from the parent_category_id pointers; the depth cap stops a corrupt cycle from looping.
+    @Modifying
+    @Query(value = "INSERT INTO category_closure (ancestor_id, descendant_id, depth) " +
+            " WITH RECURSIVE paths (ancestor_id, descendant_id, depth) AS ( " +
+            "   SELECT id, id, 0 FROM category " +
+            "   UNION ALL " +
+            "   SELECT paths.ancestor_id, category.id, paths.depth + 1 FROM paths " +
+            "   JOIN category ON category.parent_category_id = paths.descendant_id " +
+            "   WHERE paths.depth < 100 " +
+            " ) SELECT ancestor_id, descendant_id, MIN(depth) FROM paths GROUP BY ancestor_id, descendant_id",
+            nativeQuery = true)
+    int rebuildFromParents();
+}
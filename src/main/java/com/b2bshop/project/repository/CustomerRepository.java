@@ -8,4 +8,5 @@ import java.util.List;
 
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
     List<Customer> findAllByShop(Shop shop);
+    List<Customer> findAllByShopTenantId(Long tenantId);
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.b2bshop.project.repository;
+
+import com.b2bshop.project.model.RefreshToken;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.Optional;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT refreshToken FROM RefreshToken refreshToken WHERE refreshToken.tokenHash = :tokenHash")
+    Optional<RefreshToken> findByTokenHashForUpdate(@Param("tokenHash") String tokenHash);
+
+    @Modifying
+    @Query("UPDATE RefreshToken refreshToken SET refreshToken.revoked = true " +
+            " WHERE refreshToken.familyId = :familyId AND refreshToken.revoked = false")
+    int revokeFamily(@Param("familyId") String familyId);
+
+    @Modifying
+    @Query("UPDATE RefreshToken refreshToken SET refreshToken.revoked = true " +
+            " WHERE refreshToken.userId = :userId AND refreshToken.revoked = false")
+    int revokeAllByUserId(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("DELETE FROM RefreshToken refreshToken WHERE refreshToken.expiresAt < :before")
+    int deleteExpiredBefore(@Param("before") Date before);
+}
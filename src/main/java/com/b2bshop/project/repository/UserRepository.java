@@ -2,6 +2,8 @@ package com.b2bshop.project.repository;
 
 import com.b2bshop.project.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -11,4 +13,16 @@ public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findAllByCustomerTenantId(Long tenantId);
     List<User> findAllByShopTenantId(Long tenantId);
     List<User> findAllByCustomerShopTenantId(Long tenantId);
+
+    @Query("SELECT user.id FROM User user WHERE user.customer.tenantId = :tenantId")
+    List<Long> findIdsByCustomerTenantId(@Param("tenantId") Long tenantId);
+
+    @Query("SELECT user.id FROM User user WHERE user.shop.tenantId = :tenantId")
+    List<Long> findIdsByShopTenantId(@Param("tenantId") Long tenantId);
+
+    @Query("SELECT CASE WHEN user.isActive = true AND (customer.tenantId IS NULL OR customer.isActive = true) " +
+            " THEN user.tokenVersion ELSE -1 END " +
+            " FROM User user LEFT JOIN user.customer customer " +
+            " WHERE user.id = :userId")
+    Optional<Integer> findActiveTokenVersionById(@Param("userId") Long userId);
 }
\ No newline at end of file
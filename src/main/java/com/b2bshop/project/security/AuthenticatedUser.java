@@ -0,0 +1,47 @@
+package com.b2bshop.project.security;
+
+import com.b2bshop.project.model.Role;
+import com.b2bshop.project.model.TenantType;
+import com.b2bshop.project.model.User;
+
+import java.util.Set;
+
+// tenantId is the user's own shop or customer tenant; shopTenantId is the shop whose catalog the user works in.
+public record AuthenticatedUser(
+        Long userId,
+        String username,
+        Long tenantId,
+        TenantType tenantType,
+        Long shopTenantId,
+        Set<Role> roles
+) {
+    public AuthenticatedUser {
+        roles = roles == null ? Set.of() : Set.copyOf(roles);
+    }
+
+    public static AuthenticatedUser from(User user) {
+        if (user.getShop() != null) {
+            Long shopTenantId = user.getShop().getTenantId();
+            return new AuthenticatedUser(user.getId(), user.getUsername(), shopTenantId, TenantType.SHOP,
+                    shopTenantId, user.getAuthorities());
+        }
+        if (user.getCustomer() != null) {
+            Long parentShopTenantId = user.getCustomer().getShop() != null ? user.getCustomer().getShop().getTenantId() : null;
+            return new AuthenticatedUser(user.getId(), user.getUsername(), user.getCustomer().getTenantId(),
+                    TenantType.CUSTOMER, parentShopTenantId, user.getAuthorities());
+        }
+        return new AuthenticatedUser(user.getId(), user.getUsername(), null, null, null, user.getAuthorities());
+    }
+
+    public boolean hasRole(Role role) {
+        return roles.contains(role);
+    }
+
+    public Long ownShopTenantId() {
+        return tenantType == TenantType.SHOP ? tenantId : null;
+    }
+
+    public Long customerTenantId() {
+        return tenantType == TenantType.CUSTOMER ? tenantId : null;
+    }
+}
@@ -1,7 +1,8 @@
 package com.b2bshop.project.security;
 
 import com.b2bshop.project.service.JwtService;
-import com.b2bshop.project.service.UserService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,7 +10,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -20,12 +20,17 @@ import java.io.IOException;
 @Slf4j
 public class JwtAuthFilter extends OncePerRequestFilter {
 
+    private static final String BEARER_PREFIX = "Bearer ";
+
     private final JwtService jwtService;
-    private final UserService userService;
+    private final TokenVersionRegistry tokenVersionRegistry;
+    private final VerifiedTokenCache verifiedTokenCache;
 
-    public JwtAuthFilter(JwtService jwtService, UserService userService) {
+    public JwtAuthFilter(JwtService jwtService, TokenVersionRegistry tokenVersionRegistry,
+                         VerifiedTokenCache verifiedTokenCache) {
         this.jwtService = jwtService;
-        this.userService = userService;
+        this.tokenVersionRegistry = tokenVersionRegistry;
+        this.verifiedTokenCache = verifiedTokenCache;
     }
 
     @Override
@@ -33,23 +38,31 @@ public class JwtAuthFilter extends OncePerRequestFilter {
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
         String authHeader = request.getHeader("Authorization");
-        String token = null;
-        String userName = null;
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.split("Bearer ")[1];
-            userName = jwtService.extractUser(token);
-        }
+        if (authHeader != null && authHeader.startsWith(BEARER_PREFIX)
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            String token = authHeader.substring(BEARER_PREFIX.length());
+            try {
+                VerifiedTokenCache.VerifiedToken verifiedToken = verifiedTokenCache.get(token, () -> verify(token));
+                AuthenticatedUser principal = verifiedToken.principal();
 
-        if (userName != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails user = userService.loadUserByUsername(userName);
-            log.info("user loaded " + user);
-            if (jwtService.validateToken(token, user)) {
-                log.info("token validated " + token);
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+                if (tokenVersionRegistry.isCurrent(principal.userId(), verifiedToken.tokenVersion())) {
+                    UsernamePasswordAuthenticationToken authToken =
+                            new UsernamePasswordAuthenticationToken(principal, null, principal.roles());
+                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    SecurityContextHolder.getContext().setAuthentication(authToken);
+                } else {
+                    log.debug("Revoked token presented for user {}", principal.userId());
+                }
+            } catch (JwtException | IllegalArgumentException e) {
+                log.debug("Bearer token rejected: {}", e.getMessage());
             }
         }
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    private VerifiedTokenCache.VerifiedToken verify(String token) {
+        Claims claims = jwtService.parseClaims(token);
+        return new VerifiedTokenCache.VerifiedToken(jwtService.toAuthenticatedUser(claims),
+                jwtService.extractTokenVersion(claims), claims.getExpiration().getTime());
+    }
+}
@@ -0,0 +1,45 @@
+package com.b2bshop.project.security;
+
+import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.service.CacheInvalidationService;
+import com.b2bshop.project.service.UserCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+public class TokenVersionRegistry {
+
+    private static final int REVOKED = -1;
+
+    private final Cache<Long, Integer> versions;
+    private final UserRepository userRepository;
+
+    public TokenVersionRegistry(UserRepository userRepository, CacheInvalidationService cacheInvalidationService,
+                                MeterRegistry meterRegistry,
+                                @Value("${security.token-version.maximum-size:100000}") long maximumSize,
+                                @Value("${security.token-version.ttl:PT1M}") Duration ttl) {
+        this.userRepository = userRepository;
+        // expireAfterWrite bounds how long a missed invalidation can keep a revoked token usable on this node.
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, versions, "tokenVersions");
+        cacheInvalidationService.register(UserCache.REGION, key -> versions.invalidate(Long.valueOf(key)));
+    }
+
+    // The version is read inside the cache's per-key computation and invalidate waits for a computation of the
+    // same key, so an invalidation that arrives while the old version is being read removes it right after.
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        int currentVersion = versions.get(userId,
+                id -> userRepository.findActiveTokenVersionById(id).orElse(REVOKED));
+        return currentVersion != REVOKED && currentVersion == tokenVersion;
+    }
+}
@@ -0,0 +1,73 @@
+package com.b2bshop.project.security;
+
+import com.b2bshop.project.service.CacheInvalidationService;
+import com.b2bshop.project.service.UserCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Component
+public class VerifiedTokenCache {
+
+    public record VerifiedToken(AuthenticatedUser principal, int tokenVersion, long expiresAtMillis) {
+    }
+
+    private final Cache<String, VerifiedToken> cache;
+
+    public VerifiedTokenCache(@Value("${security.token-cache.maximum-size:10000}") long maximumSize,
+                              MeterRegistry meterRegistry,
+                              CacheInvalidationService cacheInvalidationService) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                        long remainingMillis = value.expiresAtMillis() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "verifiedTokens");
+        cacheInvalidationService.register(UserCache.REGION, key -> invalidateUser(Long.valueOf(key)));
+    }
+
+    // The verifier only runs on a miss; if it throws, nothing is cached and the exception reaches the caller.
+    public VerifiedToken get(String token, Supplier<VerifiedToken> verifier) {
+        return cache.get(digest(token), key -> verifier.get());
+    }
+
+    private void invalidateUser(Long userId) {
+        cache.asMap().values().removeIf(verifiedToken -> verifiedToken.principal().userId().equals(userId));
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
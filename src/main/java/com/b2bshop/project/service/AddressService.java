@@ -1,5 +1,6 @@
 package com.b2bshop.project.service;
 
+import com.b2bshop.project.dto.AddressResponse;
 import com.b2bshop.project.exception.ResourceNotFoundException;
 import com.b2bshop.project.model.Address;
 import com.b2bshop.project.model.Country;
@@ -8,13 +9,12 @@ import com.b2bshop.project.repository.AddressRepository;
 import com.b2bshop.project.repository.CountryRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.EntityManager;
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.transaction.Transactional;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 import org.springframework.stereotype.Service;
 
-import java.util.*;
+import java.util.List;
 
 @Service
 public class AddressService {
@@ -33,41 +33,26 @@ public class AddressService {
         this.addressRepository = addressRepository;
     }
 
-    public List<Map<String, Object>> getAllAddresses(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        Long tenantId = securityService.returnTenantIdByUsernameOrToken("token", token);
+    public List<AddressResponse> getAllAddresses() {
+        Long tenantId = securityService.getCurrentUser().tenantId();
         Session session = entityManager.unwrap(Session.class);
 
-        String hqlQuery = "SELECT address.id as id, country.name as countryName, address.title as title," +
-                " address.city as city, address.addressLine as addressLine " +
+        String hqlQuery = "SELECT new com.b2bshop.project.dto.AddressResponse(address.id, country.name, address.title," +
+                " address.city, address.addressLine) " +
                 " FROM Address as address " +
                 " JOIN address.customer as customer " +
                 " JOIN address.country as country " +
                 " WHERE customer.id = :tenantId";
 
-        Query query = session.createQuery(hqlQuery);
+        Query<AddressResponse> query = session.createQuery(hqlQuery, AddressResponse.class);
         query.setParameter("tenantId", tenantId);
 
-        List<Object[]> results = query.list();
-
-        List<Map<String, Object>> resultList = new ArrayList<>();
-        for (Object[] result : results) {
-            Map<String, Object> addressMap = new HashMap<>();
-            addressMap.put("id", result[0]);
-            addressMap.put("countryName", result[1]);
-            addressMap.put("title", result[2].toString());
-            addressMap.put("city", result[3].toString());
-            addressMap.put("addressLine", result[4].toString());
-            resultList.add(addressMap);
-        }
-
-        return resultList;
+        return query.list();
     }
 
     @Transactional
-    public Address createAddress(HttpServletRequest request, JsonNode json) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        Long tenantId = securityService.returnTenantIdByUsernameOrToken("token", token);
+    public Address createAddress(JsonNode json) {
+        Long tenantId = securityService.getCurrentUser().tenantId();
         Long countryId = json.get("countryId").asLong();
 
         Address address = new Address();
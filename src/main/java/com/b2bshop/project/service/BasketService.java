@@ -1,17 +1,18 @@
 package com.b2bshop.project.service;
 
+import com.b2bshop.project.dto.BasketItemResponse;
+import com.b2bshop.project.dto.BasketResponse;
+import com.b2bshop.project.dto.ImageResponse;
 import com.b2bshop.project.exception.ResourceNotFoundException;
 import com.b2bshop.project.model.Basket;
 import com.b2bshop.project.model.BasketItem;
 import com.b2bshop.project.model.Product;
-import com.b2bshop.project.model.User;
 import com.b2bshop.project.repository.BasketItemRepository;
 import com.b2bshop.project.repository.BasketRepository;
 import com.b2bshop.project.repository.ProductRepository;
 import com.b2bshop.project.repository.UserRepository;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.EntityManager;
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.transaction.Transactional;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
@@ -23,33 +24,28 @@ import java.util.*;
 public class BasketService {
     private final EntityManager entityManager;
     private final BasketRepository basketRepository;
-    private final JwtService jwtService;
+    private final SecurityService securityService;
     private final UserRepository userRepository;
     private final ProductService productService;
-    private final UserService userService;
 
     private final BasketItemRepository basketItemRepository;
     private final ProductRepository productRepository;
 
-    public BasketService(BasketRepository basketRepository, JwtService jwtService,
+    public BasketService(BasketRepository basketRepository, SecurityService securityService,
                          UserRepository userRepository, EntityManager entityManager,
-                         ProductService productService, UserService userService, BasketItemRepository basketItemRepository,
+                         ProductService productService, BasketItemRepository basketItemRepository,
                          ProductRepository productRepository) {
         this.basketRepository = basketRepository;
-        this.jwtService = jwtService;
+        this.securityService = securityService;
         this.userRepository = userRepository;
         this.productService = productService;
         this.entityManager = entityManager;
-        this.userService = userService;
         this.basketItemRepository = basketItemRepository;
         this.productRepository = productRepository;
     }
 
-    public Map<String, Object> getBasket(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        Optional<User> user = userRepository.findByUsername(userName);
-        Long userId = user.get().getId();
+    public BasketResponse getBasket() {
+        Long userId = securityService.getCurrentUser().userId();
 
         Session session = entityManager.unwrap(Session.class);
         String hqlQuery = "SELECT " +
@@ -65,77 +61,49 @@ public class BasketService {
                 " LEFT JOIN product.images as image " +
                 " WHERE basket.user.id = :userId";
 
-        Query query = session.createQuery(hqlQuery);
+        Query<Object[]> query = session.createQuery(hqlQuery, Object[].class);
         query.setParameter("userId", userId);
 
-        Map<String, Object> basketMap = new HashMap<>();
         List<Object[]> rows = query.list();
+        if (rows.isEmpty()) {
+            return BasketResponse.EMPTY;
+        }
 
-        if (!rows.isEmpty()) {
-            Object[] firstRow = rows.get(0);
-            Long basketId = (Long) firstRow[0];
-            basketMap.put("id", basketId);
-
-            int basketItemCount = 0;
-            double totalCost = 0;
-            double subTotal = 0;
-
-            Map<String, Map<String, Object>> basketItemsMap = new HashMap<>();
-            for (Object[] row : rows) {
-                String productId = String.valueOf(row[2]);
-                String basketItemId = String.valueOf(row[1]);
-                String key = productId + "-" + basketItemId;
-                Map<String, Object> basketItem = basketItemsMap.get(key);
-
-                if (basketItem == null) {
-                    basketItem = new HashMap<>();
-                    basketItem.put("basketItemId", basketItemId);
-                    basketItem.put("productId", productId);
-                    basketItem.put("productStock", row[10]);
-                    basketItem.put("productName", row[3]);
-                    basketItem.put("quantity", row[4]);
-                    basketItem.put("grossPrice", row[5]);
-                    basketItem.put("salesPrice", row[6]);
-                    basketItem.put("images", new ArrayList<Map<String, Object>>());
-                    basketItemsMap.put(key, basketItem);
-                    totalCost += ((Number) row[5]).doubleValue() * ((Number) row[4]).doubleValue();
-                    subTotal += ((Number) row[6]).doubleValue() * ((Number) row[4]).doubleValue();
-                    basketItemCount += 1;
-                }
+        double totalCost = 0;
+        double subTotal = 0;
 
-                Map<String, Object> image = new HashMap<>();
-                image.put("id", row[7]);
-                image.put("url", row[8]);
-                image.put("isThumbnail", row[9]);
-                List<Map<String, Object>> images = (List<Map<String, Object>>) basketItem.get("images");
-                images.add(image);
+        Map<String, Object[]> basketItemRows = new LinkedHashMap<>();
+        Map<String, List<ImageResponse>> basketItemImages = new HashMap<>();
+        for (Object[] row : rows) {
+            String key = row[2] + "-" + row[1];
+            if (basketItemRows.putIfAbsent(key, row) == null) {
+                totalCost += ((Number) row[5]).doubleValue() * ((Number) row[4]).doubleValue();
+                subTotal += ((Number) row[6]).doubleValue() * ((Number) row[4]).doubleValue();
             }
-
-            basketMap.put("basketItems", new ArrayList<>(basketItemsMap.values()));
-
-            basketMap.put("basketItemCount", basketItemCount);
-            basketMap.put("subTotal", subTotal);
-            basketMap.put("totalCost", totalCost);
-            basketMap.put("totalTax", totalCost - subTotal);
+            basketItemImages.computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(new ImageResponse((Long) row[7], (String) row[8], (Boolean) row[9]));
         }
 
-        return basketMap;
+        List<BasketItemResponse> basketItems = new ArrayList<>(basketItemRows.size());
+        basketItemRows.forEach((key, row) -> basketItems.add(new BasketItemResponse(String.valueOf(row[1]),
+                String.valueOf(row[2]), (Integer) row[10], (String) row[3], (Integer) row[4], (Double) row[5],
+                (Double) row[6], basketItemImages.get(key))));
+
+        return new BasketResponse((Long) rows.get(0)[0], basketItems, basketItems.size(), subTotal, totalCost,
+                totalCost - subTotal);
     }
 
     @Transactional
-    public Map<String, String> addItemOnBasket(HttpServletRequest request, JsonNode json) {
+    public Map<String, String> addItemOnBasket(JsonNode json) {
         Map<String, String> response = new HashMap<>();
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userService.findUserByName(userName);
-        Long userId = user.getId();
+        Long userId = securityService.getCurrentUser().userId();
         Basket basket;
         Optional<Basket> optionalBasket = basketRepository.findByUserId(userId);
         if (optionalBasket.isPresent()) {
             basket = optionalBasket.get();
         } else {
             basket = new Basket();
-            basket.setUser(user);
+            basket.setUser(userRepository.getReferenceById(userId));
         }
         List<BasketItem> basketItems = basket.getBasketItems();
 
@@ -194,11 +162,8 @@ public class BasketService {
                 -> new ResourceNotFoundException("Basket could not find by id: " + id));
     }
 
-    public Basket removeItem(HttpServletRequest request, JsonNode json) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userService.findUserByName(userName);
-        Long userId = user.getId();
+    public Basket removeItem(JsonNode json) {
+        Long userId = securityService.getCurrentUser().userId();
         Basket basket;
         Optional<Basket> optionalBasket = basketRepository.findByUserId(userId);
         if (optionalBasket.isPresent()) {
@@ -225,11 +190,8 @@ public class BasketService {
     }
 
     @Transactional
-    public Map<String, String> cleanBasket(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userService.findUserByName(userName);
-        Long userId = user.getId();
+    public Map<String, String> cleanBasket() {
+        Long userId = securityService.getCurrentUser().userId();
         Basket basket;
         Optional<Basket> optionalBasket = basketRepository.findByUserId(userId);
         if (optionalBasket.isPresent()) {
@@ -242,7 +204,7 @@ public class BasketService {
 
             basketItems.clear();
         } else {
-            throw new ResourceNotFoundException("Basket could not find for this user! UserId:" + user.getId());
+            throw new ResourceNotFoundException("Basket could not find for this user! UserId:" + userId);
         }
 
         Map<String, String> response = new HashMap<>();
@@ -1,12 +1,14 @@
 package com.b2bshop.project.service;
 
+import com.b2bshop.project.dto.NamedRef;
 import com.b2bshop.project.exception.ResourceNotFoundException;
 import com.b2bshop.project.model.*;
 import com.b2bshop.project.repository.BrandRepository;
-import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.security.AuthenticatedUser;
+import com.b2bshop.project.util.ConditionalRequests;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.EntityManager;
-import jakarta.servlet.http.HttpServletRequest;
+import jakarta.transaction.Transactional;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 import org.springframework.stereotype.Service;
@@ -17,32 +19,33 @@ import java.util.*;
 public class BrandService {
 
     private final BrandRepository brandRepository;
-    private final JwtService jwtService;
-    private final UserRepository userRepository;
     private final EntityManager entityManager;
     private final SecurityService securityService;
+    private final CatalogCache catalogCache;
+    private final CatalogChangeService catalogChangeService;
 
-    public BrandService(BrandRepository brandRepository, JwtService jwtService, UserRepository userRepository, EntityManager entityManager, SecurityService securityService) {
+    public BrandService(BrandRepository brandRepository, EntityManager entityManager, SecurityService securityService,
+                        CatalogCache catalogCache, CatalogChangeService catalogChangeService) {
         this.brandRepository = brandRepository;
-        this.jwtService = jwtService;
-        this.userRepository = userRepository;
         this.entityManager = entityManager;
         this.securityService = securityService;
+        this.catalogCache = catalogCache;
+        this.catalogChangeService = catalogChangeService;
     }
 
-    public List<Map<String, Object>> getAllBrands(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        Long tenantId = securityService.returnTenantIdByUsernameOrToken("token", token);
+    public List<NamedRef> getAllBrands() {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        Long tenantId = currentUser.tenantId();
         String whereCondition = " ";
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new RuntimeException("User not found"));
-        Set<Role> userRoles = user.getAuthorities();
-        if (userRoles.contains(Role.ROLE_CUSTOMER_USER)) {
-            tenantId = user.getCustomer().getShop().getTenantId();
+        if (currentUser.hasRole(Role.ROLE_CUSTOMER_USER)) {
+            tenantId = currentUser.shopTenantId();
+            if (tenantId != null) {
+                return catalogCache.get(tenantId).getBrands();
+            }
         }
 
         Session session = entityManager.unwrap(Session.class);
-        String hqlQuery = "SELECT brand.id brandId, brand.name brandName" +
+        String hqlQuery = "SELECT new com.b2bshop.project.dto.NamedRef(brand.id, brand.name)" +
                 " FROM Brand as brand " +
                 " JOIN brand.shop as shop " +
                 " WHERE 1 = 1 ";
@@ -52,45 +55,65 @@ public class BrandService {
         }
         hqlQuery += whereCondition;
 
-        Query query = session.createQuery(hqlQuery);
+        Query<NamedRef> query = session.createQuery(hqlQuery, NamedRef.class);
 
         if (tenantId != null) {
             query.setParameter("tenantId", tenantId);
         }
 
-        List<Map<String, Object>> resultList = new ArrayList<>();
-        List<Object[]> rows = query.list();
+        return query.list();
+    }
 
-        for (Object[] row : rows) {
-            Map<String, Object> resultMap = new HashMap<>();
-            resultMap.put("id", row[0]);
-            resultMap.put("name", row[1]);
-            resultList.add(resultMap);
+    // Same scheme as ProductService.getAllProductsETag: the tag comes from catalog_version, and customer listings
+    // served from a snapshot that is still behind it go out untagged.
+    public String getAllBrandsETag() {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        Long tenantId = customer ? currentUser.shopTenantId() : currentUser.ownShopTenantId();
+        if (tenantId == null) {
+            return null;
+        }
+        CatalogVersion catalogVersion = entityManager.find(CatalogVersion.class, tenantId);
+        if (customer && !catalogCache.isCurrent(tenantId, catalogVersion)) {
+            return null;
         }
-        return resultList;
+        return ConditionalRequests.etag("brands", tenantId,
+                catalogVersion != null ? catalogVersion.getBrandVersion() : 0);
     }
 
-    public Brand createBrand(HttpServletRequest request, JsonNode json) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new ResourceNotFoundException("User not found"));
-        Shop shop = user.getShop();
+    @Transactional
+    public Brand createBrand(JsonNode json) {
+        Long shopTenantId = securityService.getCurrentUser().ownShopTenantId();
+        Shop shop = shopTenantId != null ? entityManager.find(Shop.class, shopTenantId) : null;
 
         Brand brand = new Brand();
         brand.setName(json.get("name").asText());
         brand.setShop(shop);
+        brand.setChangeVersion(catalogChangeService.nextVersion(shopTenantId, CatalogEntityType.BRAND));
 
-        return brandRepository.save(brand);
+        brand = brandRepository.save(brand);
+        catalogCache.invalidateTenant(shopTenantId);
+        return brand;
     }
 
+    @Transactional
     public Brand updateBrand(Long id, JsonNode json) {
         Brand brand = findById(id);
+        Long tenantId = brand.getShop() != null ? brand.getShop().getTenantId() : null;
         brand.setName((json.get("name").asText()));
-        return brandRepository.save(brand);
+        brand.setChangeVersion(catalogChangeService.nextVersion(tenantId, CatalogEntityType.BRAND));
+        brand = brandRepository.save(brand);
+        catalogCache.invalidateTenant(tenantId);
+        return brand;
     }
 
+    @Transactional
     public void deleteBrand(Long id) {
-        brandRepository.deleteById(id);
+        Brand brand = findById(id);
+        Long tenantId = brand.getShop() != null ? brand.getShop().getTenantId() : null;
+        catalogChangeService.recordDeletion(tenantId, CatalogEntityType.BRAND, id);
+        brandRepository.delete(brand);
+        catalogCache.invalidateTenant(tenantId);
     }
 
     public Brand findById(Long id) {
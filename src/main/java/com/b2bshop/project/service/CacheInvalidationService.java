@@ -0,0 +1,82 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.model.CacheInvalidation;
+import com.b2bshop.project.repository.CacheInvalidationRepository;
+import com.b2bshop.project.util.TransactionUtils;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Keeps in-process caches coherent across app nodes: every invalidation is written to the cache_invalidation
+// table and applied locally after commit; other nodes pick it up by polling the table.
+@Service
+@Slf4j
+public class CacheInvalidationService {
+
+    private final CacheInvalidationRepository cacheInvalidationRepository;
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    private final Map<Long, Long> appliedInvalidations = new ConcurrentHashMap<>();
+    private final long lookbackMillis;
+    private final long retentionMillis;
+
+    public CacheInvalidationService(CacheInvalidationRepository cacheInvalidationRepository,
+                                    @Value("${cache.invalidation.lookback-ms:60000}") long lookbackMillis,
+                                    @Value("${cache.invalidation.retention-ms:3600000}") long retentionMillis) {
+        this.cacheInvalidationRepository = cacheInvalidationRepository;
+        this.lookbackMillis = lookbackMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    public void register(String region, Consumer<String> listener) {
+        listeners.computeIfAbsent(region, key -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void publish(String region, Object key) {
+        CacheInvalidation invalidation = cacheInvalidationRepository.save(CacheInvalidation.builder()
+                .region(region)
+                .entryKey(String.valueOf(key))
+                .dateCreated(new Date())
+                .build());
+        TransactionUtils.afterCommit(() -> {
+            appliedInvalidations.put(invalidation.getId(), invalidation.getDateCreated().getTime());
+            apply(region, invalidation.getEntryKey());
+        });
+    }
+
+    // Rows are re-read for a lookback window because IDENTITY order is not commit order; applied ids are skipped.
+    @Scheduled(fixedDelayString = "${cache.invalidation.poll-interval-ms:2000}")
+    public void pollInvalidations() {
+        long since = System.currentTimeMillis() - lookbackMillis;
+        for (CacheInvalidation invalidation : cacheInvalidationRepository.findByDateCreatedAfterOrderByIdAsc(new Date(since))) {
+            if (appliedInvalidations.putIfAbsent(invalidation.getId(), invalidation.getDateCreated().getTime()) == null) {
+                apply(invalidation.getRegion(), invalidation.getEntryKey());
+            }
+        }
+        appliedInvalidations.values().removeIf(dateCreated -> dateCreated < since - lookbackMillis);
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${cache.invalidation.purge-interval-ms:600000}")
+    public void purgeInvalidations() {
+        cacheInvalidationRepository.deleteCreatedBefore(new Date(System.currentTimeMillis() - retentionMillis));
+    }
+
+    private void apply(String region, String key) {
+        for (Consumer<String> listener : listeners.getOrDefault(region, List.of())) {
+            try {
+                listener.accept(key);
+            } catch (RuntimeException e) {
+                log.warn("Cache invalidation listener failed for {}:{}", region, key, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.ImageResponse;
+import com.b2bshop.project.dto.NamedRef;
+import com.b2bshop.project.model.CatalogEntityType;
+import com.b2bshop.project.model.CatalogVersion;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Per-shop catalog snapshots for customer browsing. Snapshots are built lazily on first read; writes publish
+// an invalidation that rebuilds (or patches the changed products in) the cached snapshot and swaps it in place,
+// so readers keep being served the previous snapshot until the new one is ready.
+@Component
+@Slf4j
+public class CatalogCache {
+
+    public static final String REGION = "catalog";
+
+    private final LoadingCache<Long, CatalogSnapshot> snapshots;
+    private final ConcurrentMap<Long, CompletableFuture<Void>> refreshes = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refreshExecutor;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheInvalidationService cacheInvalidationService;
+    private final CategoryTreeCache categoryTreeCache;
+    private final boolean warmOnStartup;
+    private final int warmUpThreads;
+
+    public CatalogCache(@Value("${cache.catalog.maximum-weight:500000}") long maximumWeight,
+                        @Value("${cache.catalog.idle-ttl:PT30M}") Duration idleTtl,
+                        @Value("${cache.catalog.refresh-after:PT5M}") Duration refreshAfter,
+                        @Value("${cache.catalog.refresh-threads:2}") int refreshThreads,
+                        @Value("${cache.catalog.warm-on-startup:true}") boolean warmOnStartup,
+                        @Value("${cache.catalog.warm-up-threads:2}") int warmUpThreads,
+                        EntityManager entityManager, PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry, CacheInvalidationService cacheInvalidationService,
+                        CategoryTreeCache categoryTreeCache) {
+        this.entityManager = entityManager;
+        // Invalidations are applied after the writer's commit, so reads need their own transaction.
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+        // Refreshes run blocking JDBC, so they get their own small pool instead of the common ForkJoinPool.
+        AtomicInteger threadCount = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "catalog-refresh-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        ExecutorServiceMetrics.monitor(meterRegistry, refreshExecutor, "catalogRefresh");
+        // refreshAfterWrite is the backstop for a lost invalidation: a snapshot in use is caught up with
+        // catalog_version in the background at least that often, while readers keep getting the current one.
+        this.snapshots = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Long tenantId, CatalogSnapshot snapshot) -> snapshot.weight())
+                .expireAfterAccess(idleTtl)
+                .refreshAfterWrite(refreshAfter)
+                .executor(refreshExecutor)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public CatalogSnapshot load(Long tenantId) {
+                        return transactionTemplate.execute(status -> loadSnapshot(tenantId));
+                    }
+
+                    @Override
+                    public CatalogSnapshot reload(Long tenantId, CatalogSnapshot snapshot) {
+                        return transactionTemplate.execute(status -> catchUp(snapshot));
+                    }
+                });
+        this.cacheInvalidationService = cacheInvalidationService;
+        this.categoryTreeCache = categoryTreeCache;
+        this.warmOnStartup = warmOnStartup;
+        this.warmUpThreads = warmUpThreads;
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "catalogSnapshots");
+        cacheInvalidationService.register(REGION, this::onInvalidation);
+    }
+
+    public CatalogSnapshot get(Long tenantId) {
+        return snapshots.get(tenantId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    // Builds every shop's snapshot (and with it the search index) so the first searches are warm. Loads run on a
+    // few threads of their own, which end once every shop is loaded, so warm-up neither holds more than that many
+    // connections nor delays invalidations on the refresh pool.
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!warmOnStartup) {
+            return;
+        }
+        List<Long> tenantIds = transactionTemplate.execute(status -> entityManager.unwrap(Session.class)
+                .createQuery("SELECT shop.tenantId FROM Shop as shop", Long.class)
+                .list());
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor warmUpExecutor = new ThreadPoolExecutor(warmUpThreads, warmUpThreads, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "catalog-warm-up-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        for (Long tenantId : tenantIds) {
+            warmUpExecutor.execute(() -> {
+                try {
+                    get(tenantId);
+                } catch (RuntimeException e) {
+                    log.warn("Catalog warm-up failed for tenant {}", tenantId, e);
+                }
+            });
+        }
+        warmUpExecutor.shutdown();
+    }
+
+    // Whether the tenant's snapshot has caught up with the given catalog_version row. When it is behind, a catch-up
+    // is started in the background and false is returned.
+    public boolean isCurrent(Long tenantId, CatalogVersion catalogVersion) {
+        if (catalogVersion == null || get(tenantId).getVersions().catalog() >= catalogVersion.getVersion()) {
+            return true;
+        }
+        snapshots.refresh(tenantId);
+        return false;
+    }
+
+    public void invalidateTenant(Long tenantId) {
+        if (tenantId != null) {
+            cacheInvalidationService.publish(REGION, tenantId);
+        }
+    }
+
+    public void invalidateProduct(Long tenantId, Long productId) {
+        if (tenantId != null && productId != null) {
+            cacheInvalidationService.publish(REGION, tenantId + ":" + productId);
+        }
+    }
+
+    // Catches the cached snapshot up with every product change of the shop, without a full reload.
+    public void refreshProducts(Long tenantId) {
+        if (tenantId != null) {
+            cacheInvalidationService.publish(REGION, tenantId + ":*");
+        }
+    }
+
+    // Refreshes of a tenant are chained one after another, so they never run concurrently or out of order, while the
+    // snapshot is rebuilt outside the cache map: readers and other tenants' entries are not held up by the reload.
+    private void onInvalidation(String key) {
+        int separator = key.indexOf(':');
+        Long tenantId = Long.valueOf(separator < 0 ? key : key.substring(0, separator));
+        boolean productOnly = separator >= 0;
+        CompletableFuture<Void> pending = refreshes.compute(tenantId, (id, previous) ->
+                (previous != null ? previous : CompletableFuture.<Void>completedFuture(null))
+                        .thenRunAsync(() -> refresh(id, productOnly), refreshExecutor)
+                        .exceptionally(ex -> {
+                            log.warn("Catalog snapshot refresh failed for {}, dropping it", key, ex);
+                            snapshots.invalidate(id);
+                            return null;
+                        }));
+        pending.whenComplete((result, ex) -> refreshes.remove(tenantId, pending));
+    }
+
+    private void refresh(Long tenantId, boolean productOnly) {
+        // The no-op compute waits for a first load of the tenant that is still running, so an invalidation committed
+        // during that load refreshes its result instead of being lost.
+        CatalogSnapshot snapshot = snapshots.asMap().compute(tenantId, (id, cached) -> cached);
+        if (snapshot == null) {
+            return;
+        }
+        CatalogSnapshot refreshed = transactionTemplate.execute(status ->
+                productOnly ? catchUp(snapshot) : loadSnapshot(tenantId));
+        if (refreshed != snapshot) {
+            // A background reload may have swapped in a newer snapshot meanwhile; never replace it with an older one.
+            snapshots.asMap().computeIfPresent(tenantId, (id, cached) ->
+                    cached.getVersions().catalog() > refreshed.getVersions().catalog() ? cached : refreshed);
+        }
+    }
+
+    private CatalogSnapshot loadSnapshot(Long tenantId) {
+        Session session = entityManager.unwrap(Session.class);
+        // Read first: the rest of this transaction sees exactly the writes up to these versions.
+        CatalogSnapshot.Versions versions = loadVersions(tenantId);
+
+        Query<Object[]> productQuery = session.createQuery(ProductService.PRODUCT_COLUMNS + ProductService.PRODUCT_JOINS +
+                " WHERE shop.id = :tenantId ", Object[].class);
+        productQuery.setParameter("tenantId", tenantId);
+        List<Object[]> productRows = productQuery.list();
+
+        Query<Object[]> imageQuery = session.createQuery("SELECT product.id, image.id, image.url, image.isThumbnail " +
+                " FROM Product as product " +
+                " JOIN product.shop as shop " +
+                " JOIN product.images as image " +
+                " WHERE shop.id = :tenantId ", Object[].class);
+        imageQuery.setParameter("tenantId", tenantId);
+        Map<Long, List<ImageResponse>> productImages = new HashMap<>();
+        for (Object[] row : imageQuery.list()) {
+            productImages.computeIfAbsent((Long) row[0], productId -> new ArrayList<>())
+                    .add(ProductService.toImageResponse(row[1], row[2], row[3]));
+        }
+
+        List<CatalogSnapshot.CatalogProduct> products = new ArrayList<>(productRows.size());
+        for (Object[] row : productRows) {
+            products.add(toCatalogProduct(row, productImages.getOrDefault((Long) row[0], List.of())));
+        }
+
+        Query<NamedRef> brandQuery = session.createQuery("SELECT new com.b2bshop.project.dto.NamedRef(brand.id, brand.name) " +
+                " FROM Brand as brand " +
+                " WHERE brand.shop.tenantId = :tenantId ", NamedRef.class);
+        brandQuery.setParameter("tenantId", tenantId);
+        List<NamedRef> brands = brandQuery.list();
+
+        // Same transaction as the versions above, so the tree is exactly the one at versions.categories().
+        CategoryTree categoryTree = categoryTreeCache.loadTree(tenantId);
+
+        return new CatalogSnapshot(tenantId, versions, products, brands, categoryTree);
+    }
+
+    private CatalogSnapshot.Versions loadVersions(Long tenantId) {
+        CatalogVersion catalogVersion = entityManager.find(CatalogVersion.class, tenantId);
+        return catalogVersion == null ? CatalogSnapshot.Versions.NONE : new CatalogSnapshot.Versions(
+                catalogVersion.getVersion(), catalogVersion.getBrandVersion(), catalogVersion.getCategoryVersion());
+    }
+
+    // Applies every product change committed after the snapshot's version rather than just the invalidated product,
+    // so the snapshot is complete up to the version it reports even when invalidations are applied out of order.
+    // Brand and category changes show up in product rows too, so those fall back to a full reload.
+    private CatalogSnapshot catchUp(CatalogSnapshot snapshot) {
+        Long tenantId = snapshot.getTenantId();
+        CatalogSnapshot.Versions current = snapshot.getVersions();
+        CatalogSnapshot.Versions versions = loadVersions(tenantId);
+        if (versions.brands() != current.brands() || versions.categories() != current.categories()
+                || versions.catalog() < current.catalog()) {
+            return loadSnapshot(tenantId);
+        }
+        if (versions.catalog() == current.catalog()) {
+            return snapshot;
+        }
+
+        Session session = entityManager.unwrap(Session.class);
+        Map<Long, CatalogSnapshot.CatalogProduct> replacements = new HashMap<>();
+        Query<Long> deletedQuery = session.createQuery("SELECT tombstone.entityId FROM CatalogTombstone as tombstone " +
+                " WHERE tombstone.tenantId = :tenantId AND tombstone.entityType = :entityType " +
+                " AND tombstone.version > :version ", Long.class);
+        deletedQuery.setParameter("tenantId", tenantId);
+        deletedQuery.setParameter("entityType", CatalogEntityType.PRODUCT);
+        deletedQuery.setParameter("version", current.catalog());
+        for (Long productId : deletedQuery.list()) {
+            replacements.put(productId, null);
+        }
+
+        Query<Object[]> productQuery = session.createQuery(ProductService.PRODUCT_COLUMNS + ProductService.PRODUCT_JOINS +
+                " WHERE shop.id = :tenantId AND product.changeVersion > :version ", Object[].class);
+        productQuery.setParameter("tenantId", tenantId);
+        productQuery.setParameter("version", current.catalog());
+        List<Object[]> productRows = productQuery.list();
+        Map<Long, List<ImageResponse>> productImages = new HashMap<>();
+        if (!productRows.isEmpty()) {
+            Query<Object[]> imageQuery = session.createQuery("SELECT product.id, image.id, image.url, image.isThumbnail " +
+                    " FROM Product as product " +
+                    " JOIN product.images as image " +
+                    " WHERE product.id IN :productIds ", Object[].class);
+            imageQuery.setParameter("productIds", productRows.stream().map(row -> (Long) row[0]).toList());
+            for (Object[] row : imageQuery.list()) {
+                productImages.computeIfAbsent((Long) row[0], productId -> new ArrayList<>())
+                        .add(ProductService.toImageResponse(row[1], row[2], row[3]));
+            }
+        }
+        for (Object[] row : productRows) {
+            replacements.put((Long) row[0], toCatalogProduct(row, productImages.getOrDefault((Long) row[0], List.of())));
+        }
+        return snapshot.withProducts(replacements, versions);
+    }
+
+    private CatalogSnapshot.CatalogProduct toCatalogProduct(Object[] row, List<ImageResponse> images) {
+        return new CatalogSnapshot.CatalogProduct((Long) row[0], (String) row[1], (Long) row[10], (Long) row[12],
+                Boolean.TRUE.equals(row[9]), row[8] != null ? (Integer) row[8] : 0,
+                ProductService.toProductResponse(row, images));
+    }
+}
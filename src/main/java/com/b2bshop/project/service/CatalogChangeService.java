@@ -0,0 +1,477 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.CatalogChanges;
+import com.b2bshop.project.dto.ImageResponse;
+import com.b2bshop.project.dto.NamedRef;
+import com.b2bshop.project.dto.ProductResponse;
+import com.b2bshop.project.exception.BadRequestException;
+import com.b2bshop.project.model.CatalogEntityType;
+import com.b2bshop.project.model.CatalogTombstone;
+import com.b2bshop.project.model.Role;
+import com.b2bshop.project.repository.CatalogTombstoneRepository;
+import com.b2bshop.project.security.AuthenticatedUser;
+import com.b2bshop.project.util.TransactionUtils;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Per-shop change versions for the delta sync feed. Every catalog write stamps the row it touches (deletes leave a
+// tombstone) with the next value of the shop's catalog_version counter. The counter row stays locked until the
+// writer commits, so versions of one shop become visible in order and a client that has seen version N never
+// misses a later commit with a smaller number.
+@Service
+@Slf4j
+public class CatalogChangeService {
+
+    private static final int DEFAULT_LIMIT = 500;
+    private static final int MAX_LIMIT = 5000;
+    private static final Object VERSIONS_KEY = new Object();
+
+    // Stock moved by orders does not take the shop's counter row, which would serialise every order of a shop on
+    // it. Those rows are marked with PENDING_VERSION and stamped with a real version right after the order commits
+    // (and by a periodic sweep, should a node stop first); until then they are simply not part of the feed yet.
+    public static final long PENDING_VERSION = -1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final CatalogTombstoneRepository catalogTombstoneRepository;
+    private final SecurityService securityService;
+    private final Duration tombstoneRetention;
+    private final CatalogCache catalogCache;
+    private final Set<Long> stampRequests = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor stampExecutor;
+
+    public CatalogChangeService(JdbcTemplate jdbcTemplate, EntityManager entityManager,
+                                PlatformTransactionManager transactionManager,
+                                CatalogTombstoneRepository catalogTombstoneRepository, SecurityService securityService,
+                                @Value("${catalog.changes.tombstone-retention:P30D}") Duration tombstoneRetention,
+                                CatalogCache catalogCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.catalogTombstoneRepository = catalogTombstoneRepository;
+        this.securityService = securityService;
+        this.tombstoneRetention = tombstoneRetention;
+        this.catalogCache = catalogCache;
+        // One thread is plenty: requests are coalesced per shop and each stamp is a single UPDATE.
+        this.stampExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "catalog-stamp");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stampExecutor.shutdownNow();
+    }
+
+    // One version per shop and transaction, so everything a request writes shares a version. The brand and category
+    // counters used for ETags are moved to that version the first time the transaction touches that type.
+    public Long nextVersion(Long tenantId, CatalogEntityType entityType) {
+        if (tenantId == null) {
+            return null;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Catalog versions can only be allocated inside a transaction");
+        }
+        @SuppressWarnings("unchecked")
+        Map<Long, Allocation> allocations =
+                (Map<Long, Allocation>) TransactionSynchronizationManager.getResource(VERSIONS_KEY);
+        if (allocations == null) {
+            allocations = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(VERSIONS_KEY, allocations);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(VERSIONS_KEY);
+                }
+            });
+        }
+        Allocation allocation = allocations.computeIfAbsent(tenantId, this::allocateVersion);
+        if (allocation.entityTypes().add(entityType) && entityType != CatalogEntityType.PRODUCT) {
+            // The counter row is already locked by this transaction, so this cannot wait.
+            jdbcTemplate.update("UPDATE catalog_version SET " +
+                    (entityType == CatalogEntityType.BRAND ? "brand_version" : "category_version") +
+                    " = version WHERE tenant_id = ?", tenantId);
+        }
+        return allocation.version();
+    }
+
+    // LAST_INSERT_ID(expr) hands the incremented value back on this connection without a second read of the row.
+    private Allocation allocateVersion(Long tenantId) {
+        jdbcTemplate.update("INSERT INTO catalog_version (tenant_id, version, purged_version, brand_version, " +
+                " category_version) VALUES (?, LAST_INSERT_ID(1), 0, 0, 0) " +
+                " ON DUPLICATE KEY UPDATE version = LAST_INSERT_ID(version + 1)", tenantId);
+        return new Allocation(jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Long.class),
+                EnumSet.noneOf(CatalogEntityType.class));
+    }
+
+    public void recordDeletion(Long tenantId, CatalogEntityType entityType, Long entityId) {
+        if (tenantId == null) {
+            return;
+        }
+        catalogTombstoneRepository.save(CatalogTombstone.builder()
+                .tenantId(tenantId)
+                .entityType(entityType)
+                .entityId(entityId)
+                .version(nextVersion(tenantId, entityType))
+                .dateCreated(new Date())
+                .build());
+    }
+
+    // Called by writers that set change_version to PENDING_VERSION; the stamp runs once they have committed.
+    public void stockChanged(Long tenantId) {
+        if (tenantId == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            if (stampRequests.add(tenantId)) {
+                stampExecutor.execute(() -> {
+                    stampRequests.remove(tenantId);
+                    stampPending(tenantId);
+                });
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.changes.stamp-interval-ms:5000}")
+    public void stampAllPending() {
+        jdbcTemplate.queryForList("SELECT DISTINCT product_shop.tenant_id FROM product " +
+                " JOIN product_shop ON product_shop.product_id = product.id " +
+                " WHERE product.change_version = ?", Long.class, PENDING_VERSION)
+                .forEach(this::stampPending);
+    }
+
+    // All of a shop's pending rows get one version and the cached snapshot catches up once, however many orders
+    // touched them. The non-locking check first keeps idle sweeps off the counter row.
+    private void stampPending(Long tenantId) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (jdbcTemplate.queryForList("SELECT product.id FROM product " +
+                        " JOIN product_shop ON product_shop.product_id = product.id " +
+                        " WHERE product_shop.tenant_id = ? AND product.change_version = ? LIMIT 1",
+                        Long.class, tenantId, PENDING_VERSION).isEmpty()) {
+                    return;
+                }
+                Long version = nextVersion(tenantId, CatalogEntityType.PRODUCT);
+                int stamped = jdbcTemplate.update("UPDATE product " +
+                        " JOIN product_shop ON product_shop.product_id = product.id " +
+                        " SET product.change_version = ? " +
+                        " WHERE product_shop.tenant_id = ? AND product.change_version = ?",
+                        version, tenantId, PENDING_VERSION);
+                if (stamped > 0) {
+                    catalogCache.refreshProducts(tenantId);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Stamping pending catalog changes failed for tenant {}, the sweep will retry", tenantId, e);
+        }
+    }
+
+    // Rows written before versions existed are treated as version 0, which only a full sync (since=0) returns.
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillVersions() {
+        int stamped = 0;
+        for (String table : List.of("product", "brand", "category")) {
+            stamped += jdbcTemplate.update("UPDATE " + table + " SET change_version = 0 WHERE change_version IS NULL");
+        }
+        if (stamped > 0) {
+            log.info("Stamped {} catalog rows with change version 0", stamped);
+        }
+    }
+
+    // Clients whose since is older than the newest purged tombstone get resetRequired instead of a partial delta.
+    @Scheduled(fixedDelayString = "${catalog.changes.purge-interval-ms:3600000}")
+    public void purgeTombstones() {
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - tombstoneRetention.toMillis());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE catalog_version " +
+                    " JOIN (SELECT tenant_id, MAX(version) AS version FROM catalog_tombstone " +
+                    "       WHERE date_created < ? GROUP BY tenant_id) purged " +
+                    "   ON purged.tenant_id = catalog_version.tenant_id " +
+                    " SET catalog_version.purged_version = GREATEST(catalog_version.purged_version, purged.version)",
+                    cutoff);
+            jdbcTemplate.update("DELETE FROM catalog_tombstone WHERE date_created < ?", cutoff);
+        });
+    }
+
+    public CatalogChanges getChanges(long since, Integer limit, String cursor) {
+        int pageSize = limit == null ? DEFAULT_LIMIT : limit;
+        if (since < 0 || pageSize < 1 || pageSize > MAX_LIMIT) {
+            throw new BadRequestException("since must be >= 0 and limit between 1 and " + MAX_LIMIT);
+        }
+        if (cursor != null && since != 0) {
+            throw new BadRequestException("cursor can only be passed with since=0");
+        }
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        Long tenantId = currentUser.shopTenantId();
+        if (tenantId == null) {
+            throw new BadRequestException("Catalog changes need a shop context");
+        }
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        UnversionedCursor after = cursor != null ? UnversionedCursor.decode(cursor) : UnversionedCursor.START;
+        return readOnlyTransactionTemplate.execute(status -> loadChanges(tenantId, customer, since, after, pageSize));
+    }
+
+    private CatalogChanges loadChanges(Long tenantId, boolean customer, long since, UnversionedCursor after,
+                                       int pageSize) {
+        long current = 0;
+        long purged = 0;
+        List<long[]> counters = jdbcTemplate.query("SELECT version, purged_version FROM catalog_version WHERE tenant_id = ?",
+                (resultSet, rowNum) -> new long[]{resultSet.getLong(1), resultSet.getLong(2)}, tenantId);
+        if (!counters.isEmpty()) {
+            current = counters.get(0)[0];
+            purged = counters.get(0)[1];
+        }
+        if (since > current || (since > 0 && since < purged)) {
+            return new CatalogChanges(since, current, false, true, List.of(), List.of(), List.of(), List.of(), null);
+        }
+
+        ChangePage page = new ChangePage(customer);
+        int versionedPageSize = pageSize;
+        if (since == 0) {
+            UnversionedCursor last = addUnversioned(page, tenantId, after, pageSize);
+            if (page.rows == pageSize) {
+                return page.toChanges(since, 0, true, last.encode());
+            }
+            versionedPageSize = pageSize - page.rows;
+        }
+
+        long from = since + 1;
+        long upTo = cutVersion(tenantId, from, versionedPageSize, current);
+
+        Map<String, Object> range = Map.of("from", from, "upTo", upTo);
+        addProducts(page, tenantId, versionRange("product"), range, null);
+        addBrands(page, tenantId, versionRange("brand"), range, null);
+        addCategories(page, tenantId, versionRange("category"), range, null);
+
+        // A category that left the shop and came back has both a tombstone and a newer live row; the live row wins.
+        for (CatalogTombstone tombstone : catalogTombstoneRepository
+                .findByTenantIdAndVersionGreaterThanAndVersionLessThanEqualOrderByVersionAsc(tenantId, from - 1, upTo)) {
+            if (!page.live.contains(tombstone.getEntityType() + ":" + tombstone.getEntityId())) {
+                page.deleted.add(new CatalogChanges.Deletion(tombstone.getEntityType(), tombstone.getEntityId()));
+            }
+        }
+
+        return page.toChanges(since, upTo, upTo < current, null);
+    }
+
+    // Rows written before change versions existed all carry version 0, which can be the whole catalog, so a sync
+    // from 0 pages through them by (type, id) first and only then moves on to the versioned rows. Returns the
+    // position of the last row added, for the next page's cursor.
+    private UnversionedCursor addUnversioned(ChangePage page, Long tenantId, UnversionedCursor after, int pageSize) {
+        UnversionedCursor last = after;
+        for (CatalogEntityType type : CatalogEntityType.values()) {
+            int remaining = pageSize - page.rows;
+            if (type.compareTo(after.type()) < 0 || remaining == 0) {
+                continue;
+            }
+            Map<String, Object> parameters = Map.of("afterId", type == after.type() ? after.afterId() : 0L);
+            Long lastId = switch (type) {
+                case PRODUCT -> addProducts(page, tenantId, unversioned("product"), parameters, remaining);
+                case BRAND -> addBrands(page, tenantId, unversioned("brand"), parameters, remaining);
+                case CATEGORY -> addCategories(page, tenantId, unversioned("category"), parameters, remaining);
+            };
+            if (lastId != null) {
+                last = new UnversionedCursor(type, lastId);
+            }
+        }
+        return last;
+    }
+
+    private static String versionRange(String alias) {
+        return " AND " + alias + ".changeVersion BETWEEN :from AND :upTo " +
+                " ORDER BY " + alias + ".changeVersion, " + alias + ".id";
+    }
+
+    private static String unversioned(String alias) {
+        return " AND " + alias + ".changeVersion = 0 AND " + alias + ".id > :afterId ORDER BY " + alias + ".id";
+    }
+
+    // Each add method returns the id of the last row it read, or null when there was none.
+    private Long addProducts(ChangePage page, Long tenantId, String condition, Map<String, Object> parameters,
+                             Integer maxResults) {
+        Session session = entityManager.unwrap(Session.class);
+        Query<Object[]> productQuery = session.createQuery(ProductService.PRODUCT_COLUMNS + ProductService.PRODUCT_JOINS +
+                " WHERE shop.id = :tenantId " + condition, Object[].class);
+        productQuery.setParameter("tenantId", tenantId);
+        parameters.forEach(productQuery::setParameter);
+        if (maxResults != null) {
+            productQuery.setMaxResults(maxResults);
+        }
+        List<Object[]> productRows = productQuery.list();
+        if (productRows.isEmpty()) {
+            return null;
+        }
+
+        Map<Long, List<ImageResponse>> productImages = new HashMap<>();
+        Query<Object[]> imageQuery = session.createQuery("SELECT product.id, image.id, image.url, image.isThumbnail " +
+                " FROM Product as product " +
+                " JOIN product.images as image " +
+                " WHERE product.id IN :productIds", Object[].class);
+        imageQuery.setParameter("productIds", productRows.stream().map(row -> (Long) row[0]).toList());
+        for (Object[] row : imageQuery.list()) {
+            productImages.computeIfAbsent((Long) row[0], productId -> new ArrayList<>())
+                    .add(ProductService.toImageResponse(row[1], row[2], row[3]));
+        }
+
+        for (Object[] row : productRows) {
+            page.addProduct(ProductService.toProductResponse(row,
+                    productImages.getOrDefault((Long) row[0], List.of())));
+        }
+        return (Long) productRows.get(productRows.size() - 1)[0];
+    }
+
+    private Long addBrands(ChangePage page, Long tenantId, String condition, Map<String, Object> parameters,
+                           Integer maxResults) {
+        Query<NamedRef> brandQuery = entityManager.unwrap(Session.class).createQuery(
+                "SELECT new com.b2bshop.project.dto.NamedRef(brand.id, brand.name) " +
+                " FROM Brand as brand " +
+                " WHERE brand.shop.tenantId = :tenantId " + condition, NamedRef.class);
+        brandQuery.setParameter("tenantId", tenantId);
+        parameters.forEach(brandQuery::setParameter);
+        if (maxResults != null) {
+            brandQuery.setMaxResults(maxResults);
+        }
+        List<NamedRef> brands = brandQuery.list();
+        brands.forEach(page::addBrand);
+        return brands.isEmpty() ? null : brands.get(brands.size() - 1).id();
+    }
+
+    private Long addCategories(ChangePage page, Long tenantId, String condition, Map<String, Object> parameters,
+                               Integer maxResults) {
+        Query<Object[]> categoryQuery = entityManager.unwrap(Session.class).createQuery(
+                "SELECT category.id, category.name, category.isActive, parentCategory.id " +
+                " FROM Category as category " +
+                " LEFT JOIN category.parentCategory as parentCategory " +
+                " WHERE category.shop.id = :tenantId " + condition, Object[].class);
+        categoryQuery.setParameter("tenantId", tenantId);
+        parameters.forEach(categoryQuery::setParameter);
+        if (maxResults != null) {
+            categoryQuery.setMaxResults(maxResults);
+        }
+        Long lastId = null;
+        for (Object[] row : categoryQuery.list()) {
+            page.addCategory(new CatalogChanges.CategoryChange((Long) row[0], (String) row[1], (Boolean) row[2],
+                    (Long) row[3]));
+            lastId = (Long) row[0];
+        }
+        return lastId;
+    }
+
+    // Highest version that keeps the page within pageSize rows, counting products, brands, categories and tombstones
+    // together, without splitting a version across pages. A single version larger than the page (a big import batch)
+    // is returned whole.
+    private long cutVersion(Long tenantId, long from, int pageSize, long current) {
+        List<Long> cut = jdbcTemplate.queryForList(
+                "SELECT version FROM (" +
+                        " SELECT product.change_version AS version FROM product " +
+                        "  JOIN product_shop ON product_shop.product_id = product.id " +
+                        "  WHERE product_shop.tenant_id = ? AND product.change_version >= ? " +
+                        " UNION ALL SELECT change_version FROM brand WHERE tenant_id = ? AND change_version >= ? " +
+                        " UNION ALL SELECT change_version FROM category WHERE shop_id = ? AND change_version >= ? " +
+                        " UNION ALL SELECT version FROM catalog_tombstone WHERE tenant_id = ? AND version >= ? " +
+                        ") changes ORDER BY version LIMIT 1 OFFSET ?",
+                Long.class, tenantId, from, tenantId, from, tenantId, from, tenantId, from, pageSize);
+        if (cut.isEmpty()) {
+            return current;
+        }
+        return Math.max(cut.get(0) - 1, from);
+    }
+
+    private record Allocation(long version, Set<CatalogEntityType> entityTypes) {
+    }
+
+    // Opaque to clients: base64url of "type:lastId", the last unversioned row already returned.
+    private record UnversionedCursor(CatalogEntityType type, long afterId) {
+
+        static final UnversionedCursor START = new UnversionedCursor(CatalogEntityType.PRODUCT, 0);
+
+        String encode() {
+            String value = type + ":" + afterId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static UnversionedCursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 2);
+                return new UnversionedCursor(CatalogEntityType.valueOf(parts[0]), Long.parseLong(parts[1]));
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
+        }
+    }
+
+    // The rows of one response. Customers only see products and categories they can order from; anything else
+    // looks like a deletion to them.
+    private static final class ChangePage {
+        private final boolean customer;
+        private final List<ProductResponse> products = new ArrayList<>();
+        private final List<NamedRef> brands = new ArrayList<>();
+        private final List<CatalogChanges.CategoryChange> categories = new ArrayList<>();
+        private final List<CatalogChanges.Deletion> deleted = new ArrayList<>();
+        private final Set<String> live = new HashSet<>();
+        private int rows;
+
+        private ChangePage(boolean customer) {
+            this.customer = customer;
+        }
+
+        private void addProduct(ProductResponse product) {
+            rows++;
+            live.add(CatalogEntityType.PRODUCT + ":" + product.id());
+            if (customer && !(product.active() && product.stock() > 0)) {
+                deleted.add(new CatalogChanges.Deletion(CatalogEntityType.PRODUCT, product.id()));
+            } else {
+                products.add(product);
+            }
+        }
+
+        private void addBrand(NamedRef brand) {
+            rows++;
+            live.add(CatalogEntityType.BRAND + ":" + brand.id());
+            brands.add(brand);
+        }
+
+        private void addCategory(CatalogChanges.CategoryChange category) {
+            rows++;
+            live.add(CatalogEntityType.CATEGORY + ":" + category.id());
+            if (customer && !Boolean.TRUE.equals(category.isActive())) {
+                deleted.add(new CatalogChanges.Deletion(CatalogEntityType.CATEGORY, category.id()));
+            } else {
+                categories.add(category);
+            }
+        }
+
+        private CatalogChanges toChanges(long since, long version, boolean hasMore, String cursor) {
+            return new CatalogChanges(since, version, hasMore, false, products, brands, categories, deleted, cursor);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.NamedRef;
+
+import java.util.*;
+
+// Bitmap indexes over a snapshot's products, addressed by their position in CatalogSnapshot.getProductsById().
+// Facet counts are intersections of these bitsets, so they never touch the product rows themselves. The bitsets are
+// kept as their long words: a count is a bitCount over the ANDed words, with nothing copied per facet value.
+public final class CatalogFacets {
+
+    private static final double[] PRICE_BOUNDS = {100, 250, 500, 1000, 2500};
+
+    private final int size;
+    private final Map<Long, Integer> ordinals;
+    private final Map<Long, long[]> byBrand = new HashMap<>();
+    // Products of each category and all of its descendants.
+    private final Map<Long, long[]> byCategorySubtree = new HashMap<>();
+    private final BitSet available = new BitSet();
+    private final long[] inStock;
+    private final long[][] byPrice = new long[PRICE_BOUNDS.length + 1][];
+
+    CatalogFacets(List<CatalogSnapshot.CatalogProduct> products, CategoryTree categoryTree) {
+        this.size = products.size();
+        this.ordinals = new HashMap<>(products.size() * 2);
+        Map<Long, BitSet> brands = new HashMap<>();
+        Map<Long, BitSet> categories = new HashMap<>();
+        BitSet stocked = new BitSet();
+        BitSet[] prices = new BitSet[byPrice.length];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = new BitSet();
+        }
+        for (int ordinal = 0; ordinal < products.size(); ordinal++) {
+            CatalogSnapshot.CatalogProduct product = products.get(ordinal);
+            ordinals.put(product.id(), ordinal);
+            if (product.brandId() != null) {
+                brands.computeIfAbsent(product.brandId(), id -> new BitSet()).set(ordinal);
+            }
+            if (product.categoryId() != null) {
+                categories.computeIfAbsent(product.categoryId(), id -> new BitSet()).set(ordinal);
+            }
+            if (product.isAvailable()) {
+                available.set(ordinal);
+            }
+            if (product.stock() > 0) {
+                stocked.set(ordinal);
+            }
+            if (product.view().grossPrice() != null) {
+                prices[priceBucket(product.view().grossPrice())].set(ordinal);
+            }
+        }
+
+        brands.forEach((brandId, bits) -> byBrand.put(brandId, bits.toLongArray()));
+        for (Long categoryId : categoryTree.getCategoryIds()) {
+            BitSet subtree = new BitSet(size);
+            orCategory(subtree, categories, categoryId);
+            for (Long descendantId : categoryTree.findCategory(categoryId).descendantIds()) {
+                orCategory(subtree, categories, descendantId);
+            }
+            if (!subtree.isEmpty()) {
+                byCategorySubtree.put(categoryId, subtree.toLongArray());
+            }
+        }
+        this.inStock = stocked.toLongArray();
+        for (int i = 0; i < prices.length; i++) {
+            byPrice[i] = prices[i].toLongArray();
+        }
+    }
+
+    public BitSet all(boolean onlyAvailable) {
+        if (onlyAvailable) {
+            return (BitSet) available.clone();
+        }
+        BitSet all = new BitSet(size);
+        all.set(0, size);
+        return all;
+    }
+
+    public BitSet ofProducts(Collection<Long> productIds) {
+        BitSet bits = new BitSet(size);
+        for (Long productId : productIds) {
+            Integer ordinal = ordinals.get(productId);
+            if (ordinal != null) {
+                bits.set(ordinal);
+            }
+        }
+        return bits;
+    }
+
+    // null means "no brand filter".
+    public BitSet brandMask(Collection<Long> brandIds) {
+        if (brandIds == null || brandIds.isEmpty()) {
+            return null;
+        }
+        BitSet mask = new BitSet(size);
+        for (Long brandId : brandIds) {
+            long[] words = byBrand.get(brandId);
+            if (words != null) {
+                mask.or(BitSet.valueOf(words));
+            }
+        }
+        return mask;
+    }
+
+    // null means "no category filter"; a category without products (or not in the tree) matches nothing.
+    public BitSet categoryMask(Long categoryId) {
+        if (categoryId == null) {
+            return null;
+        }
+        long[] words = byCategorySubtree.get(categoryId);
+        return words == null ? new BitSet() : BitSet.valueOf(words);
+    }
+
+    // Brand counts ignore the brand filter and category counts ignore the category filter, so a storefront can
+    // show how many products each alternative selection would return.
+    public Map<String, Object> count(CatalogSnapshot snapshot, BitSet base, BitSet brandMask, BitSet categoryMask,
+                                     boolean onlyActiveCategories) {
+        long[] forBrands = and(base, categoryMask).toLongArray();
+        List<Map<String, Object>> brands = new ArrayList<>();
+        for (NamedRef brand : snapshot.getBrands()) {
+            long[] words = byBrand.get(brand.id());
+            int count = words == null ? 0 : intersectionCount(forBrands, words);
+            if (count > 0) {
+                brands.add(facet(brand.id(), brand.name(), count));
+            }
+        }
+
+        long[] forCategories = and(base, brandMask).toLongArray();
+        List<Map<String, Object>> categories = new ArrayList<>();
+        for (Long categoryId : snapshot.getCategoryIds()) {
+            CategoryTree.Node category = snapshot.findCategory(categoryId);
+            long[] words = byCategorySubtree.get(categoryId);
+            if (words == null || (onlyActiveCategories && !Boolean.TRUE.equals(category.active()))) {
+                continue;
+            }
+            int count = intersectionCount(forCategories, words);
+            if (count > 0) {
+                categories.add(facet(category.id(), category.name(), count));
+            }
+        }
+
+        long[] filtered = and(and(base, brandMask), categoryMask).toLongArray();
+        List<Map<String, Object>> prices = new ArrayList<>();
+        for (int bucket = 0; bucket < byPrice.length; bucket++) {
+            int count = intersectionCount(filtered, byPrice[bucket]);
+            if (count > 0) {
+                Map<String, Object> price = new LinkedHashMap<>();
+                price.put("from", bucket == 0 ? 0 : PRICE_BOUNDS[bucket - 1]);
+                price.put("to", bucket < PRICE_BOUNDS.length ? PRICE_BOUNDS[bucket] : null);
+                price.put("count", count);
+                prices.add(price);
+            }
+        }
+
+        Map<String, Object> facets = new LinkedHashMap<>();
+        facets.put("brands", brands);
+        facets.put("categories", categories);
+        facets.put("inStock", intersectionCount(filtered, inStock));
+        facets.put("priceRanges", prices);
+        return facets;
+    }
+
+    private static void orCategory(BitSet mask, Map<Long, BitSet> categories, Long categoryId) {
+        BitSet bits = categories.get(categoryId);
+        if (bits != null) {
+            mask.or(bits);
+        }
+    }
+
+    private static BitSet and(BitSet base, BitSet mask) {
+        if (mask == null) {
+            return base;
+        }
+        BitSet result = (BitSet) base.clone();
+        result.and(mask);
+        return result;
+    }
+
+    private static int intersectionCount(long[] a, long[] b) {
+        int count = 0;
+        for (int i = Math.min(a.length, b.length) - 1; i >= 0; i--) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count;
+    }
+
+    private static int priceBucket(double price) {
+        int bucket = 0;
+        while (bucket < PRICE_BOUNDS.length && price >= PRICE_BOUNDS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static Map<String, Object> facet(Object id, Object name, int count) {
+        Map<String, Object> facet = new LinkedHashMap<>();
+        facet.put("id", id);
+        facet.put("name", name);
+        facet.put("count", count);
+        return facet;
+    }
+}
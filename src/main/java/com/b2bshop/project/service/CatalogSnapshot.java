@@ -0,0 +1,127 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.NamedRef;
+import com.b2bshop.project.dto.ProductResponse;
+
+import java.util.*;
+
+// Immutable view of one shop's catalog. Writers never modify a snapshot; they swap in a new one.
+public final class CatalogSnapshot {
+
+    public record CatalogProduct(Long id, String name, Long brandId, Long categoryId, boolean active, int stock,
+                                 ProductResponse view) {
+        public boolean isAvailable() {
+            return active && stock > 0;
+        }
+    }
+
+    // catalog_version values the snapshot is complete up to; they double as ETag versions for the listings.
+    public record Versions(long catalog, long brands, long categories) {
+        public static final Versions NONE = new Versions(0, 0, 0);
+    }
+
+    private final Long tenantId;
+    private final Versions versions;
+    private final List<CatalogProduct> productsById;
+    private final List<CatalogProduct> productsByName;
+    private final Map<Long, CatalogProduct> productIndex;
+    private final List<NamedRef> brands;
+    private final CategoryTree categoryTree;
+    private final ProductSearchIndex searchIndex;
+    private volatile CatalogFacets facets;
+
+    public CatalogSnapshot(Long tenantId, Versions versions, Collection<CatalogProduct> products, List<NamedRef> brands,
+                           CategoryTree categoryTree) {
+        this(tenantId, versions, products, brands, categoryTree, ProductSearchIndex.build(products));
+    }
+
+    private CatalogSnapshot(Long tenantId, Versions versions, Collection<CatalogProduct> products,
+                            List<NamedRef> brands, CategoryTree categoryTree,
+                            ProductSearchIndex searchIndex) {
+        this.tenantId = tenantId;
+        this.versions = versions;
+        this.productsById = products.stream()
+                .sorted(Comparator.comparing(CatalogProduct::id))
+                .toList();
+        this.productsByName = products.stream()
+                .sorted(Comparator.comparing(CatalogProduct::name, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .thenComparing(CatalogProduct::id))
+                .toList();
+        Map<Long, CatalogProduct> productIndex = new HashMap<>();
+        for (CatalogProduct product : productsById) {
+            productIndex.put(product.id(), product);
+        }
+        this.productIndex = Collections.unmodifiableMap(productIndex);
+        this.brands = List.copyOf(brands);
+        this.categoryTree = categoryTree;
+        this.searchIndex = searchIndex;
+    }
+
+    public Long getTenantId() {
+        return tenantId;
+    }
+
+    public Versions getVersions() {
+        return versions;
+    }
+
+    public List<CatalogProduct> getProductsById() {
+        return productsById;
+    }
+
+    public List<CatalogProduct> getProductsByName() {
+        return productsByName;
+    }
+
+    public CatalogProduct findProduct(Long productId) {
+        return productIndex.get(productId);
+    }
+
+    public List<NamedRef> getBrands() {
+        return brands;
+    }
+
+    public CategoryTree getCategoryTree() {
+        return categoryTree;
+    }
+
+    public CategoryTree.Node findCategory(Long categoryId) {
+        return categoryTree.findCategory(categoryId);
+    }
+
+    public Set<Long> getCategoryIds() {
+        return categoryTree.getCategoryIds();
+    }
+
+    public ProductSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    // Built on first use; a benign race only costs a duplicate build.
+    public CatalogFacets getFacets() {
+        CatalogFacets current = facets;
+        if (current == null) {
+            current = new CatalogFacets(productsById, categoryTree);
+            facets = current;
+        }
+        return current;
+    }
+
+    public int weight() {
+        return 1 + productsById.size() + brands.size() + categoryTree.size();
+    }
+
+    // Copy-on-write replacement of changed products; a null replacement removes the product.
+    public CatalogSnapshot withProducts(Map<Long, CatalogProduct> replacements, Versions newVersions) {
+        Map<Long, CatalogProduct> products = new HashMap<>(productIndex);
+        for (Map.Entry<Long, CatalogProduct> replacement : replacements.entrySet()) {
+            if (replacement.getValue() == null) {
+                products.remove(replacement.getKey());
+            } else {
+                products.put(replacement.getKey(), replacement.getValue());
+            }
+        }
+        return new CatalogSnapshot(tenantId, newVersions, products.values(), brands, categoryTree,
+                searchIndex.withProducts(replacements));
+    }
+}
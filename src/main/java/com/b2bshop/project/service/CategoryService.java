@@ -1,94 +1,73 @@
 package com.b2bshop.project.service;
 
+import com.b2bshop.project.dto.CategoryNode;
+import com.b2bshop.project.exception.BadRequestException;
 import com.b2bshop.project.exception.ResourceNotFoundException;
+import com.b2bshop.project.model.CatalogEntityType;
 import com.b2bshop.project.model.Category;
 import com.b2bshop.project.model.Role;
 import com.b2bshop.project.model.Shop;
-import com.b2bshop.project.model.User;
+import com.b2bshop.project.repository.CategoryClosureRepository;
 import com.b2bshop.project.repository.CategoryRepository;
 import com.b2bshop.project.repository.ShopRepository;
-import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.security.AuthenticatedUser;
+import com.b2bshop.project.util.ConditionalRequests;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.persistence.EntityManager;
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.transaction.Transactional;
-import org.hibernate.Session;
-import org.hibernate.query.Query;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
 
 @Service
+@Slf4j
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final CategoryClosureRepository categoryClosureRepository;
     private final ShopRepository shopRepository;
     private final SecurityService securityService;
-    private final JwtService jwtService;
-    private final UserRepository userRepository;
-    private final EntityManager entityManager;
+    private final CatalogCache catalogCache;
+    private final CategoryTreeCache categoryTreeCache;
+    private final CatalogChangeService catalogChangeService;
 
-    public CategoryService(CategoryRepository categoryRepository, ShopRepository shopRepository, SecurityService securityService, JwtService jwtService, UserRepository userRepository, EntityManager entityManager) {
+    public CategoryService(CategoryRepository categoryRepository, CategoryClosureRepository categoryClosureRepository,
+                           ShopRepository shopRepository, SecurityService securityService, CatalogCache catalogCache,
+                           CategoryTreeCache categoryTreeCache, CatalogChangeService catalogChangeService) {
         this.categoryRepository = categoryRepository;
+        this.categoryClosureRepository = categoryClosureRepository;
         this.shopRepository = shopRepository;
         this.securityService = securityService;
-        this.jwtService = jwtService;
-        this.userRepository = userRepository;
-        this.entityManager = entityManager;
+        this.catalogCache = catalogCache;
+        this.categoryTreeCache = categoryTreeCache;
+        this.catalogChangeService = catalogChangeService;
     }
 
-    public List<Map<String, Object>> getAllCategories(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        Long tenantId = securityService.returnTenantIdByUsernameOrToken("token", token);
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new RuntimeException("User not found"));
-        Set<Role> userRoles = user.getAuthorities();
-
-        StringBuilder hqlQuery = new StringBuilder("SELECT category FROM Category category WHERE 1 = 1");
-        if (tenantId != null) {
-            hqlQuery.append(" AND category.shop.id = :tenantId");
-        }
-        if (userRoles.contains(Role.ROLE_CUSTOMER_USER)) {
-            hqlQuery.append(" AND category.isActive = true");
-            tenantId = user.getCustomer().getShop().getTenantId();
-        }
-
-        Session session = entityManager.unwrap(Session.class);
-        Query query = session.createQuery(hqlQuery.toString());
-
-        if (tenantId != null) {
-            query.setParameter("tenantId", tenantId);
-        }
-
-        List<Category> categories = query.list();
-        return buildCategoryHierarchy(categories);
+    public List<CategoryNode> getAllCategories() {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        return currentTree(currentUser, customer).getRoots(customer);
     }
 
-    private List<Map<String, Object>> buildCategoryHierarchy(List<Category> categories) {
-        Map<Long, Map<String, Object>> categoryMap = new HashMap<>();
-
-        for (Category category : categories) {
-            Map<String, Object> categoryData = new HashMap<>();
-            categoryData.put("id", category.getId());
-            categoryData.put("name", category.getName());
-            categoryData.put("isActive", category.getIsActive());
-            categoryData.put("parentCategory", category.getParentCategory() != null ? category.getParentCategory().getId() : null);
-            categoryData.put("subCategories", new ArrayList<Map<String, Object>>());
-            categoryMap.put(category.getId(), categoryData);
-        }
-
-        List<Map<String, Object>> rootCategories = new ArrayList<>();
-        for (Category category : categories) {
-            if (category.getParentCategory() == null) {
-                rootCategories.add(categoryMap.get(category.getId()));
-            } else {
-                Map<String, Object> parentCategory = categoryMap.get(category.getParentCategory().getId());
-                List<Map<String, Object>> subCategories = (List<Map<String, Object>>) parentCategory.get("subCategories");
-                subCategories.add(categoryMap.get(category.getId()));
-            }
+    public String getAllCategoriesETag() {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        Long tenantId = customer ? currentUser.shopTenantId() : currentUser.tenantId();
+        if (tenantId == null) {
+            return null;
         }
+        return ConditionalRequests.etag("categories", tenantId, categoryTreeCache.get(tenantId).getVersion(),
+                customer ? "c" : "s");
+    }
 
-        return rootCategories;
+    // Customers browse their shop's tree, staff their own tenant's; platform users without a tenant see all shops.
+    private CategoryTree currentTree(AuthenticatedUser currentUser, boolean customer) {
+        Long tenantId = customer ? currentUser.shopTenantId() : currentUser.tenantId();
+        return tenantId != null ? categoryTreeCache.get(tenantId) : categoryTreeCache.loadAll();
     }
 
     public List<Category> getCategoriesByShop(Long shopId) {
@@ -97,69 +76,20 @@ public class CategoryService {
         return categoryRepository.findByShop(shop);
     }
 
-    public Map<String, Object> getCategoryById(HttpServletRequest request, Long id) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        Long tenantId = securityService.returnTenantIdByUsernameOrToken("token", token);
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new RuntimeException("User not found"));
-        Set<Role> userRoles = user.getAuthorities();
-
-        StringBuilder hqlQuery = new StringBuilder("SELECT category FROM Category category WHERE category.id = :id");
-        if (tenantId != null) {
-            hqlQuery.append(" AND category.shop.id = :tenantId");
-        }
-        if (userRoles.contains(Role.ROLE_CUSTOMER_USER)) {
-            hqlQuery.append(" AND category.isActive = true");
-            tenantId = user.getCustomer().getShop().getTenantId();
-        }
-
-        Session session = entityManager.unwrap(Session.class);
-        Query query = session.createQuery(hqlQuery.toString());
-        query.setParameter("id", id);
-
-        if (tenantId != null) {
-            query.setParameter("tenantId", tenantId);
-        }
-
-        Category category = (Category) query.uniqueResult();
+    public CategoryNode getCategoryById(Long id) {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        CategoryNode category = currentTree(currentUser, customer).findView(id, customer);
         if (category == null) {
             throw new ResourceNotFoundException("Category not found with id: " + id);
         }
-
-        List<Category> allCategories = categoryRepository.findAll();
-
-        List<Map<String, Object>> categoryHierarchy = buildCategoryHierarchy(allCategories);
-
-        Map<String, Object> categoryData = findCategoryInHierarchy(categoryHierarchy, id);
-
-        if (categoryData == null) {
-            throw new ResourceNotFoundException("Category not found in hierarchy with id: " + id);
-        }
-
-        return categoryData;
-    }
-
-    private Map<String, Object> findCategoryInHierarchy(List<Map<String, Object>> hierarchy, Long id) {
-        for (Map<String, Object> category : hierarchy) {
-            if (category.get("id").equals(id)) {
-                return category;
-            }
-            List<Map<String, Object>> subCategories = (List<Map<String, Object>>) category.get("subCategories");
-            Map<String, Object> result = findCategoryInHierarchy(subCategories, id);
-            if (result != null) {
-                return result;
-            }
-        }
-        return null;
+        return category;
     }
 
     @Transactional
-    public Category createCategory(HttpServletRequest request, JsonNode json) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        Shop shop = user.getShop();
+    public Category createCategory(JsonNode json) {
+        Long shopTenantId = securityService.getCurrentUser().ownShopTenantId();
+        Shop shop = shopTenantId != null ? shopRepository.findById(shopTenantId).orElse(null) : null;
 
         Category parentCategory = null;
 
@@ -176,38 +106,79 @@ public class CategoryService {
                 .isActive(json.get("active").asBoolean())
                 .parentCategory(parentCategory)
                 .shop(shop)
+                .changeVersion(catalogChangeService.nextVersion(shopTenantId, CatalogEntityType.CATEGORY))
                 .build();
 
         newCategory = categoryRepository.save(newCategory);
-
-        if (parentCategory != null && !parentCategory.getChildCategoryIds().contains(newCategory)) {
-            parentCategory.getChildCategoryIds().add(newCategory.getId());
-            if (parentCategory.getParentCategory() != null) {
-                parentCategory.getParentCategory().getChildCategoryIds().add(newCategory.getId());
-            }
-
-            categoryRepository.save(parentCategory);
-        }
+        categoryClosureRepository.insertCategory(newCategory.getId(),
+                parentCategory != null ? parentCategory.getId() : null);
+        catalogCache.invalidateTenant(shopTenantId);
 
         return newCategory;
     }
 
+    @Transactional
     public Category updateCategoryById(Long id, Category updatedCategory) {
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Category not found with id: " + id));
+        Long previousTenantId = category.getShop() != null ? category.getShop().getTenantId() : null;
+        Long previousParentId = category.getParentCategory() != null ? category.getParentCategory().getId() : null;
+        Long parentId = updatedCategory.getParentCategory() != null ? updatedCategory.getParentCategory().getId() : null;
+        if (!Objects.equals(parentId, previousParentId)) {
+            if (parentId != null && categoryClosureRepository.existsByAncestorIdAndDescendantId(id, parentId)) {
+                throw new BadRequestException("A category cannot be moved below itself or one of its subcategories");
+            }
+            categoryClosureRepository.detachSubtree(id);
+            if (parentId != null) {
+                categoryClosureRepository.attachSubtree(id, parentId);
+            }
+        }
 
         category.setName(updatedCategory.getName());
         category.setIsActive(updatedCategory.getIsActive());
         category.setParentCategory(updatedCategory.getParentCategory());
         category.setShop(updatedCategory.getShop());
+        Long tenantId = category.getShop() != null ? category.getShop().getTenantId() : null;
+        // Moving to another shop is a deletion as far as the previous shop's change feed is concerned.
+        if (!Objects.equals(tenantId, previousTenantId)) {
+            catalogChangeService.recordDeletion(previousTenantId, CatalogEntityType.CATEGORY, id);
+        }
+        category.setChangeVersion(catalogChangeService.nextVersion(tenantId, CatalogEntityType.CATEGORY));
 
-        return categoryRepository.saveAndFlush(category);
+        category = categoryRepository.saveAndFlush(category);
+        catalogCache.invalidateTenant(previousTenantId);
+        if (tenantId != null && !Objects.equals(tenantId, previousTenantId)) {
+            catalogCache.invalidateTenant(tenantId);
+        }
+        return category;
     }
 
+    @Transactional
     public void deleteCategory(Long id) {
         Category category = categoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Category not found with id: " + id));
+        Long tenantId = category.getShop() != null ? category.getShop().getTenantId() : null;
+        if (categoryClosureRepository.existsByAncestorIdAndDescendantIdNot(id, id)) {
+            throw new BadRequestException("Category has subcategories, move or delete them first");
+        }
+        catalogChangeService.recordDeletion(tenantId, CatalogEntityType.CATEGORY, id);
+        categoryClosureRepository.deleteCategory(id);
         categoryRepository.delete(category);
+        catalogCache.invalidateTenant(tenantId);
+    }
+
+    // Fills the closure table for categories created before it existed (or written around this service) from the
+    // parent pointers. Runs before the catalog warm-up, which reads it.
+    @Transactional
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillClosure() {
+        if (categoryClosureRepository.countMissing() == 0) {
+            return;
+        }
+        categoryClosureRepository.deleteAllPaths();
+        int paths = categoryClosureRepository.rebuildFromParents();
+        log.info("Rebuilt category closure table with {} paths", paths);
     }
 
     public Category findById(Long id) {
@@ -0,0 +1,115 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.CategoryNode;
+
+import java.util.*;
+
+// Immutable category hierarchy of one shop: id index, parent pointers, root-first ancestor paths and descendant
+// sets, plus the response trees for staff (everything) and customers (a category is only visible when it and all
+// of its ancestors are active). Response nodes are shared between the trees and the by-id index.
+public final class CategoryTree {
+
+    public record Entry(Long id, String name, Boolean active, Long parentId) {
+    }
+
+    public record Node(Long id, String name, Boolean active, Long parentId, List<Long> path, Set<Long> descendantIds) {
+    }
+
+    private final long version;
+    private final Map<Long, Node> nodes;
+    private final List<CategoryNode> roots;
+    private final List<CategoryNode> activeRoots;
+    private final Map<Long, CategoryNode> views;
+    private final Map<Long, CategoryNode> activeViews;
+
+    // Entries whose parent is not part of the list are treated as roots; entries caught in a parent cycle are
+    // unreachable from any root and left out.
+    public CategoryTree(long version, List<Entry> entries) {
+        this.version = version;
+        Map<Long, Entry> byId = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            byId.put(entry.id(), entry);
+        }
+        Map<Long, List<Entry>> children = new HashMap<>();
+        List<Entry> rootEntries = new ArrayList<>();
+        for (Entry entry : byId.values()) {
+            if (entry.parentId() == null || !byId.containsKey(entry.parentId())) {
+                rootEntries.add(entry);
+            } else {
+                children.computeIfAbsent(entry.parentId(), id -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        Map<Long, Node> nodes = new LinkedHashMap<>();
+        Map<Long, Set<Long>> descendants = new HashMap<>();
+        for (Entry root : rootEntries) {
+            index(root, List.of(), children, nodes, descendants);
+        }
+        Map<Long, Node> frozen = new LinkedHashMap<>();
+        nodes.forEach((id, node) -> frozen.put(id, new Node(node.id(), node.name(), node.active(), node.parentId(),
+                node.path(), Set.copyOf(descendants.getOrDefault(id, Set.of())))));
+        this.nodes = Collections.unmodifiableMap(frozen);
+
+        Map<Long, CategoryNode> views = new HashMap<>();
+        Map<Long, CategoryNode> activeViews = new HashMap<>();
+        this.roots = toViews(rootEntries, children, false, views);
+        this.activeRoots = toViews(rootEntries, children, true, activeViews);
+        this.views = Collections.unmodifiableMap(views);
+        this.activeViews = Collections.unmodifiableMap(activeViews);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Node findCategory(Long categoryId) {
+        return nodes.get(categoryId);
+    }
+
+    public Set<Long> getCategoryIds() {
+        return nodes.keySet();
+    }
+
+    public List<CategoryNode> getRoots(boolean onlyActive) {
+        return onlyActive ? activeRoots : roots;
+    }
+
+    // The node with its whole (visible) subtree, or null when the category is not part of this view.
+    public CategoryNode findView(Long categoryId, boolean onlyActive) {
+        return (onlyActive ? activeViews : views).get(categoryId);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    private static void index(Entry entry, List<Long> path, Map<Long, List<Entry>> children, Map<Long, Node> nodes,
+                              Map<Long, Set<Long>> descendants) {
+        nodes.put(entry.id(), new Node(entry.id(), entry.name(), entry.active(), entry.parentId(), path, Set.of()));
+        for (Long ancestorId : path) {
+            descendants.computeIfAbsent(ancestorId, id -> new HashSet<>()).add(entry.id());
+        }
+        List<Long> childPath = new ArrayList<>(path.size() + 1);
+        childPath.addAll(path);
+        childPath.add(entry.id());
+        childPath = List.copyOf(childPath);
+        for (Entry child : children.getOrDefault(entry.id(), List.of())) {
+            index(child, childPath, children, nodes, descendants);
+        }
+    }
+
+    private static List<CategoryNode> toViews(List<Entry> entries, Map<Long, List<Entry>> children, boolean onlyActive,
+                                              Map<Long, CategoryNode> index) {
+        List<CategoryNode> views = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (onlyActive && !Boolean.TRUE.equals(entry.active())) {
+                continue;
+            }
+            CategoryNode view = new CategoryNode(entry.id(), entry.name(), entry.active(), entry.parentId(),
+                    toViews(children.getOrDefault(entry.id(), List.of()), children, onlyActive, index));
+            index.put(entry.id(), view);
+            views.add(view);
+        }
+        return List.copyOf(views);
+    }
+}
@@ -0,0 +1,84 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.model.CatalogVersion;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Per-shop category trees for the category endpoints. Unlike catalog snapshots they are cheap to build, so an
+// invalidation just drops the tree and the next read rebuilds it; the writing node therefore reads its own writes.
+@Component
+public class CategoryTreeCache {
+
+    private final Cache<Long, CategoryTree> trees;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    public CategoryTreeCache(@Value("${cache.category-tree.maximum-size:10000}") long maximumSize,
+                             @Value("${cache.category-tree.idle-ttl:PT30M}") Duration idleTtl,
+                             EntityManager entityManager, PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry, CacheInvalidationService cacheInvalidationService) {
+        this.trees = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(idleTtl)
+                .recordStats()
+                .build();
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.transactionTemplate.setReadOnly(true);
+        CaffeineCacheMetrics.monitor(meterRegistry, trees, "categoryTrees");
+        // Category writes invalidate the whole shop in the catalog region; per-product invalidations carry a ':'.
+        cacheInvalidationService.register(CatalogCache.REGION, key -> {
+            if (key.indexOf(':') < 0) {
+                trees.invalidate(Long.valueOf(key));
+            }
+        });
+    }
+
+    public CategoryTree get(Long tenantId) {
+        return trees.get(tenantId, key -> transactionTemplate.execute(status -> loadTree(key)));
+    }
+
+    // Platform users without a shop see every shop's categories; that tree is not cached.
+    public CategoryTree loadAll() {
+        return transactionTemplate.execute(status -> new CategoryTree(0, loadEntries(null)));
+    }
+
+    // Must run inside a transaction so the version and the categories come from the same read view.
+    CategoryTree loadTree(Long tenantId) {
+        CatalogVersion catalogVersion = entityManager.find(CatalogVersion.class, tenantId);
+        return new CategoryTree(catalogVersion != null ? catalogVersion.getCategoryVersion() : 0, loadEntries(tenantId));
+    }
+
+    private List<CategoryTree.Entry> loadEntries(Long tenantId) {
+        Session session = entityManager.unwrap(Session.class);
+        Query<Object[]> query = session.createQuery("SELECT category.id, category.name, category.isActive, " +
+                " parentCategory.id " +
+                " FROM Category as category " +
+                " LEFT JOIN category.parentCategory as parentCategory " +
+                (tenantId != null ? " WHERE category.shop.id = :tenantId " : "") +
+                " ORDER BY category.id ", Object[].class);
+        if (tenantId != null) {
+            query.setParameter("tenantId", tenantId);
+        }
+        List<CategoryTree.Entry> entries = new ArrayList<>();
+        for (Object[] row : query.list()) {
+            entries.add(new CategoryTree.Entry((Long) row[0], (String) row[1], (Boolean) row[2], (Long) row[3]));
+        }
+        return entries;
+    }
+}
@@ -1,42 +1,69 @@
 package com.b2bshop.project.service;
 
+import com.b2bshop.project.dto.CountryResponse;
+import com.b2bshop.project.util.ConditionalRequests;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import jakarta.persistence.EntityManager;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.Map;
 
+// Countries are reference data maintained outside the application, so they are cached for a while and the ETag is
+// a hash of the content rather than a write counter.
 @Service
 public class CountryService {
 
+    private static final String ALL = "all";
+
     private final EntityManager entityManager;
+    private final LoadingCache<String, Countries> countries;
 
-    public CountryService(EntityManager entityManager) {
+    public CountryService(EntityManager entityManager, @Value("${cache.country.ttl:PT1H}") Duration ttl) {
         this.entityManager = entityManager;
+        this.countries = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .build(key -> loadCountries());
     }
 
-    public List<Map<String, Object>> getAllCountries() {
-        Session session = entityManager.unwrap(Session.class);
-        String hqlQuery = "SELECT country.id as countryId, country.name as countryName, country.code as countryCode " +
-                "FROM Country as country";
+    public List<CountryResponse> getAllCountries() {
+        return countries.get(ALL).countries();
+    }
 
-        Query query = session.createQuery(hqlQuery);
+    public String getAllCountriesETag() {
+        return countries.get(ALL).etag();
+    }
 
-        List<Object[]> results = query.list();
+    private Countries loadCountries() {
+        Session session = entityManager.unwrap(Session.class);
+        String hqlQuery = "SELECT new com.b2bshop.project.dto.CountryResponse(country.id, country.name, country.code) " +
+                "FROM Country as country " +
+                "ORDER BY country.id";
+
+        Query<CountryResponse> query = session.createQuery(hqlQuery, CountryResponse.class);
+        List<CountryResponse> result = List.copyOf(query.list());
 
-        List<Map<String, Object>> resultList = new ArrayList<>();
-        for (Object[] result : results) {
-            Map<String, Object> countryMap = new HashMap<>();
-            countryMap.put("id", result[0]);
-            countryMap.put("countryName", result[1]);
-            countryMap.put("countryCode", result[2]);
-            resultList.add(countryMap);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (CountryResponse country : result) {
+                digest.update((country.id() + "\t" + country.countryName() + "\t" + country.countryCode() + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            String hash = HexFormat.of().formatHex(digest.digest(), 0, 16);
+            return new Countries(result, ConditionalRequests.etag("countries", hash));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
+    }
 
-        return resultList;
+    private record Countries(List<CountryResponse> countries, String etag) {
     }
 }
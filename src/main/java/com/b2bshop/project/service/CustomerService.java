@@ -8,7 +8,7 @@ import com.b2bshop.project.model.User;
 import com.b2bshop.project.repository.CustomerRepository;
 import com.b2bshop.project.repository.UserRepository;
 import com.fasterxml.jackson.databind.JsonNode;
-import jakarta.servlet.http.HttpServletRequest;
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -22,32 +22,38 @@ import java.util.Set;
 public class CustomerService {
 
     private final CustomerRepository customerRepository;
-    private final JwtService jwtService;
+    private final SecurityService securityService;
     private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final UserCache userCache;
+    private final SalesRollupService salesRollupService;
 
     private final BCryptPasswordEncoder passwordEncoder;
 
-    public CustomerService(CustomerRepository customerRepository, JwtService jwtService, UserRepository userRepository, BCryptPasswordEncoder passwordEncoder) {
+    public CustomerService(CustomerRepository customerRepository, SecurityService securityService, UserRepository userRepository,
+                           EntityManager entityManager, UserCache userCache, BCryptPasswordEncoder passwordEncoder,
+                           SalesRollupService salesRollupService) {
         this.customerRepository = customerRepository;
-        this.jwtService = jwtService;
+        this.securityService = securityService;
         this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.userCache = userCache;
         this.passwordEncoder = passwordEncoder;
+        this.salesRollupService = salesRollupService;
     }
 
-    public List<Customer> getAllCustomers(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new RuntimeException("User not found"));
-        Shop shop = user.getShop();
-        return customerRepository.findAllByShop(shop);
+    public List<Customer> getAllCustomers() {
+        Long shopTenantId = securityService.getCurrentUser().ownShopTenantId();
+        if (shopTenantId == null) {
+            return List.of();
+        }
+        return customerRepository.findAllByShopTenantId(shopTenantId);
     }
 
     @Transactional
-    public Customer createCustomer(HttpServletRequest request, JsonNode json) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User shopUser = userRepository.findByUsername(userName).orElseThrow(() -> new RuntimeException("User not found"));
-        Shop shop = shopUser.getShop();
+    public Customer createCustomer(JsonNode json) {
+        Long shopTenantId = securityService.getCurrentUser().ownShopTenantId();
+        Shop shop = shopTenantId != null ? entityManager.find(Shop.class, shopTenantId) : null;
 
         Customer customer = new Customer();
         customer.setName(json.get("name").asText());
@@ -73,6 +79,8 @@ public class CustomerService {
         customerUser.setAccountNonLocked(true);
         customerUser.setCredentialsNonExpired(true);
         userRepository.save(customerUser);
+        userCache.invalidate(customerUser.getId());
+        salesRollupService.recordCustomerCreated(shopTenantId, customer.getDateCreated());
 
         return customerRepository.save(customer);
     }
@@ -86,6 +94,7 @@ public class CustomerService {
         customer.setPhoneNumber(newCustomer.getPhoneNumber());
         customer.setActive(newCustomer.isActive());
         customerRepository.save(customer);
+        userRepository.findIdsByCustomerTenantId(customerId).forEach(userCache::invalidate);
         return customer;
     }
 
@@ -1,157 +1,206 @@
 package com.b2bshop.project.service;
 
-import com.b2bshop.project.model.OrderStatus;
-import com.b2bshop.project.model.User;
-import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.dto.DashboardResponse;
+import com.b2bshop.project.dto.SalesTimeseries;
+import com.b2bshop.project.exception.BadRequestException;
 import jakarta.persistence.EntityManager;
-import jakarta.servlet.http.HttpServletRequest;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
 
 @Service
 public class DashboardService {
 
-    private final JwtService jwtService;
-    private final UserRepository userRepository;
+    public enum Granularity {
+        DAY, WEEK, MONTH;
+
+        public static Granularity from(String granularity) {
+            if (granularity == null) {
+                return DAY;
+            }
+            try {
+                return valueOf(granularity.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Granularity must be day, week or month");
+            }
+        }
+
+        // Weeks start on Monday (ISO).
+        LocalDate bucketStart(LocalDate date) {
+            return switch (this) {
+                case DAY -> date;
+                case WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH -> date.withDayOfMonth(1);
+            };
+        }
+
+        LocalDate next(LocalDate bucketStart) {
+            return switch (this) {
+                case DAY -> bucketStart.plusDays(1);
+                case WEEK -> bucketStart.plusWeeks(1);
+                case MONTH -> bucketStart.plusMonths(1);
+            };
+        }
+
+        long between(LocalDate firstBucket, LocalDate lastBucket) {
+            return switch (this) {
+                case DAY -> ChronoUnit.DAYS.between(firstBucket, lastBucket);
+                case WEEK -> ChronoUnit.WEEKS.between(firstBucket, lastBucket);
+                case MONTH -> ChronoUnit.MONTHS.between(firstBucket, lastBucket);
+            };
+        }
+
+        LocalDate defaultFrom(LocalDate to) {
+            return switch (this) {
+                case DAY -> to.minusDays(29);
+                case WEEK -> to.minusWeeks(11);
+                case MONTH -> to.minusMonths(11);
+            };
+        }
+    }
+
+    private static final String THIS_MONTH =
+            "dailyRollup.salesDate >= :monthStart AND dailyRollup.salesDate < :monthEnd";
+
+    private final SecurityService securityService;
     private final EntityManager entityManager;
+    private final int maxTimeseriesPoints;
 
-    public DashboardService(JwtService jwtService, UserRepository userRepository, EntityManager entityManager) {
-        this.jwtService = jwtService;
-        this.userRepository = userRepository;
+    public DashboardService(SecurityService securityService, EntityManager entityManager,
+                            @Value("${dashboard.timeseries.max-points:400}") int maxTimeseriesPoints) {
+        this.securityService = securityService;
         this.entityManager = entityManager;
+        this.maxTimeseriesPoints = maxTimeseriesPoints;
     }
 
-    public Map<String, Object> getDashboard(HttpServletRequest request) {
-        Map<String, Object> dashboardData = new HashMap<>();
-
-        try {
-            String token = request.getHeader("Authorization").split("Bearer ")[1];
-            String userName = jwtService.extractUser(token);
-            User user = userRepository.findByUsername(userName)
-                    .orElseThrow(() -> new RuntimeException("User not found"));
-            Long tenantId = user.getShop().getTenantId();
-            Session session = entityManager.unwrap(Session.class);
-
-            String orderCountQuery = "SELECT COUNT(o) " +
-                    "FROM Order o " +
-                    "WHERE o.shop.id = :tenantId " +
-                    "AND o.orderStatus != :cancelledStatus";
-            Query orderCountQueryObj = session.createQuery(orderCountQuery);
-            orderCountQueryObj.setParameter("tenantId", tenantId);
-            orderCountQueryObj.setParameter("cancelledStatus", OrderStatus.CANCELED);
-            Number orderCountResult = (Number) orderCountQueryObj.uniqueResult();
-            int orderCount = (orderCountResult != null) ? orderCountResult.intValue() : 0;
-
-            String thisMonthOrderCountQuery = "SELECT COUNT(o) " +
-                    " FROM Order o " +
-                    " WHERE o.shop.id = :tenantId " +
-                    " AND o.orderStatus != :cancelledStatus " +
-                    " AND MONTH(o.orderDate) = MONTH(CURRENT_DATE())";
-            Query thisMonthOrderCountQueryObj = session.createQuery(thisMonthOrderCountQuery);
-            thisMonthOrderCountQueryObj.setParameter("tenantId", tenantId);
-            thisMonthOrderCountQueryObj.setParameter("cancelledStatus", OrderStatus.CANCELED);
-            Number thisMonthOrderCountResult = (Number) thisMonthOrderCountQueryObj.uniqueResult();
-            int thisMonthOrderCount = (thisMonthOrderCountResult != null) ? thisMonthOrderCountResult.intValue() : 0;
-
-            dashboardData.put("orderCount", orderCount);
-            dashboardData.put("thisMonthOrderCount", thisMonthOrderCount);
-
-            String totalRevenueQuery = "SELECT SUM(o.totalPrice) " +
-                    "FROM Order o " +
-                    "WHERE o.shop.id = :tenantId " +
-                    "AND o.orderStatus != :cancelledStatus";
-            Query totalRevenueQueryObj = session.createQuery(totalRevenueQuery);
-            totalRevenueQueryObj.setParameter("tenantId", tenantId);
-            totalRevenueQueryObj.setParameter("cancelledStatus", OrderStatus.CANCELED);
-            Number totalRevenueResult = (Number) totalRevenueQueryObj.uniqueResult();
-            double totalRevenue = (totalRevenueResult != null) ? totalRevenueResult.doubleValue() : 0.0;
-
-            String thisMonthTotalRevenueQuery = "SELECT SUM(o.totalPrice) " +
-                    "FROM Order o " +
-                    "WHERE o.shop.id = :tenantId " +
-                    "AND MONTH(o.orderDate) = MONTH(CURRENT_DATE()) " +
-                    "AND o.orderStatus != :cancelledStatus";
-            Query thisMonthTotalRevenueQueryObj = session.createQuery(thisMonthTotalRevenueQuery);
-            thisMonthTotalRevenueQueryObj.setParameter("tenantId", tenantId);
-            thisMonthTotalRevenueQueryObj.setParameter("cancelledStatus", OrderStatus.CANCELED);
-            Number thisMonthTotalRevenueResult = (Number) thisMonthTotalRevenueQueryObj.uniqueResult();
-            double thisMonthTotalRevenue = (thisMonthTotalRevenueResult != null) ? thisMonthTotalRevenueResult.doubleValue() : 0.0;
-
-            String cancelledRevenueQuery = "SELECT SUM(o.totalPrice) " +
-                    "FROM Order o " +
-                    "WHERE o.shop.id = :tenantId " +
-                    "AND o.orderStatus = :cancelledStatus";
-            Query cancelledRevenueQueryObj = session.createQuery(cancelledRevenueQuery);
-            cancelledRevenueQueryObj.setParameter("tenantId", tenantId);
-            cancelledRevenueQueryObj.setParameter("cancelledStatus", OrderStatus.CANCELED);
-            Number cancelledRevenueResult = (Number) cancelledRevenueQueryObj.uniqueResult();
-            double cancelledRevenue = (cancelledRevenueResult != null) ? cancelledRevenueResult.doubleValue() : 0.0;
-
-            String thisMonthCancelledRevenueQuery = "SELECT SUM(o.totalPrice) " +
-                    "FROM Order o " +
-                    "WHERE o.shop.id = :tenantId " +
-                    "AND MONTH(o.orderDate) = MONTH(CURRENT_DATE()) " +
-                    "AND o.orderStatus = :cancelledStatus";
-            Query thisMonthCancelledRevenueQueryObj = session.createQuery(thisMonthCancelledRevenueQuery);
-            thisMonthCancelledRevenueQueryObj.setParameter("tenantId", tenantId);
-            thisMonthCancelledRevenueQueryObj.setParameter("cancelledStatus", OrderStatus.CANCELED);
-            Number thisMonthCancelledRevenueResult = (Number) thisMonthCancelledRevenueQueryObj.uniqueResult();
-            double thisMonthCancelledRevenue = (thisMonthCancelledRevenueResult != null) ? thisMonthCancelledRevenueResult.doubleValue() : 0.0;
-
-            String customerCountQuery = "SELECT COUNT(c) " +
-                    " FROM Customer c " +
-                    " WHERE c.shop.tenantId = :tenantId";
-            Query customerCountQueryObj = session.createQuery(customerCountQuery);
-            customerCountQueryObj.setParameter("tenantId", tenantId);
-            Number customerCountResult = (Number) customerCountQueryObj.uniqueResult();
-            int customerCount = (customerCountResult != null) ? customerCountResult.intValue() : 0;
-
-            String thisMonthCustomerCountQuery = "SELECT COUNT(c) " +
-                    " FROM Customer c " +
-                    " WHERE c.shop.tenantId = :tenantId " +
-                    " AND MONTH(c.dateCreated) = MONTH(CURRENT_DATE())";
-            Query thisMonthCustomerCountQueryObj = session.createQuery(thisMonthCustomerCountQuery);
-            thisMonthCustomerCountQueryObj.setParameter("tenantId", tenantId);
-            Number thisMonthCustomerCountResult = (Number) thisMonthCustomerCountQueryObj.uniqueResult();
-            int thisMonthCustomerCount = (thisMonthCustomerCountResult != null) ? thisMonthCustomerCountResult.intValue() : 0;
-
-            String productCountQuery = "SELECT COUNT(p) " +
-                    " FROM Product p " +
-                    " WHERE p.shop.id = :tenantId";
-            Query productCountQueryObj = session.createQuery(productCountQuery);
-            productCountQueryObj.setParameter("tenantId", tenantId);
-            Number productCountResult = (Number) productCountQueryObj.uniqueResult();
-            int productCount = (productCountResult != null) ? productCountResult.intValue() : 0;
-
-            String thisMonthProductCountQuery = "SELECT COUNT(p) " +
-                    " FROM Product p " +
-                    " WHERE p.shop.id = :tenantId " +
-                    " AND MONTH(p.dateCreated) = MONTH(CURRENT_DATE())";
-            Query thisMonthProductCountQueryObj = session.createQuery(thisMonthProductCountQuery);
-            thisMonthProductCountQueryObj.setParameter("tenantId", tenantId);
-            Number thisMonthProductCountResult = (Number) thisMonthProductCountQueryObj.uniqueResult();
-            int thisMonthProductCount = (thisMonthProductCountResult != null) ? thisMonthProductCountResult.intValue() : 0;
-
-            dashboardData.put("orderCount", orderCount);
-            dashboardData.put("thisMonthOrderCount", thisMonthOrderCount);
-            dashboardData.put("totalRevenue", totalRevenue);
-            dashboardData.put("thisMonthTotalRevenue", thisMonthTotalRevenue);
-            dashboardData.put("cancelledRevenue", cancelledRevenue);
-            dashboardData.put("thisMonthCancelledRevenue", thisMonthCancelledRevenue);
-            dashboardData.put("customerCount", customerCount);
-            dashboardData.put("thisMonthCustomerCount", thisMonthCustomerCount);
-            dashboardData.put("productCount", productCount);
-            dashboardData.put("thisMonthProductCount", thisMonthProductCount);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            dashboardData.put("error", e.getMessage());
+    // Reads the shop's daily rollups, one row per day with activity, instead of scanning orders, customers and
+    // products. "This month" is a half-open [first of month, first of next month) range in server time.
+    public DashboardResponse getDashboard() {
+        Long tenantId = securityService.getCurrentUser().ownShopTenantId();
+        if (tenantId == null) {
+            throw new BadRequestException("Dashboard needs a shop context");
+        }
+        LocalDate monthStart = LocalDate.now().withDayOfMonth(1);
+        Session session = entityManager.unwrap(Session.class);
+
+        Query<Object[]> query = session.createQuery("SELECT " +
+                " SUM(dailyRollup.orderCount), " +
+                " SUM(CASE WHEN " + THIS_MONTH + " THEN dailyRollup.orderCount END), " +
+                " SUM(dailyRollup.revenue), " +
+                " SUM(CASE WHEN " + THIS_MONTH + " THEN dailyRollup.revenue END), " +
+                " SUM(dailyRollup.cancelledRevenue), " +
+                " SUM(CASE WHEN " + THIS_MONTH + " THEN dailyRollup.cancelledRevenue END), " +
+                " SUM(dailyRollup.newCustomers), " +
+                " SUM(CASE WHEN " + THIS_MONTH + " THEN dailyRollup.newCustomers END), " +
+                " SUM(dailyRollup.newProducts), " +
+                " SUM(CASE WHEN " + THIS_MONTH + " THEN dailyRollup.newProducts END) " +
+                " FROM SalesDailyRollup as dailyRollup " +
+                " WHERE dailyRollup.tenantId = :tenantId ", Object[].class);
+        query.setParameter("tenantId", tenantId);
+        query.setParameter("monthStart", monthStart);
+        query.setParameter("monthEnd", monthStart.plusMonths(1));
+        Object[] totals = query.uniqueResult();
+
+        return new DashboardResponse(asLong(totals[0]), asLong(totals[1]), asDouble(totals[2]), asDouble(totals[3]),
+                asDouble(totals[4]), asDouble(totals[5]), asLong(totals[6]), asLong(totals[7]), asLong(totals[8]),
+                asLong(totals[9]));
+    }
+
+    // Trend buckets for the shop, one customer or one product, summed from the daily rollups. The range is widened
+    // to whole buckets, empty buckets are reported as zeros, and ranges with more buckets than the cap are rejected
+    // rather than truncated.
+    public SalesTimeseries getTimeseries(String granularityName, LocalDate from, LocalDate to, Long customerId,
+                                         Long productId) {
+        Long tenantId = securityService.getCurrentUser().ownShopTenantId();
+        if (tenantId == null) {
+            throw new BadRequestException("Sales analytics need a shop context");
+        }
+        if (customerId != null && productId != null) {
+            throw new BadRequestException("Filter by customer or by product, not both");
         }
+        Granularity granularity = Granularity.from(granularityName);
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : granularity.defaultFrom(end);
+        if (start.isAfter(end)) {
+            throw new BadRequestException("from must not be after to");
+        }
+        LocalDate firstBucket = granularity.bucketStart(start);
+        LocalDate lastBucket = granularity.bucketStart(end);
+        long points = granularity.between(firstBucket, lastBucket) + 1;
+        if (points > maxTimeseriesPoints) {
+            throw new BadRequestException("The range has " + points + " buckets, at most " + maxTimeseriesPoints +
+                    " are allowed; use a shorter range or a coarser granularity");
+        }
+        LocalDate rangeEnd = granularity.next(lastBucket).minusDays(1);
+
+        String source;
+        Long entityId = null;
+        if (productId != null) {
+            source = " dailyRollup.quantity FROM SalesProductDailyRollup as dailyRollup " +
+                    " WHERE dailyRollup.productId = :entityId AND ";
+            entityId = productId;
+        } else if (customerId != null) {
+            source = " 0 FROM SalesCustomerDailyRollup as dailyRollup WHERE dailyRollup.customerId = :entityId AND ";
+            entityId = customerId;
+        } else {
+            source = " 0 FROM SalesDailyRollup as dailyRollup WHERE ";
+        }
+        Session session = entityManager.unwrap(Session.class);
+        Query<Object[]> query = session.createQuery("SELECT dailyRollup.salesDate, dailyRollup.orderCount, " +
+                " dailyRollup.revenue, " + source +
+                " dailyRollup.tenantId = :tenantId AND dailyRollup.salesDate BETWEEN :from AND :to ", Object[].class);
+        query.setParameter("tenantId", tenantId);
+        query.setParameter("from", firstBucket);
+        query.setParameter("to", rangeEnd);
+        if (entityId != null) {
+            query.setParameter("entityId", entityId);
+        }
+
+        List<SalesTimeseries.Point> series = toSeries(granularity, firstBucket, lastBucket, query.list(),
+                productId != null);
+        return new SalesTimeseries(granularity.name().toLowerCase(Locale.ROOT), firstBucket, rangeEnd, customerId,
+                productId, series);
+    }
+
+    // Sums rollup rows (salesDate, orderCount, revenue, quantity) into one point per bucket from firstBucket to
+    // lastBucket, with zeros for buckets without rows.
+    static List<SalesTimeseries.Point> toSeries(Granularity granularity, LocalDate firstBucket, LocalDate lastBucket,
+                                                List<Object[]> rows, boolean withQuantity) {
+        Map<LocalDate, Bucket> buckets = new LinkedHashMap<>();
+        for (LocalDate bucket = firstBucket; !bucket.isAfter(lastBucket); bucket = granularity.next(bucket)) {
+            buckets.put(bucket, new Bucket());
+        }
+        for (Object[] row : rows) {
+            Bucket bucket = buckets.get(granularity.bucketStart((LocalDate) row[0]));
+            bucket.orderCount += asLong(row[1]);
+            bucket.revenue += asDouble(row[2]);
+            bucket.quantity += asLong(row[3]);
+        }
+
+        List<SalesTimeseries.Point> series = new ArrayList<>(buckets.size());
+        buckets.forEach((bucketStart, bucket) -> series.add(new SalesTimeseries.Point(bucketStart, bucket.orderCount,
+                bucket.revenue, withQuantity ? bucket.quantity : null)));
+        return series;
+    }
+
+    private static long asLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0;
+    }
+
+    private static double asDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : 0.0;
+    }
 
-        return dashboardData;
+    private static final class Bucket {
+        long orderCount;
+        long quantity;
+        double revenue;
     }
 }
@@ -14,7 +14,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageOptions;
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.transaction.Transactional;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -31,14 +30,14 @@ import java.util.UUID;
 public class ImageService {
 
     private final  ProductService productService;
-    private final  JwtService jwtService;
+    private final  SecurityService securityService;
     private final  UserService userService;
     private final ImageRepository imageRepository;
 
-    public ImageService(ProductService productService, JwtService jwtService, UserService userService,
+    public ImageService(ProductService productService, SecurityService securityService, UserService userService,
                         ImageRepository imageRepository) {
         this.productService = productService;
-        this.jwtService = jwtService;
+        this.securityService = securityService;
         this.userService = userService;
         this.imageRepository = imageRepository;
     }
@@ -68,10 +67,8 @@ public class ImageService {
     }
 
     @Transactional
-    public List<String> upload(HttpServletRequest request, List<MultipartFile> multipartFiles) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userService.findUserByName(userName);
+    public List<String> upload(List<MultipartFile> multipartFiles) {
+        User user = userService.findUserById(securityService.getCurrentUser().userId());
 
         List<String> urls = new ArrayList<>();
         try {
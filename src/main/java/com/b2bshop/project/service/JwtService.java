@@ -1,53 +1,88 @@
 package com.b2bshop.project.service;
 
+import com.b2bshop.project.model.Role;
+import com.b2bshop.project.model.TenantType;
+import com.b2bshop.project.model.User;
+import com.b2bshop.project.security.AuthenticatedUser;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import java.security.Key;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 public class JwtService {
-    @Value("${jwt.key}")
-    private String SECRET;
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String TENANT_ID_CLAIM = "tid";
+    private static final String TENANT_TYPE_CLAIM = "ttype";
+    private static final String SHOP_TENANT_ID_CLAIM = "stid";
+    private static final String ROLES_CLAIM = "roles";
+    private static final String TOKEN_VERSION_CLAIM = "ver";
 
-    public Map generateToken(String userName) {
-        Map<String, Object> claims = new HashMap<>();
-        return createToken(claims, userName);
+    private final Key signKey;
+    private final JwtParser jwtParser;
+
+    public JwtService(@Value("${jwt.key}") String secret) {
+        this.signKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signKey)
+                .build();
+    }
+
+    public Map generateToken(User user) {
+        return generateToken(AuthenticatedUser.from(user), user.getTokenVersion());
     }
 
-    public Boolean validateToken(String token, UserDetails userDetails) {
-        String username = extractUser(token);
-        Date expirationDate = extractExpiration(token);
-        return userDetails.getUsername().equals(username) && !expirationDate.before(new Date());
+    public Map generateToken(AuthenticatedUser principal, int tokenVersion) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, principal.userId());
+        if (principal.tenantType() != null) {
+            claims.put(TENANT_ID_CLAIM, principal.tenantId());
+            claims.put(TENANT_TYPE_CLAIM, principal.tenantType().name());
+            claims.put(SHOP_TENANT_ID_CLAIM, principal.shopTenantId());
+        }
+        claims.put(ROLES_CLAIM, principal.roles().stream().map(Role::name).toList());
+        claims.put(TOKEN_VERSION_CLAIM, tokenVersion);
+        return createToken(claims, principal.username());
     }
 
-    private Date extractExpiration(String token) {
-        Claims claims = Jwts
-                .parserBuilder()
-                .setSigningKey(getSignKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-        return claims.getExpiration();
+    public Claims parseClaims(String token) {
+        return jwtParser.parseClaimsJws(token).getBody();
     }
 
     public String extractUser(String token) {
-        Claims claims = Jwts
-                .parserBuilder()
-                .setSigningKey(getSignKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-        return claims.getSubject();
+        return parseClaims(token).getSubject();
+    }
+
+    public AuthenticatedUser toAuthenticatedUser(Claims claims) {
+        Long userId = claims.get(USER_ID_CLAIM, Long.class);
+        if (userId == null) {
+            throw new MalformedJwtException("Token does not carry a user id claim");
+        }
+        String tenantType = claims.get(TENANT_TYPE_CLAIM, String.class);
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        Set<Role> roleSet = roles == null ? Set.of() : roles.stream()
+                .map(role -> Role.valueOf(role.toString()))
+                .collect(Collectors.toSet());
+
+        return new AuthenticatedUser(userId, claims.getSubject(),
+                claims.get(TENANT_ID_CLAIM, Long.class),
+                tenantType != null ? TenantType.valueOf(tenantType) : null,
+                claims.get(SHOP_TENANT_ID_CLAIM, Long.class),
+                roleSet);
+    }
+
+    public int extractTokenVersion(Claims claims) {
+        Integer tokenVersion = claims.get(TOKEN_VERSION_CLAIM, Integer.class);
+        return tokenVersion != null ? tokenVersion : 0;
     }
 
     private Map createToken(Map<String, Object> claims, String userName) {
@@ -56,13 +91,8 @@ public class JwtService {
                 .setSubject(userName)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + (1000 * 60 * 60)))
-                .signWith(getSignKey(), SignatureAlgorithm.HS256)
+                .signWith(signKey, SignatureAlgorithm.HS256)
                 .compact();
         return Map.of("token", strToken);
     }
-
-    private Key getSignKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(SECRET);
-        return Keys.hmacShaKeyFor(keyBytes);
-    }
 }
@@ -0,0 +1,191 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.AuthRequest;
+import com.b2bshop.project.exception.ResourceNotFoundException;
+import com.b2bshop.project.exception.ServiceUnavailableException;
+import com.b2bshop.project.model.Role;
+import com.b2bshop.project.model.TenantType;
+import com.b2bshop.project.security.AuthenticatedUser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AccountExpiredException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.authentication.DisabledException;
+import org.springframework.security.authentication.LockedException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+@Slf4j
+public class LoginService {
+
+    private final EntityManager entityManager;
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final JwtService jwtService;
+    private final RefreshTokenService refreshTokenService;
+    private final ThreadPoolExecutor passwordExecutor;
+    private final ThreadPoolExecutor tokenExecutor;
+    private final Timer loginTimer;
+    private final Counter rejectedLogins;
+
+    public LoginService(EntityManager entityManager, BCryptPasswordEncoder passwordEncoder, JwtService jwtService,
+                        RefreshTokenService refreshTokenService, MeterRegistry meterRegistry,
+                        @Value("${security.login.threads:0}") int threads,
+                        @Value("${security.login.queue-capacity:64}") int queueCapacity,
+                        @Value("${security.login.token-threads:4}") int tokenThreads) {
+        this.entityManager = entityManager;
+        this.passwordEncoder = passwordEncoder;
+        this.jwtService = jwtService;
+        this.refreshTokenService = refreshTokenService;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        // BCrypt is CPU bound, so the pool is fixed and the queue is short: once it is full we answer 503
+        // immediately instead of parking Tomcat workers behind password checks.
+        this.passwordExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-bcrypt-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        ExecutorServiceMetrics.monitor(meterRegistry, passwordExecutor, "login");
+        // Issuing tokens writes the refresh token row, so it runs on its own pool and a slow database cannot hold
+        // the password threads. Its queue needs no bound: everything in it has come through the password queue.
+        AtomicInteger tokenThreadCount = new AtomicInteger();
+        this.tokenExecutor = new ThreadPoolExecutor(tokenThreads, tokenThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-token-" + tokenThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        ExecutorServiceMetrics.monitor(meterRegistry, tokenExecutor, "loginToken");
+        this.loginTimer = Timer.builder("login.duration")
+                .description("Time from login request to issued token, including queueing for password verification")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.rejectedLogins = Counter.builder("login.rejected")
+                .description("Logins rejected because the password verification queue was full")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<Map<String, String>> login(AuthRequest request) {
+        Timer.Sample sample = Timer.start();
+        LoginAccount account = findLoginAccount(request.username());
+        if (account == null) {
+            throw new ResourceNotFoundException("User not found by name: " + request.username());
+        }
+        // The same account checks, in the same order and with the same exceptions, as DaoAuthenticationProvider.
+        if (!account.accountNonLocked()) {
+            throw new LockedException("User account is locked");
+        }
+        if (!account.enabled()) {
+            throw new DisabledException("User is disabled");
+        }
+        if (!account.accountNonExpired()) {
+            throw new AccountExpiredException("User account has expired");
+        }
+        if (account.principal().tenantType() == TenantType.CUSTOMER && !account.customerActive()) {
+            throw new ResourceNotFoundException("Customer not active!");
+        }
+        if (!account.active()) {
+            throw new ResourceNotFoundException("User not active!");
+        }
+        if (!account.principal().hasRole(Role.ROLE_SYSTEM_OWNER)
+                && !Objects.equals(account.principal().tenantId(), request.tenantId())) {
+            log.info("Invalid username or tenantId!");
+            throw new ResourceNotFoundException("Invalid username or tenantId! ");
+        }
+
+        CompletableFuture<Void> verified;
+        try {
+            verified = CompletableFuture.runAsync(() -> {
+                if (!passwordEncoder.matches(request.password(), account.password())) {
+                    throw new BadCredentialsException("Bad credentials");
+                }
+                if (!account.credentialsNonExpired()) {
+                    throw new CredentialsExpiredException("User credentials have expired");
+                }
+            }, passwordExecutor);
+        } catch (RejectedExecutionException e) {
+            rejectedLogins.increment();
+            throw new ServiceUnavailableException("Login is temporarily overloaded, please retry");
+        }
+        return verified.thenApplyAsync(ignored -> {
+            Map<String, String> response = new HashMap<>();
+            response.put("token", (String) jwtService.generateToken(account.principal(), account.tokenVersion())
+                    .get("token"));
+            response.put("refreshToken", refreshTokenService.issue(account.principal().userId(),
+                    account.tokenVersion()));
+            return response;
+        }, tokenExecutor).whenComplete((result, ex) -> sample.stop(loginTimer));
+    }
+
+    // One round trip: user, roles and tenant status come back as one row per role.
+    private LoginAccount findLoginAccount(String username) {
+        Session session = entityManager.unwrap(Session.class);
+        String hqlQuery = "SELECT user.id, user.password, user.isActive, user.tokenVersion, " +
+                " shop.tenantId, customer.tenantId, customer.isActive, customerShop.tenantId, role, " +
+                " user.isEnabled, user.accountNonLocked, user.accountNonExpired, user.credentialsNonExpired " +
+                " FROM User as user " +
+                " LEFT JOIN user.shop as shop " +
+                " LEFT JOIN user.customer as customer " +
+                " LEFT JOIN customer.shop as customerShop " +
+                " LEFT JOIN user.authorities as role " +
+                " WHERE user.username = :username ";
+
+        Query<Object[]> query = session.createQuery(hqlQuery, Object[].class);
+        query.setParameter("username", username);
+        List<Object[]> rows = query.getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        Object[] row = rows.get(0);
+        Set<Role> roles = EnumSet.noneOf(Role.class);
+        for (Object[] roleRow : rows) {
+            if (roleRow[8] != null) {
+                roles.add((Role) roleRow[8]);
+            }
+        }
+        Long userId = (Long) row[0];
+        Long shopTenantId = (Long) row[4];
+        Long customerTenantId = (Long) row[5];
+        AuthenticatedUser principal;
+        if (shopTenantId != null) {
+            principal = new AuthenticatedUser(userId, username, shopTenantId, TenantType.SHOP, shopTenantId, roles);
+        } else if (customerTenantId != null) {
+            principal = new AuthenticatedUser(userId, username, customerTenantId, TenantType.CUSTOMER, (Long) row[7], roles);
+        } else {
+            principal = new AuthenticatedUser(userId, username, null, null, null, roles);
+        }
+        return new LoginAccount(principal, (String) row[1], (Boolean) row[2], (Integer) row[3],
+                Boolean.TRUE.equals(row[6]), (Boolean) row[9], (Boolean) row[10], (Boolean) row[11],
+                (Boolean) row[12]);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        passwordExecutor.shutdown();
+        tokenExecutor.shutdown();
+    }
+
+    private record LoginAccount(AuthenticatedUser principal, String password, boolean active, int tokenVersion,
+                                boolean customerActive, boolean enabled, boolean accountNonLocked,
+                                boolean accountNonExpired, boolean credentialsNonExpired) {
+    }
+}
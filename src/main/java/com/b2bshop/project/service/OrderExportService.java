@@ -0,0 +1,175 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.*;
+import com.b2bshop.project.exception.BadRequestException;
+import com.b2bshop.project.model.OrderStatus;
+import com.b2bshop.project.model.Role;
+import com.b2bshop.project.security.AuthenticatedUser;
+import com.b2bshop.project.util.CsvWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.transaction.Transactional;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+// Order export for accounting. Orders are joined with their items in one statement and read through a
+// forward-only cursor that MySQL streams row by row (fetch size Integer.MIN_VALUE), so only the order being
+// written is ever held in memory, however many orders the filters match.
+@Service
+public class OrderExportService {
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public static Format from(String format) {
+            String value = format != null ? format.toLowerCase(Locale.ROOT) : "csv";
+            if (value.equals("csv")) {
+                return CSV;
+            }
+            if (value.equals("ndjson")) {
+                return NDJSON;
+            }
+            throw new BadRequestException("Export format must be csv or ndjson");
+        }
+    }
+
+    private static final String[] CSV_HEADER = {"orderId", "orderNumber", "orderDate", "orderStatus", "customerId",
+            "customerName", "createdById", "createdByName", "totalPrice", "withoutTaxPrice", "totalTax",
+            "invoiceAddress", "invoiceCity", "receiverAddress", "receiverCity", "itemId", "itemName", "refProductId",
+            "quantity", "salesPrice", "grossPrice"};
+
+    private static final DateTimeFormatter CSV_DATE = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final SecurityService securityService;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    public OrderExportService(SecurityService securityService, EntityManager entityManager,
+                              ObjectMapper objectMapper) {
+        this.securityService = securityService;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    // CSV has one record per order item (orders without items get one record with empty item columns),
+    // NDJSON one order with its items per line. Orders come out oldest first.
+    @Transactional
+    public void exportOrders(Format format, boolean gzip, OrderFilterRequest filterRequest,
+                             HttpServletResponse response) throws IOException {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        OrderService.OrderFilter filter = OrderService.orderFilter(customer, currentUser.tenantId(), filterRequest);
+
+        Session session = entityManager.unwrap(Session.class);
+        Query<Object[]> query = session.createQuery(OrderService.ORDER_HEADER_COLUMNS +
+                " , orderItem.id, orderItem.name, orderItem.refProductId, orderItem.quantity, orderItem.salesPrice, " +
+                " orderItem.grossPrice " +
+                OrderService.ORDER_HEADER_JOINS +
+                " LEFT JOIN order.orderItems as orderItem " +
+                filter.whereClause() +
+                " ORDER BY order.orderDate, order.id, orderItem.id ", Object[].class);
+        filter.parameters().forEach(query::setParameter);
+        query.setReadOnly(true);
+        query.setCacheMode(CacheMode.IGNORE);
+        query.setFetchSize(Integer.MIN_VALUE);
+
+        String fileName = "orders." + format.extension + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : format.contentType + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+
+        OutputStream body = response.getOutputStream();
+        try (ScrollableResults<Object[]> rows = query.scroll(ScrollMode.FORWARD_ONLY);
+             OutputStream out = gzip ? new GZIPOutputStream(body, 64 * 1024) : body;
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024)) {
+            if (format == Format.CSV) {
+                writeCsv(rows, writer, !customer);
+            } else {
+                writeNdjson(rows, writer, !customer);
+            }
+        }
+    }
+
+    private void writeCsv(ScrollableResults<Object[]> rows, Writer writer, boolean withCustomer) throws IOException {
+        CsvWriter csv = new CsvWriter(writer);
+        csv.writeRecord((Object[]) CSV_HEADER);
+        ZoneId zone = ZoneId.systemDefault();
+        while (rows.next()) {
+            Object[] row = rows.get();
+            String orderDate = row[3] != null
+                    ? CSV_DATE.format(((Date) row[3]).toInstant().atZone(zone).toLocalDateTime()) : null;
+            csv.writeRecord(row[0], row[1], orderDate, row[9] != null ? ((OrderStatus) row[9]).getStatus() : null,
+                    withCustomer ? row[16] : null, withCustomer ? row[17] : null, row[4], row[5], amount(row[6]),
+                    amount(row[7]), amount(row[8]), row[11], row[12], row[14], row[15], row[18], row[19], row[20],
+                    row[21], amount(row[22]), amount(row[23]));
+        }
+    }
+
+    // Plain notation, so spreadsheets and accounting imports never see 1.2E7.
+    private static String amount(Object value) {
+        return value != null ? BigDecimal.valueOf((Double) value).toPlainString() : null;
+    }
+
+    // Rows arrive grouped by order, so an order is written as soon as the first row of the next one shows up.
+    private void writeNdjson(ScrollableResults<Object[]> rows, Writer writer, boolean withCustomer)
+            throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+            // writeValue flushes after every order; keep that inside the generator instead of the response.
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+            // Orders are separated by the newline writeOrder ends each one with, not the default space before it.
+            generator.setRootValueSeparator(null);
+            Object[] header = null;
+            List<OrderItemResponse> items = new ArrayList<>();
+            while (rows.next()) {
+                Object[] row = rows.get();
+                if (header != null && !header[0].equals(row[0])) {
+                    writeOrder(generator, header, items, withCustomer);
+                    items.clear();
+                }
+                header = row;
+                if (row[18] != null) {
+                    items.add(new OrderItemResponse((Long) row[18], (String) row[19], (Double) row[23],
+                            (Double) row[22], (Integer) row[21], (Long) row[20], List.of()));
+                }
+            }
+            if (header != null) {
+                writeOrder(generator, header, items, withCustomer);
+            }
+        }
+    }
+
+    private void writeOrder(JsonGenerator generator, Object[] header, List<OrderItemResponse> items,
+                            boolean withCustomer) throws IOException {
+        objectMapper.writeValue(generator, new OrderResponse((Long) header[0], (String) header[1],
+                (String) header[2], (Date) header[3], (Long) header[4], (String) header[5], (Double) header[6],
+                (Double) header[7], (Double) header[8], OrderStatusResponse.from((OrderStatus) header[9]),
+                List.copyOf(items),
+                new AddressSummary((Long) header[10], (String) header[11], (String) header[12]),
+                new AddressSummary((Long) header[13], (String) header[14], (String) header[15]),
+                withCustomer ? new NamedRef((Long) header[16], (String) header[17]) : null));
+        generator.writeRaw('\n');
+    }
+}
@@ -0,0 +1,105 @@
+package com.b2bshop.project.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hi/lo order numbers: each node reserves blocks of per-tenant sequence numbers from order_number_sequence and
+// hands them out from memory with a single atomic increment. Only the thread that finds a block exhausted goes
+// to the database. Numbers look like {tenantId}-{yyMMdd}-{sequence}; the sequence alone is unique per tenant and
+// never resets, so the date is informative only and clock differences between nodes cannot cause collisions.
+// Numbers left in a block when a node stops are skipped, so the sequence has gaps.
+@Service
+public class OrderNumberAllocator {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyMMdd");
+
+    // Reserves the next blockSize numbers of the tenant's sequence and returns the last one.
+    interface BlockSource {
+        long reserve(long tenantId, int blockSize);
+    }
+
+    private final Map<Long, TenantSequence> sequences = new ConcurrentHashMap<>();
+    private final BlockSource blockSource;
+    private final int blockSize;
+    private final Clock clock;
+
+    @Autowired
+    public OrderNumberAllocator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                @Value("${order.number.block-size:100}") int blockSize) {
+        this(jdbcBlockSource(jdbcTemplate, transactionManager), blockSize, Clock.systemDefaultZone());
+    }
+
+    OrderNumberAllocator(BlockSource blockSource, int blockSize, Clock clock) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Order number block size must be positive");
+        }
+        this.blockSource = blockSource;
+        this.blockSize = blockSize;
+        this.clock = clock;
+    }
+
+    public String next(Long tenantId) {
+        long sequence = sequences.computeIfAbsent(tenantId, TenantSequence::new).next();
+        return tenantId + "-" + LocalDate.now(clock).format(DATE_FORMAT) + "-" + String.format("%06d", sequence);
+    }
+
+    // The block is reserved in its own transaction so it is committed (and the row lock released) right away,
+    // whatever happens to the order that asked for it. Callers should not hold a connection while asking, or a
+    // refill could wait for the pool their own transaction is part of.
+    private static BlockSource jdbcBlockSource(JdbcTemplate jdbcTemplate,
+                                               PlatformTransactionManager transactionManager) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // LAST_INSERT_ID(expr) hands the new upper bound back on this connection without a second read of the row.
+        return (tenantId, blockSize) -> transactionTemplate.execute(status -> {
+            jdbcTemplate.update("INSERT INTO order_number_sequence (tenant_id, reserved_until) " +
+                    " VALUES (?, LAST_INSERT_ID(?)) " +
+                    " ON DUPLICATE KEY UPDATE reserved_until = LAST_INSERT_ID(reserved_until + ?)",
+                    tenantId, blockSize, blockSize);
+            return jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Long.class);
+        });
+    }
+
+    private record Block(AtomicLong next, long last) {
+    }
+
+    private final class TenantSequence {
+        private final long tenantId;
+        private volatile Block current = new Block(new AtomicLong(1), 0);
+
+        TenantSequence(Long tenantId) {
+            this.tenantId = tenantId;
+        }
+
+        long next() {
+            while (true) {
+                Block block = current;
+                long value = block.next().getAndIncrement();
+                if (value <= block.last()) {
+                    return value;
+                }
+                refill(block);
+            }
+        }
+
+        // Threads that raced past the end of the same block wait here; only the first one reserves a new block.
+        private synchronized void refill(Block exhausted) {
+            if (current == exhausted) {
+                long last = blockSource.reserve(tenantId, blockSize);
+                current = new Block(new AtomicLong(last - blockSize + 1), last);
+            }
+        }
+    }
+}
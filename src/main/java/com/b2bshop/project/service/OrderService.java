@@ -1,25 +1,36 @@
 package com.b2bshop.project.service;
 
+import com.b2bshop.project.dto.*;
+import com.b2bshop.project.exception.BadRequestException;
+import com.b2bshop.project.exception.InsufficientStockException;
 import com.b2bshop.project.exception.ResourceNotFoundException;
+import com.b2bshop.project.exception.ServiceUnavailableException;
 import com.b2bshop.project.model.*;
 import com.b2bshop.project.repository.*;
 import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.security.AuthenticatedUser;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.EntityManager;
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.transaction.Transactional;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class OrderService {
     private final SecurityService securityService;
-    private final JwtService jwtService;
     private final UserRepository userRepository;
     private final EntityManager entityManager;
     private final CustomerService customerService;
@@ -30,13 +41,48 @@ public class OrderService {
     private final AddressService addressService;
 
     private final BasketService basketService;
-
-    public OrderService(SecurityService securityService, JwtService jwtService, UserRepository userRepository,
+    private final CatalogChangeService catalogChangeService;
+    private final SalesRollupService salesRollupService;
+    private final OrderNumberAllocator orderNumberAllocator;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int stockLockAttempts;
+    private final long stockLockBackoffMillis;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int ORDER_CHUNK_SIZE = 1000;
+
+    static final String ORDER_HEADER_COLUMNS = "SELECT order.id, order.orderNumber, order.orderNote, " +
+            " order.orderDate, createdBy.id, createdBy.name, order.totalPrice, order.withoutTaxPrice, order.totalTax, " +
+            " order.orderStatus, invoiceAddress.id, invoiceAddress.addressLine, invoiceAddress.city, " +
+            " receiverAddress.id, receiverAddress.addressLine, receiverAddress.city, customer.id, customer.name ";
+
+    static final String ORDER_HEADER_JOINS = " FROM Order as order " +
+            " JOIN order.customer as customer " +
+            " JOIN order.createdBy as createdBy " +
+            " JOIN order.invoiceAddress as invoiceAddress " +
+            " JOIN order.receiverAddress as receiverAddress ";
+
+    static final String ORDER_LIST_ORDER = " ORDER BY order.id DESC ";
+
+    static final String ORDER_PAGE_KEYSET = " AND (order.orderDate < :lastDate " +
+            " OR (order.orderDate = :lastDate AND order.id < :lastId)) ";
+
+    static final String ORDER_PAGE_ORDER = " ORDER BY order.orderDate DESC, order.id DESC ";
+
+    public OrderService(SecurityService securityService, UserRepository userRepository,
                         OrderRepository orderRepository, BasketRepository basketRepository, EntityManager entityManager,
                         CustomerService customerService, ProductService productService,
-                        ProductRepository productRepository, AddressService addressService, BasketService basketService) {
+                        ProductRepository productRepository, AddressService addressService, BasketService basketService,
+                        CatalogChangeService catalogChangeService,
+                        SalesRollupService salesRollupService, OrderNumberAllocator orderNumberAllocator,
+                        JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate,
+                        PlatformTransactionManager transactionManager,
+                        @Value("${order.stock.lock-attempts:4}") int stockLockAttempts,
+                        @Value("${order.stock.lock-backoff-ms:50}") long stockLockBackoffMillis) {
         this.securityService = securityService;
-        this.jwtService = jwtService;
         this.userRepository = userRepository;
         this.orderRepository = orderRepository;
         this.basketRepository = basketRepository;
@@ -46,246 +92,256 @@ public class OrderService {
         this.entityManager = entityManager;
         this.addressService = addressService;
         this.basketService = basketService;
+        this.catalogChangeService = catalogChangeService;
+        this.salesRollupService = salesRollupService;
+        this.orderNumberAllocator = orderNumberAllocator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stockLockAttempts = stockLockAttempts;
+        this.stockLockBackoffMillis = stockLockBackoffMillis;
     }
 
     @Transactional
-    public List<Map<String, Object>> getAllOrders(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        Long tenantId = securityService.returnTenantIdByUsernameOrToken("token", token);
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new RuntimeException("User not found"));
-        Set<Role> userRoles = user.getAuthorities();
-
-        if (userRoles.contains(Role.ROLE_CUSTOMER_USER)) {
-            return getOrderForCustomer(tenantId);
-        } else return getOrderForShop(tenantId);
+    public List<OrderResponse> getAllOrders(OrderFilterRequest filterRequest) {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        OrderFilter filter = orderFilter(customer, currentUser.tenantId(), filterRequest);
+        return toOrderResponses(findOrderHeaders(filter, ORDER_LIST_ORDER, null, null), !customer);
     }
 
-    public List<Map<String, Object>> getOrderForShop(Long tenantId) {
-        Session session = entityManager.unwrap(Session.class);
-        String orderQuery = "SELECT order.id as orderId, order.orderNote as orderNote," +
-                " order.totalPrice as totalPrice, order.withoutTaxPrice as withoutTaxPrice," +
-                " order.totalTax as totalTax, " +
-                " createdBy.id as createdById, createdBy.name as createdByName, " +
-                " order.orderNumber as orderNumber,  order.orderDate as orderDate," +
-                " orderItem.refProductId as orderItemRefProductId, orderItem.name as orderItemName, " +
-                " orderItem.salesPrice as orderItemSalesPrice, orderItem.grossPrice as orderItemGrossPrice," +
-                " orderItem.quantity as orderItemQuantity, orderItem.id as orderItemId," +
-                " invoiceAddress.id as invoiceAddressId, invoiceAddress.addressLine as invoiceAddressLine, " +
-                " invoiceAddress.city as invoiceAddressCity, " +
-                " receiverAddress.id as receiverAddressId, receiverAddress.addressLine as receiverAddressLine, " +
-                " receiverAddress.city as receiverAddressCity, " +
-                " image.id as imageId, image.url as imageUrl, image.isThumbnail as imageIsThumbnail, " +
-                " order.orderStatus as orderStatus, customer.id as customerId, customer.name as customerName " +
-                " FROM Order as order " +
-                " JOIN order.shop as shop ON shop.tenantId = :tenantId " +
-                " JOIN order.customer as customer ON customer.id = order.customer.id " +
-                " JOIN order.createdBy as createdBy " +
-                " JOIN order.orderItems as orderItem " +
-                " LEFT JOIN orderItem.images as image " +
-                " JOIN order.invoiceAddress as invoiceAddress " +
-                " JOIN order.receiverAddress as receiverAddress " +
-                " WHERE  1 = 1 " +
-                " ORDER BY order.id DESC ";
-
-        Query query = session.createQuery(orderQuery);
-        query.setParameter("tenantId", tenantId);
-
-        List<Map<String, Object>> orderResultList = new ArrayList<>();
-        Map<Long, Map<String, Object>> orderResultMap = new LinkedHashMap<>();
-        List<Object[]> orderRows = query.list();
-
-        for (Object[] orderRow : orderRows) {
-            Long orderId = (Long) orderRow[0];
-            Long orderItemId = (Long) orderRow[14];
-            Long imageId = (Long) orderRow[21];
-            Long invoiceAddressId = (Long) orderRow[15];
-            Long receiverAddressId = (Long) orderRow[18];
-
-            Map<String, Object> orderMap = orderResultMap.getOrDefault(orderId, new HashMap<>());
-            orderMap.put("orderId", orderId);
-            orderMap.put("orderNumber", orderRow[7]);
-            orderMap.put("orderNote", orderRow[1]);
-            orderMap.put("orderDate", orderRow[8]);
-            orderMap.put("createdById", orderRow[5]);
-            orderMap.put("createdByName", orderRow[6]);
-            orderMap.put("totalPrice", orderRow[2]);
-            orderMap.put("withoutTaxPrice", orderRow[3]);
-            orderMap.put("totalTax", orderRow[4]);
-
-            OrderStatus orderStatus = (OrderStatus) orderRow[24];
-            Map<String, Object> orderStatusMap = new HashMap<>();
-            orderStatusMap.put("id", orderStatus.getId());
-            orderStatusMap.put("status", orderStatus.getStatus());
-            orderMap.put("orderStatus", orderStatusMap);
-
-            List<Map<String, Object>> orderItems = (List<Map<String, Object>>) orderMap.getOrDefault("orderItems", new ArrayList<>());
-
-            Map<String, Object> orderItem = orderItems.stream()
-                    .filter(item -> item.get("id").equals(orderItemId))
-                    .findFirst()
-                    .orElse(new HashMap<>());
-
-            if (!orderItem.containsKey("id")) {
-                orderItem.put("name", orderRow[10]);
-                orderItem.put("grossPrice", orderRow[12]);
-                orderItem.put("salesPrice", orderRow[11]);
-                orderItem.put("quantity", orderRow[13]);
-                orderItem.put("refProductId", orderRow[9]);
-                orderItem.put("id", orderItemId);
-                orderItem.put("images", new ArrayList<Map<String, Object>>());
-                orderItems.add(orderItem);
+    public List<OrderResponse> getOrderForShop(Long tenantId) {
+        OrderFilter filter = orderFilter(false, tenantId, OrderFilterRequest.NONE);
+        return toOrderResponses(findOrderHeaders(filter, ORDER_LIST_ORDER, null, null), true);
+    }
+
+    // Keyset page, newest first: a page of order headers is selected on its own so the limit applies to orders,
+    // then items and images are loaded for just those orders.
+    public Map<String, Object> getOrderPage(Integer limit, String cursor, OrderFilterRequest filterRequest) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        OrderCursor after = cursor != null && !cursor.isBlank() ? OrderCursor.decode(cursor) : null;
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        OrderFilter filter = orderFilter(customer, currentUser.tenantId(), filterRequest);
+
+        String keyset = after == null ? "" : ORDER_PAGE_KEYSET;
+        List<Object[]> headers = findOrderHeaders(filter, keyset + ORDER_PAGE_ORDER, after, pageSize + 1);
+        boolean hasMore = headers.size() > pageSize;
+        if (hasMore) {
+            headers = headers.subList(0, pageSize);
+        }
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", toOrderResponses(headers, !customer));
+        if (hasMore) {
+            Object[] last = headers.get(headers.size() - 1);
+            page.put("nextCursor", new OrderCursor(((Date) last[3]).getTime(), (Long) last[0]).encode());
+        } else {
+            page.put("nextCursor", null);
+        }
+        return page;
+    }
+
+    // Customers see the orders of their own company, shop staff the orders placed with their shop. Conditions are
+    // written against the order's own foreign key columns so MySQL can serve them from idx_orders_shop_status_date,
+    // idx_orders_shop_date and idx_orders_customer_date.
+    static OrderFilter orderFilter(boolean customer, Long tenantId, OrderFilterRequest request) {
+        Map<String, Object> parameters = new HashMap<>();
+        String whereClause = customer ? " WHERE order.customer.id = :tenantId " : " WHERE order.shop.id = :tenantId ";
+        parameters.put("tenantId", tenantId);
+        if (request == null) {
+            return new OrderFilter(whereClause, parameters);
+        }
+
+        if (request.statuses() != null && !request.statuses().isEmpty()) {
+            Set<OrderStatus> statuses = EnumSet.noneOf(OrderStatus.class);
+            for (String status : request.statuses()) {
+                statuses.add(toOrderStatus(status));
             }
+            whereClause += " AND order.orderStatus IN :statuses ";
+            parameters.put("statuses", statuses);
+        }
+
+        if (request.from() != null && request.to() != null && request.from().isAfter(request.to())) {
+            throw new BadRequestException("from must not be after to");
+        }
+        if (request.from() != null) {
+            whereClause += " AND order.orderDate >= :fromDate ";
+            parameters.put("fromDate", startOfDay(request.from()));
+        }
+        if (request.to() != null) {
+            whereClause += " AND order.orderDate < :toDate ";
+            parameters.put("toDate", startOfDay(request.to().plusDays(1)));
+        }
 
-            List<Map<String, Object>> images = (List<Map<String, Object>>) orderItem.get("images");
-            Map<String, Object> image = new HashMap<>();
-            image.put("id", imageId);
-            image.put("url", orderRow[22]);
-            image.put("isThumbnail", orderRow[23]);
-            images.add(image);
-
-            orderMap.put("orderItems", orderItems);
-
-            Map<String, Object> invoiceAddressMap = new HashMap<>();
-            invoiceAddressMap.put("id", invoiceAddressId);
-            invoiceAddressMap.put("address", orderRow[16]);
-            invoiceAddressMap.put("city", orderRow[17]);
-            orderMap.put("invoiceAddress", invoiceAddressMap);
-
-            Map<String, Object> receiverAddressMap = new HashMap<>();
-            receiverAddressMap.put("id", receiverAddressId);
-            receiverAddressMap.put("address", orderRow[19]);
-            receiverAddressMap.put("city", orderRow[20]);
-            orderMap.put("receiverAddress", receiverAddressMap);
-
-            Map<String, Object> customerMap = new HashMap<>();
-            customerMap.put("id", orderRow[25]);
-            customerMap.put("name", orderRow[26]);
-            orderMap.put("customer", customerMap);
-
-            orderResultMap.put(orderId, orderMap);
+        if (request.customerId() != null) {
+            whereClause += " AND order.customer.id = :customerId ";
+            parameters.put("customerId", request.customerId());
+        }
+        if (request.createdById() != null) {
+            whereClause += " AND order.createdBy.id = :createdById ";
+            parameters.put("createdById", request.createdById());
         }
 
-        orderResultList.addAll(orderResultMap.values());
-        return orderResultList;
+        // Prefix match only, so the unique index on order_number stays usable; LIKE wildcards in the input are
+        // matched literally.
+        if (request.orderNumber() != null && !request.orderNumber().isBlank()) {
+            whereClause += " AND order.orderNumber LIKE :orderNumber ESCAPE '!' ";
+            parameters.put("orderNumber", request.orderNumber().trim()
+                    .replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%");
+        }
+        return new OrderFilter(whereClause, parameters);
+    }
+
+    private static OrderStatus toOrderStatus(String status) {
+        try {
+            return OrderStatus.valueOf(status.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unknown order status: " + status);
+        }
     }
 
-    private List<Map<String, Object>> getOrderForCustomer(Long tenantId) {
+    private static Date startOfDay(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    // One row per order in the column order of ORDER_HEADER_COLUMNS.
+    private List<Object[]> findOrderHeaders(OrderFilter filter, String orderClause, OrderCursor after,
+                                            Integer maxResults) {
         Session session = entityManager.unwrap(Session.class);
-        String orderQuery = "SELECT order.id as orderId, order.orderNote as orderNote," +
-                " order.totalPrice as totalPrice, order.withoutTaxPrice as withoutTaxPrice," +
-                " order.totalTax as totalTax, " +
-                " createdBy.id as createdById, createdBy.name as createdByName, " +
-                " order.orderNumber as orderNumber,  order.orderDate as orderDate," +
-                " orderItem.refProductId as orderItemRefProductId, orderItem.name as orderItemName, " +
-                " orderItem.salesPrice as orderItemSalesPrice, orderItem.grossPrice as orderItemGrossPrice," +
-                " orderItem.quantity as orderItemQuantity, orderItem.id as orderItemId," +
-                " invoiceAddress as invoiceAddressMap, receiverAddress as receiverAddressMap, " +
-                " image.id as imageId, image.url as imageUrl, image.isThumbnail as imageIsThumbnail, " +
-                " order.orderStatus as orderStatusId, " +
-                " invoiceAddress.id as invoiceAddressId, invoiceAddress.addressLine as invoiceAddressLine, " +
-                " invoiceAddress.city as invoiceAddressCity, " +
-                " receiverAddress.id as receiverAddressId, receiverAddress.addressLine as receiverAddressLine, " +
-                " receiverAddress.city as receiverAddressCity " +
-                " FROM Order as order " +
-                " JOIN order.customer as customer ON customer.tenantId = :tenantId" +
-                " JOIN order.createdBy as createdBy " +
-                " JOIN order.orderItems as orderItem " +
-                " LEFT JOIN orderItem.images as image " +
-                " JOIN order.invoiceAddress as invoiceAddress " +
-                " JOIN order.receiverAddress as receiverAddress " +
-                " WHERE  1 = 1 " +
-                " ORDER BY order.id DESC ";
-
-        Query query = session.createQuery(orderQuery);
-        query.setParameter("tenantId", tenantId);
-
-        List<Map<String, Object>> orderResultList = new ArrayList<>();
-        Map<Long, Map<String, Object>> orderResultMap = new LinkedHashMap<>();
-        List<Object[]> orderRows = query.list();
-
-        for (Object[] orderRow : orderRows) {
-            Long orderId = (Long) orderRow[0];
-            Long orderItemId = (Long) orderRow[14];
-            Long imageId = (Long) orderRow[17];
-
-            Map<String, Object> orderMap = orderResultMap.getOrDefault(orderId, new HashMap<>());
-            orderMap.put("orderId", orderId);
-            orderMap.put("orderNumber", orderRow[7]);
-            orderMap.put("orderNote", orderRow[1]);
-            orderMap.put("orderDate", orderRow[8]);
-            orderMap.put("createdById", orderRow[5]);
-            orderMap.put("createdByName", orderRow[6]);
-            orderMap.put("totalPrice", orderRow[2]);
-            orderMap.put("withoutTaxPrice", orderRow[3]);
-            orderMap.put("totalTax", orderRow[4]);
-
-            OrderStatus orderStatus = (OrderStatus) orderRow[20];
-            Map<String, Object> orderStatusMap = new HashMap<>();
-            orderStatusMap.put("id", orderStatus.getId());
-            orderStatusMap.put("status", orderStatus.getStatus());
-            orderMap.put("orderStatus", orderStatusMap);
-
-            List<Map<String, Object>> orderItems = (List<Map<String, Object>>) orderMap.getOrDefault("orderItems", new ArrayList<>());
-
-            Map<String, Object> orderItem = orderItems.stream()
-                    .filter(item -> item.get("id").equals(orderItemId))
-                    .findFirst()
-                    .orElse(new HashMap<>());
-
-            if (!orderItem.containsKey("id")) {
-                orderItem.put("name", orderRow[10]);
-                orderItem.put("grossPrice", orderRow[12]);
-                orderItem.put("salesPrice", orderRow[11]);
-                orderItem.put("quantity", orderRow[13]);
-                orderItem.put("refProductId", orderRow[9]);
-                orderItem.put("id", orderItemId);
-                orderItem.put("images", new ArrayList<Map<String, Object>>());
-                orderItems.add(orderItem);
+        Query<Object[]> query = session.createQuery(ORDER_HEADER_COLUMNS + ORDER_HEADER_JOINS + filter.whereClause() +
+                orderClause, Object[].class);
+        filter.parameters().forEach(query::setParameter);
+        if (after != null) {
+            query.setParameter("lastDate", new Date(after.lastDate()));
+            query.setParameter("lastId", after.lastId());
+        }
+        if (maxResults != null) {
+            query.setMaxResults(maxResults);
+        }
+        return query.list();
+    }
+
+    // Items and images are fetched per chunk of orders and indexed by id, so building the responses is linear.
+    // An item without images is still reported with one all-null image, as the API always has.
+    private List<OrderResponse> toOrderResponses(List<Object[]> headers, boolean withCustomer) {
+        Session session = entityManager.unwrap(Session.class);
+        Map<Long, List<OrderItemResponse>> orderItems = new HashMap<>();
+        for (int from = 0; from < headers.size(); from += ORDER_CHUNK_SIZE) {
+            List<Long> orderIds = headers.subList(from, Math.min(from + ORDER_CHUNK_SIZE, headers.size())).stream()
+                    .map(header -> (Long) header[0])
+                    .toList();
+            Query<Object[]> itemQuery = session.createQuery("SELECT order.id, orderItem.id, orderItem.name, " +
+                    " orderItem.grossPrice, orderItem.salesPrice, orderItem.quantity, orderItem.refProductId " +
+                    " FROM Order as order " +
+                    " JOIN order.orderItems as orderItem " +
+                    " WHERE order.id IN :orderIds " +
+                    " ORDER BY orderItem.id ", Object[].class);
+            itemQuery.setParameter("orderIds", orderIds);
+            List<Object[]> itemRows = itemQuery.list();
+
+            Map<Long, List<ImageResponse>> itemImages = new HashMap<>();
+            if (!itemRows.isEmpty()) {
+                Query<Object[]> imageQuery = session.createQuery("SELECT orderItem.id, image.id, image.url, " +
+                        " image.isThumbnail " +
+                        " FROM Order as order " +
+                        " JOIN order.orderItems as orderItem " +
+                        " JOIN orderItem.images as image " +
+                        " WHERE order.id IN :orderIds ", Object[].class);
+                imageQuery.setParameter("orderIds", orderIds);
+                for (Object[] row : imageQuery.list()) {
+                    itemImages.computeIfAbsent((Long) row[0], itemId -> new ArrayList<>())
+                            .add(new ImageResponse((Long) row[1], (String) row[2], (Boolean) row[3]));
+                }
             }
 
-            List<Map<String, Object>> images = (List<Map<String, Object>>) orderItem.get("images");
-            Map<String, Object> image = new HashMap<>();
-            image.put("id", imageId);
-            image.put("url", orderRow[18]);
-            image.put("isThumbnail", orderRow[19]);
-            images.add(image);
+            for (Object[] row : itemRows) {
+                orderItems.computeIfAbsent((Long) row[0], orderId -> new ArrayList<>())
+                        .add(new OrderItemResponse((Long) row[1], (String) row[2], (Double) row[3], (Double) row[4],
+                                (Integer) row[5], (Long) row[6], itemImages.getOrDefault((Long) row[1],
+                                List.of(new ImageResponse(null, null, null)))));
+            }
+        }
+
+        List<OrderResponse> orders = new ArrayList<>(headers.size());
+        for (Object[] header : headers) {
+            orders.add(new OrderResponse((Long) header[0], (String) header[1], (String) header[2], (Date) header[3],
+                    (Long) header[4], (String) header[5], (Double) header[6], (Double) header[7], (Double) header[8],
+                    OrderStatusResponse.from((OrderStatus) header[9]),
+                    orderItems.getOrDefault((Long) header[0], List.of()),
+                    new AddressSummary((Long) header[10], (String) header[11], (String) header[12]),
+                    new AddressSummary((Long) header[13], (String) header[14], (String) header[15]),
+                    withCustomer ? new NamedRef((Long) header[16], (String) header[17]) : null));
+        }
+        return orders;
+    }
+
+    private record ReservedProduct(long id, String name, int stock, Double salesPrice, Double grossPrice) {
+    }
 
-            orderMap.put("orderItems", orderItems);
+    record OrderFilter(String whereClause, Map<String, Object> parameters) {
+    }
 
-            Map<String, Object> invoiceAddressMap = new HashMap<>();
-            invoiceAddressMap.put("id", orderRow[21]);
-            invoiceAddressMap.put("address", orderRow[22]);
-            invoiceAddressMap.put("city", orderRow[23]);
-            orderMap.put("invoiceAddress", invoiceAddressMap);
+    // Opaque to clients: base64url of "orderDateMillis:lastId".
+    private record OrderCursor(long lastDate, long lastId) {
 
-            Map<String, Object> receiverAddressMap = new HashMap<>();
-            receiverAddressMap.put("id", orderRow[24]);
-            receiverAddressMap.put("address", orderRow[25]);
-            receiverAddressMap.put("city", orderRow[26]);
-            orderMap.put("receiverAddress", receiverAddressMap);
+        String encode() {
+            String value = lastDate + ":" + lastId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
 
-            orderResultMap.put(orderId, orderMap);
+        static OrderCursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 2);
+                return new OrderCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
         }
+    }
 
-        orderResultList.addAll(orderResultMap.values());
-        return orderResultList;
+    // A lock wait timeout or deadlock on hot products rolls the whole attempt back; it is retried a few times
+    // after a jittered, growing pause before the caller is asked to come back later. The order number is taken
+    // up front, outside the transaction, and kept across attempts.
+    public Order createOrder(JsonNode json) {
+        String orderNumber = orderNumberAllocator.next(securityService.getCurrentUser().tenantId());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> placeOrder(json, orderNumber));
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= stockLockAttempts) {
+                    throw new ServiceUnavailableException("Products in the basket are busy, please retry the order");
+                }
+                backOff(attempt);
+            }
+        }
     }
 
-    @Transactional
-    public Order createOrder(HttpServletRequest request, JsonNode json) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        Long tenantId = securityService.returnTenantIdByUsernameOrToken("token", token);
+    private void backOff(int attempt) {
+        long ceiling = stockLockBackoffMillis << Math.min(attempt - 1, 10);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Order placement was interrupted, please retry the order");
+        }
+    }
+
+    private Order placeOrder(JsonNode json, String orderNumber) {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        Long tenantId = currentUser.tenantId();
         Long invoiceAddressId = json.get("invoiceAddressId").asLong();
         Long receiverAddressId = json.get("receiverAddressId").asLong();
         Long basketId = json.get("basketId").asLong();
 
         Order order = new Order();
-        String orderNumber = generateOrderNumber(tenantId);
         String orderNote = json.get("orderNote").asText();
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new ResourceNotFoundException("User not found by name: " + userName));
-        Shop shop = user.getCustomer().getShop();
+        User user = userRepository.findById(currentUser.userId())
+                .orElseThrow(() -> new ResourceNotFoundException("User not found by id: " + currentUser.userId()));
+        Shop shop = entityManager.find(Shop.class, currentUser.shopTenantId());
 
         order.setCustomer(customerService.findCustomerById(tenantId));
         order.setShop(shop);
@@ -303,38 +359,37 @@ public class OrderService {
         Double withoutTaxPrice = 0.0;
         Double totalTax = 0.0;
 
+        Map<Long, Integer> quantities = new TreeMap<>();
         for (BasketItem basketItem : basketItems) {
-            Product refProduct = basketItem.getProduct();
-            boolean isStockAvailable = productService.checkStockById(refProduct.getId(), basketItem.getQuantity());
-
-            if (isStockAvailable) {
-                List<Image> imagesCopy = new ArrayList<>();
-                for (Image image : refProduct.getImages()) {
-                    Image imageCopy = new Image();
-                    imageCopy.setUrl(image.getUrl());
-                    imageCopy.setIsThumbnail(image.getIsThumbnail());
-                    imagesCopy.add(imageCopy);
-                }
+            quantities.merge(basketItem.getProduct().getId(), basketItem.getQuantity(), Integer::sum);
+        }
+        Map<Long, ReservedProduct> reserved = reserveStock(currentUser.shopTenantId(), quantities);
 
-                OrderItem orderItem = OrderItem.builder()
-                        .refProductId(refProduct.getId())
-                        .name(refProduct.getName())
-                        .salesPrice(refProduct.getSalesPrice())
-                        .grossPrice(refProduct.getGrossPrice())
-                        .quantity(basketItem.getQuantity())
-                        .images(imagesCopy)
-                        .build();
+        for (BasketItem basketItem : basketItems) {
+            Product refProduct = basketItem.getProduct();
+            ReservedProduct product = reserved.get(refProduct.getId());
+            List<Image> imagesCopy = new ArrayList<>();
+            for (Image image : refProduct.getImages()) {
+                Image imageCopy = new Image();
+                imageCopy.setUrl(image.getUrl());
+                imageCopy.setIsThumbnail(image.getIsThumbnail());
+                imagesCopy.add(imageCopy);
+            }
 
-                totalPrice += refProduct.getGrossPrice() * basketItem.getQuantity();
-                withoutTaxPrice += refProduct.getSalesPrice() * basketItem.getQuantity();
-                totalTax = totalPrice - withoutTaxPrice;
+            OrderItem orderItem = OrderItem.builder()
+                    .refProductId(product.id())
+                    .name(product.name())
+                    .salesPrice(product.salesPrice())
+                    .grossPrice(product.grossPrice())
+                    .quantity(basketItem.getQuantity())
+                    .images(imagesCopy)
+                    .build();
 
-                refProduct.setStock(refProduct.getStock() - basketItem.getQuantity());
+            totalPrice += product.grossPrice() * basketItem.getQuantity();
+            withoutTaxPrice += product.salesPrice() * basketItem.getQuantity();
+            totalTax = totalPrice - withoutTaxPrice;
 
-                order.getOrderItems().add(orderItem);
-            } else {
-                throw new ResourceNotFoundException("Stock is not enough for material: " + refProduct.getName());
-            }
+            order.getOrderItems().add(orderItem);
         }
 
         order.setTotalPrice(totalPrice);
@@ -343,20 +398,99 @@ public class OrderService {
 
         basketRepository.deleteById(basketId);
 
-        return orderRepository.save(order);
+        order = orderRepository.save(order);
+        salesRollupService.recordOrderPlaced(order);
+        return order;
     }
 
-    public static String generateOrderNumber(Long tenantId) {
-        LocalDateTime now = LocalDateTime.now();
+    // All basket lines are reserved together. Only the shop's own products are locked, in id order, so concurrent
+    // orders over overlapping baskets queue up instead of deadlocking. Every line is checked before anything is
+    // written, so a shortfall reports all short lines at once and leaves stock untouched; otherwise one conditional
+    // UPDATE decrements them all. The shop's catalog counter row is not taken here: the rows are marked pending and
+    // stamped with a version after commit, so orders of one shop only ever wait for each other on shared products.
+    private Map<Long, ReservedProduct> reserveStock(Long shopTenantId, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return Map.of();
+        }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyMMddHHmmss");
-        String timestamp = now.format(formatter);
+        Map<Long, ReservedProduct> products = new HashMap<>();
+        namedJdbcTemplate.query("SELECT product.id, product.name, product.stock, product.sales_price, " +
+                " product.gross_price FROM product " +
+                " JOIN product_shop ON product_shop.product_id = product.id " +
+                " WHERE product.id IN (:productIds) AND product_shop.tenant_id = :tenantId " +
+                " ORDER BY product.id FOR UPDATE",
+                Map.of("productIds", quantities.keySet(), "tenantId", shopTenantId != null ? shopTenantId : -1L),
+                resultSet -> {
+                    ReservedProduct product = new ReservedProduct(resultSet.getLong(1), resultSet.getString(2),
+                            resultSet.getInt(3), resultSet.getObject(4, Double.class),
+                            resultSet.getObject(5, Double.class));
+                    products.put(product.id(), product);
+                });
+
+        List<StockShortfall> shortfalls = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> {
+            ReservedProduct product = products.get(productId);
+            int available = product != null ? product.stock() : 0;
+            if (available < quantity) {
+                shortfalls.add(new StockShortfall(productId, product != null ? product.name() : null, quantity,
+                        available));
+            }
+        });
+        if (!shortfalls.isEmpty()) {
+            throw new InsufficientStockException(shortfalls);
+        }
 
-        String orderNumber = tenantId.toString() + timestamp.substring(4, 11);
+        // The rows are locked, so a mismatch only happens when a writer bypasses the locks.
+        if (adjustStock(quantities, true) != quantities.size()) {
+            throw new IllegalStateException("Stock changed while the products were locked");
+        }
+        catalogChangeService.stockChanged(shopTenantId);
+        return products;
+    }
+
+    // Puts the items of a cancelled order back with one UPDATE over the shop's products, in id order like
+    // reserveStock. Products deleted since the order was placed are skipped.
+    private void restock(Order order) {
+        Long shopTenantId = order.getShop().getTenantId();
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            quantities.merge(item.getRefProductId(), item.getQuantity(), Integer::sum);
+        }
+        List<Long> shopProductIds = namedJdbcTemplate.queryForList("SELECT product_id FROM product_shop " +
+                " WHERE tenant_id = :tenantId AND product_id IN (:productIds)",
+                Map.of("tenantId", shopTenantId, "productIds", quantities.keySet()), Long.class);
+        quantities.keySet().retainAll(shopProductIds);
+        if (quantities.isEmpty()) {
+            return;
+        }
+        adjustStock(quantities, false);
+        catalogChangeService.stockChanged(shopTenantId);
+    }
 
-        return orderNumber;
+    // Moves the stock of every product in one statement, rows touched in id order and marked for the catalog version
+    // stamp. A reservation subtracts and only applies where enough stock is left; otherwise the quantities are added.
+    private int adjustStock(Map<Long, Integer> quantities, boolean reserve) {
+        StringBuilder quantity = new StringBuilder("CASE id");
+        List<Object> arguments = new ArrayList<>();
+        quantities.forEach((productId, amount) -> {
+            quantity.append(" WHEN ? THEN ?");
+            arguments.add(productId);
+            arguments.add(amount);
+        });
+        quantity.append(" END");
+        List<Object> parameters = new ArrayList<>(arguments);
+        parameters.add(CatalogChangeService.PENDING_VERSION);
+        parameters.addAll(quantities.keySet());
+        if (reserve) {
+            parameters.addAll(arguments);
+        }
+        String placeholders = String.join(", ", Collections.nCopies(quantities.size(), "?"));
+        return jdbcTemplate.update("UPDATE product SET stock = stock " + (reserve ? "- " : "+ ") + quantity +
+                ", change_version = ? WHERE id IN (" + placeholders + ")" +
+                (reserve ? " AND stock >= " + quantity : "") + " ORDER BY id", parameters.toArray());
     }
 
+
     public Order findOrderById(Long id) {
         return orderRepository.findById(id).orElseThrow(()
                 -> new ResourceNotFoundException("Order could not find by id: " + id));
@@ -375,15 +509,12 @@ public class OrderService {
             throw new IllegalArgumentException("OrderStatus id and status do not match");
         }
 
+        OrderStatus previousStatus = order.getOrderStatus();
         order.setOrderStatus(newStatusById);
+        salesRollupService.recordStatusChange(order, previousStatus);
 
-        if (newStatusById == OrderStatus.CANCELED) {
-            for (OrderItem item : order.getOrderItems()) {
-                Product product = productRepository.findById(item.getRefProductId())
-                        .orElseThrow(() -> new ResourceNotFoundException("Product could not find by id: " + item.getRefProductId()));
-                product.setStock(product.getStock() + item.getQuantity());
-                productRepository.save(product);
-            }
+        if (newStatusById == OrderStatus.CANCELED && previousStatus != OrderStatus.CANCELED) {
+            restock(order);
         }
 
         return orderRepository.save(order);
@@ -0,0 +1,741 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.ProductImportStatus;
+import com.b2bshop.project.exception.BadRequestException;
+import com.b2bshop.project.exception.ResourceNotFoundException;
+import com.b2bshop.project.exception.ServiceUnavailableException;
+import com.b2bshop.project.model.CatalogEntityType;
+import com.b2bshop.project.security.AuthenticatedUser;
+import com.b2bshop.project.util.CsvReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.Date;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Bulk product import for shops onboarding their ERP catalogue. The upload is spooled to a temp file and a
+// background job parses it row by row and upserts products by code (falling back to gtin) in JDBC batches.
+// Rows that fail validation or hit a constraint are reported per line while the rest of the file goes through.
+@Service
+@Slf4j
+public class ProductImportService {
+
+    public enum Format {
+        CSV, NDJSON;
+
+        public static Format from(String format, String contentType) {
+            String value = format != null ? format : contentType != null ? contentType : "";
+            value = value.toLowerCase(Locale.ROOT);
+            if (value.equals("csv") || value.startsWith("text/csv")) {
+                return CSV;
+            }
+            if (value.equals("ndjson") || value.startsWith("application/x-ndjson") || value.startsWith("application/ndjson")) {
+                return NDJSON;
+            }
+            throw new BadRequestException("Import format must be csv or ndjson");
+        }
+    }
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final String INSERT_PRODUCT = "INSERT INTO product (code, gtin, name, description, sales_price, " +
+            " gross_price, vat_rate, stock, is_active, brand_id, category_id, date_created, change_version) " +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Columns missing from the import row keep their current value.
+    private static final String UPDATE_PRODUCT = "UPDATE product SET code = ?, gtin = COALESCE(?, gtin), name = ?, " +
+            " description = COALESCE(?, description), sales_price = COALESCE(?, sales_price), " +
+            " gross_price = COALESCE(?, gross_price), vat_rate = COALESCE(?, vat_rate), stock = COALESCE(?, stock), " +
+            " is_active = COALESCE(?, is_active), brand_id = COALESCE(?, brand_id), " +
+            " category_id = COALESCE(?, category_id), change_version = ? " +
+            " WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SecurityService securityService;
+    private final CatalogCache catalogCache;
+    private final CatalogChangeService catalogChangeService;
+    private final SalesRollupService salesRollupService;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor importExecutor;
+    private final Semaphore importSlots;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final int batchSize;
+    private final long maxBytes;
+    private final long retentionMillis;
+
+    public ProductImportService(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate,
+                                PlatformTransactionManager transactionManager, SecurityService securityService,
+                                CatalogCache catalogCache, CatalogChangeService catalogChangeService,
+                                SalesRollupService salesRollupService, ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${product.import.threads:2}") int threads,
+                                @Value("${product.import.queue-capacity:16}") int queueCapacity,
+                                @Value("${product.import.batch-size:500}") int batchSize,
+                                @Value("${product.import.max-bytes:209715200}") long maxBytes,
+                                @Value("${product.import.retention-ms:3600000}") long retentionMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.securityService = securityService;
+        this.catalogCache = catalogCache;
+        this.catalogChangeService = catalogChangeService;
+        this.salesRollupService = salesRollupService;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxBytes = maxBytes;
+        this.retentionMillis = retentionMillis;
+        // A slot is taken before the upload is read and given back when its job ends, so a full service turns the
+        // request away before spooling anything. The slots bound the executor's queue as well.
+        this.importSlots = new Semaphore(threads + queueCapacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.importExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "product-import-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        ExecutorServiceMetrics.monitor(meterRegistry, importExecutor, "productImport");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        importExecutor.shutdownNow();
+    }
+
+    public ProductImportStatus startImport(Format format, InputStream body) throws IOException {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        if (currentUser.ownShopTenantId() == null) {
+            throw new BadRequestException("Product import needs a shop context");
+        }
+
+        if (!importSlots.tryAcquire()) {
+            throw new ServiceUnavailableException("Too many product imports are running, try again later");
+        }
+        Path file = null;
+        try {
+            file = Files.createTempFile("product-import-", "." + format.name().toLowerCase(Locale.ROOT));
+            spool(body, file);
+            ImportJob job = new ImportJob(UUID.randomUUID().toString(), currentUser.ownShopTenantId(),
+                    currentUser.userId(), format, file);
+            jobs.put(job.id, job);
+            try {
+                importExecutor.execute(() -> {
+                    try {
+                        run(job);
+                    } finally {
+                        importSlots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                jobs.remove(job.id);
+                throw new ServiceUnavailableException("Product imports are shutting down, try again later");
+            }
+            return job.toStatus();
+        } catch (IOException | RuntimeException e) {
+            importSlots.release();
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+            throw e;
+        }
+    }
+
+    public ProductImportStatus getStatus(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null || !Objects.equals(job.tenantId, securityService.getCurrentUser().ownShopTenantId())) {
+            throw new ResourceNotFoundException("Product import not found with id: " + jobId);
+        }
+        return job.toStatus();
+    }
+
+    @Scheduled(fixedDelayString = "${product.import.purge-interval-ms:600000}")
+    public void purgeFinishedJobs() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.getTime() < cutoff);
+    }
+
+    private void spool(InputStream body, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            long total = 0;
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new BadRequestException("Import file is larger than " + maxBytes + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private void run(ImportJob job) {
+        job.start();
+        try (BufferedReader reader = Files.newBufferedReader(job.file, StandardCharsets.UTF_8)) {
+            ImportContext context = loadContext(job.tenantId);
+            RowSource rows = job.format == Format.CSV ? csvRows(reader) : ndjsonRows(reader);
+            Set<String> seenCodes = new HashSet<>();
+            List<ImportRow> batch = new ArrayList<>(batchSize);
+            ParsedRow parsed;
+            while ((parsed = rows.next()) != null) {
+                job.processed.incrementAndGet();
+                ImportRow row;
+                try {
+                    row = toImportRow(parsed.line(), parsed.fields());
+                } catch (IllegalArgumentException e) {
+                    job.fail(parsed.line(), parsed.fields().path("code").asText(null), e.getMessage());
+                    continue;
+                }
+                if (!seenCodes.add(row.code())) {
+                    job.fail(row.line(), row.code(), "Duplicate code in file");
+                    continue;
+                }
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    flush(job, context, batch);
+                    batch.clear();
+                }
+            }
+            flush(job, context, batch);
+            job.finish("COMPLETED", null);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Product import {} failed", job.id, e);
+            job.finish("FAILED", e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(job.file);
+            } catch (IOException e) {
+                log.warn("Could not delete product import file {}", job.file, e);
+            }
+            if (job.created.get() + job.updated.get() > 0) {
+                catalogCache.invalidateTenant(job.tenantId);
+            }
+        }
+    }
+
+    // A failed batch is retried row by row so a single bad row only costs itself.
+    private void flush(ImportJob job, ImportContext context, List<ImportRow> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            job.apply(transactionTemplate.execute(status -> writeBatch(job, context, batch)));
+        } catch (DataAccessException e) {
+            for (ImportRow row : batch) {
+                try {
+                    job.apply(transactionTemplate.execute(status -> writeBatch(job, context, List.of(row))));
+                } catch (DataAccessException rowException) {
+                    job.fail(row.line(), row.code(), rowException.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+    }
+
+    private BatchResult writeBatch(ImportJob job, ImportContext context, List<ImportRow> rows) {
+        long version = catalogChangeService.nextVersion(job.tenantId, CatalogEntityType.PRODUCT);
+        List<ProductImportStatus.RowError> errors = new ArrayList<>();
+        Map<String, ExistingProduct> byCode = new HashMap<>();
+        Map<String, ExistingProduct> byGtin = new HashMap<>();
+        Map<String, ExistingProduct> byName = new HashMap<>();
+        loadExisting(rows, byCode, byGtin, byName);
+
+        List<ResolvedRow> inserts = new ArrayList<>();
+        List<ResolvedRow> updates = new ArrayList<>();
+        for (ImportRow row : rows) {
+            Long brandId = null;
+            if (row.brand() != null) {
+                brandId = context.brandIds().get(ImportContext.key(row.brand()));
+                if (brandId == null) {
+                    errors.add(new ProductImportStatus.RowError(row.line(), row.code(), "Unknown brand: " + row.brand()));
+                    continue;
+                }
+            }
+            Long categoryId = null;
+            if (row.category() != null) {
+                categoryId = context.categoryIds().get(ImportContext.key(row.category()));
+                if (categoryId == null) {
+                    errors.add(new ProductImportStatus.RowError(row.line(), row.code(), "Unknown category: " + row.category()));
+                    continue;
+                }
+            }
+
+            ExistingProduct target = byCode.get(row.code());
+            if (target != null && !Objects.equals(target.tenantId(), job.tenantId)) {
+                errors.add(new ProductImportStatus.RowError(row.line(), row.code(), "Code is used by another shop"));
+                continue;
+            }
+            if (target == null && row.gtin() != null) {
+                target = byGtin.get(row.gtin());
+                if (target != null && !Objects.equals(target.tenantId(), job.tenantId)) {
+                    errors.add(new ProductImportStatus.RowError(row.line(), row.code(), "Gtin is used by another shop"));
+                    continue;
+                }
+            }
+            String conflict = conflictingKey(row, target, byCode, byGtin, byName);
+            if (conflict != null) {
+                errors.add(new ProductImportStatus.RowError(row.line(), row.code(),
+                        "Another product already has this " + conflict));
+                continue;
+            }
+
+            ResolvedRow resolved = new ResolvedRow(row, target != null ? target.id() : null, brandId, categoryId);
+            (target != null ? updates : inserts).add(resolved);
+        }
+
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_PRODUCT, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ResolvedRow resolved = updates.get(i);
+                    setProductColumns(ps, resolved, false);
+                    ps.setLong(12, version);
+                    ps.setLong(13, resolved.productId());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return updates.size();
+                }
+            });
+        }
+
+        if (!inserts.isEmpty()) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_PRODUCT, Statement.RETURN_GENERATED_KEYS),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            setProductColumns(ps, inserts.get(i), true);
+                            ps.setTimestamp(12, now);
+                            ps.setLong(13, version);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return inserts.size();
+                        }
+                    }, keyHolder);
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            for (int i = 0; i < inserts.size(); i++) {
+                ResolvedRow resolved = inserts.get(i);
+                inserts.set(i, new ResolvedRow(resolved.row(), ((Number) keys.get(i).values().iterator().next()).longValue(),
+                        resolved.brandId(), resolved.categoryId()));
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO product_shop (product_id, tenant_id) VALUES (?, ?)", inserts, inserts.size(),
+                    (ps, resolved) -> {
+                        ps.setLong(1, resolved.productId());
+                        ps.setLong(2, job.tenantId);
+                    });
+            salesRollupService.recordProductsCreated(job.tenantId, now, inserts.size());
+        }
+
+        List<ResolvedRow> withImages = new ArrayList<>();
+        for (List<ResolvedRow> written : List.of(updates, inserts)) {
+            for (ResolvedRow resolved : written) {
+                if (resolved.row().images() != null) {
+                    withImages.add(resolved);
+                }
+            }
+        }
+        replaceImages(job, withImages);
+
+        return new BatchResult(inserts.size(), updates.size(), errors);
+    }
+
+    private void loadExisting(List<ImportRow> rows, Map<String, ExistingProduct> byCode,
+                              Map<String, ExistingProduct> byGtin, Map<String, ExistingProduct> byName) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("codes", rows.stream().map(ImportRow::code).toList());
+        parameters.put("names", rows.stream().map(ImportRow::name).toList());
+        List<String> gtins = rows.stream().map(ImportRow::gtin).filter(Objects::nonNull).toList();
+        String sql = "SELECT product.id, product.code, product.gtin, product.name, product_shop.tenant_id " +
+                " FROM product " +
+                " LEFT JOIN product_shop ON product_shop.product_id = product.id " +
+                " WHERE product.code IN (:codes) OR product.name IN (:names) ";
+        if (!gtins.isEmpty()) {
+            sql += " OR product.gtin IN (:gtins) ";
+            parameters.put("gtins", gtins);
+        }
+        namedJdbcTemplate.query(sql, parameters, resultSet -> {
+            ExistingProduct existing = new ExistingProduct(resultSet.getLong(1), resultSet.getObject(5, Long.class));
+            putIfNotNull(byCode, resultSet.getString(2), existing);
+            putIfNotNull(byGtin, resultSet.getString(3), existing);
+            putIfNotNull(byName, resultSet.getString(4), existing);
+        });
+    }
+
+    // code, gtin and name are unique across the whole product table, so any of them may already belong to
+    // a different product than the one the row resolves to.
+    private static String conflictingKey(ImportRow row, ExistingProduct target, Map<String, ExistingProduct> byCode,
+                                         Map<String, ExistingProduct> byGtin, Map<String, ExistingProduct> byName) {
+        Long targetId = target != null ? target.id() : null;
+        ExistingProduct codeOwner = byCode.get(row.code());
+        if (codeOwner != null && !Objects.equals(codeOwner.id(), targetId)) {
+            return "code";
+        }
+        ExistingProduct gtinOwner = row.gtin() != null ? byGtin.get(row.gtin()) : null;
+        if (gtinOwner != null && !Objects.equals(gtinOwner.id(), targetId)) {
+            return "gtin";
+        }
+        ExistingProduct nameOwner = byName.get(row.name());
+        if (nameOwner != null && !Objects.equals(nameOwner.id(), targetId)) {
+            return "name";
+        }
+        return null;
+    }
+
+    private void replaceImages(ImportJob job, List<ResolvedRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Map<String, Object> parameters = Map.of("productIds", rows.stream().map(ResolvedRow::productId).toList());
+        List<Long> oldImageIds = namedJdbcTemplate.queryForList(
+                "SELECT images_id FROM product_images WHERE product_id IN (:productIds)", parameters, Long.class);
+        if (!oldImageIds.isEmpty()) {
+            namedJdbcTemplate.update("DELETE FROM product_images WHERE product_id IN (:productIds)", parameters);
+            namedJdbcTemplate.update("DELETE FROM image WHERE id IN (:imageIds)", Map.of("imageIds", oldImageIds));
+        }
+
+        List<Long> imageProductIds = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        for (ResolvedRow resolved : rows) {
+            for (String url : resolved.row().images()) {
+                imageProductIds.add(resolved.productId());
+                urls.add(url);
+            }
+        }
+        if (urls.isEmpty()) {
+            return;
+        }
+
+        // The first image of each product becomes its thumbnail.
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(
+                        "INSERT INTO image (url, is_thumbnail, created_by_id) VALUES (?, ?, ?)", Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setString(1, urls.get(i));
+                        ps.setBoolean(2, i == 0 || !imageProductIds.get(i).equals(imageProductIds.get(i - 1)));
+                        ps.setLong(3, job.userId);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return urls.size();
+                    }
+                }, keyHolder);
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        jdbcTemplate.batchUpdate("INSERT INTO product_images (product_id, images_id) VALUES (?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, imageProductIds.get(i));
+                        ps.setLong(2, ((Number) keys.get(i).values().iterator().next()).longValue());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return urls.size();
+                    }
+                });
+    }
+
+    // stock and is_active are NOT NULL, so inserts default them to 0 and false like a new Product; any other column
+    // the row leaves out is inserted as NULL. Updates pass nulls to COALESCE and keep the current value.
+    private static void setProductColumns(PreparedStatement ps, ResolvedRow resolved, boolean insert) throws SQLException {
+        ImportRow row = resolved.row();
+        ps.setString(1, row.code());
+        ps.setString(2, row.gtin());
+        ps.setString(3, row.name());
+        ps.setString(4, row.description());
+        ps.setObject(5, row.salesPrice(), Types.DOUBLE);
+        ps.setObject(6, row.grossPrice(), Types.DOUBLE);
+        ps.setObject(7, row.vatRate(), Types.DOUBLE);
+        ps.setObject(8, insert && row.stock() == null ? Integer.valueOf(0) : row.stock(), Types.INTEGER);
+        ps.setObject(9, insert && row.active() == null ? Boolean.FALSE : row.active(), Types.BOOLEAN);
+        ps.setObject(10, resolved.brandId(), Types.BIGINT);
+        ps.setObject(11, resolved.categoryId(), Types.BIGINT);
+    }
+
+    private ImportContext loadContext(Long tenantId) {
+        Map<String, Long> brandIds = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM brand WHERE tenant_id = ?",
+                resultSet -> {
+                    brandIds.put(ImportContext.key(resultSet.getString(2)), resultSet.getLong(1));
+                }, tenantId);
+        Map<String, Long> categoryIds = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM category WHERE shop_id = ?",
+                resultSet -> {
+                    categoryIds.putIfAbsent(ImportContext.key(resultSet.getString(2)), resultSet.getLong(1));
+                }, tenantId);
+        return new ImportContext(brandIds, categoryIds);
+    }
+
+    // Both formats are turned into a JSON object per row, so validation and conversion are shared.
+    private RowSource csvRows(BufferedReader reader) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.next();
+        if (header == null) {
+            return () -> null;
+        }
+        List<String> columns = header.stream().map(String::trim).toList();
+        return () -> {
+            List<String> values = csv.next();
+            if (values == null) {
+                return null;
+            }
+            ObjectNode fields = objectMapper.createObjectNode();
+            for (int i = 0; i < columns.size() && i < values.size(); i++) {
+                if (!values.get(i).isBlank()) {
+                    fields.put(columns.get(i), values.get(i).trim());
+                }
+            }
+            return new ParsedRow(csv.recordLine(), fields);
+        };
+    }
+
+    private RowSource ndjsonRows(BufferedReader reader) {
+        int[] lineNumber = {0};
+        return () -> {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber[0]++;
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+            JsonNode fields;
+            try {
+                fields = objectMapper.readTree(line);
+            } catch (JsonProcessingException e) {
+                fields = null;
+            }
+            if (fields == null || !fields.isObject()) {
+                ObjectNode invalid = objectMapper.createObjectNode();
+                invalid.put("_invalid", "Line is not a JSON object");
+                return new ParsedRow(lineNumber[0], invalid);
+            }
+            return new ParsedRow(lineNumber[0], fields);
+        };
+    }
+
+    private static ImportRow toImportRow(int line, JsonNode fields) {
+        if (fields.has("_invalid")) {
+            throw new IllegalArgumentException(fields.get("_invalid").asText());
+        }
+        String code = text(fields, "code");
+        String name = text(fields, "name");
+        if (code == null) {
+            throw new IllegalArgumentException("code is required");
+        }
+        if (name == null) {
+            throw new IllegalArgumentException("name is required");
+        }
+
+        List<String> images = null;
+        JsonNode imagesNode = fields.get("images");
+        if (imagesNode != null && !imagesNode.isNull()) {
+            images = new ArrayList<>();
+            if (imagesNode.isArray()) {
+                for (JsonNode image : imagesNode) {
+                    String url = image.isObject() ? text(image, "url") : image.asText(null);
+                    if (url != null && !url.isBlank()) {
+                        images.add(url.trim());
+                    }
+                }
+            } else {
+                for (String url : imagesNode.asText().split("\\|")) {
+                    if (!url.isBlank()) {
+                        images.add(url.trim());
+                    }
+                }
+            }
+        }
+
+        return new ImportRow(line, code, text(fields, "gtin"), name, text(fields, "description"),
+                number(fields, "salesPrice"), number(fields, "grossPrice"), number(fields, "vatRate"),
+                integer(fields, "stock"), bool(fields, "active"), reference(fields, "brand"),
+                reference(fields, "category"), images);
+    }
+
+    private static String text(JsonNode fields, String name) {
+        JsonNode node = fields.get(name);
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        String value = node.asText().trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    // Brands and categories may be given as a plain name or as {"name": ...}, like the single product API.
+    private static String reference(JsonNode fields, String name) {
+        JsonNode node = fields.get(name);
+        if (node != null && node.isObject()) {
+            return text(node, "name");
+        }
+        return text(fields, name);
+    }
+
+    private static Double number(JsonNode fields, String name) {
+        String value = text(fields, name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a number: " + value);
+        }
+    }
+
+    private static Integer integer(JsonNode fields, String name) {
+        String value = text(fields, name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a whole number: " + value);
+        }
+    }
+
+    private static Boolean bool(JsonNode fields, String name) {
+        String value = text(fields, name);
+        if (value == null) {
+            return null;
+        }
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "true", "1", "yes" -> Boolean.TRUE;
+            case "false", "0", "no" -> Boolean.FALSE;
+            default -> throw new IllegalArgumentException(name + " is not a boolean: " + value);
+        };
+    }
+
+    private static <K, V> void putIfNotNull(Map<K, V> map, K key, V value) {
+        if (key != null) {
+            map.put(key, value);
+        }
+    }
+
+    private interface RowSource {
+        ParsedRow next() throws IOException;
+    }
+
+    private record ParsedRow(int line, JsonNode fields) {
+    }
+
+    private record ImportRow(int line, String code, String gtin, String name, String description, Double salesPrice,
+                             Double grossPrice, Double vatRate, Integer stock, Boolean active, String brand,
+                             String category, List<String> images) {
+    }
+
+    private record ResolvedRow(ImportRow row, Long productId, Long brandId, Long categoryId) {
+    }
+
+    private record ExistingProduct(Long id, Long tenantId) {
+    }
+
+    private record BatchResult(int created, int updated, List<ProductImportStatus.RowError> errors) {
+    }
+
+    // Brands and categories are matched by name, ignoring case and surrounding whitespace.
+    private record ImportContext(Map<String, Long> brandIds, Map<String, Long> categoryIds) {
+        static String key(String name) {
+            return name.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final class ImportJob {
+        private final String id;
+        private final Long tenantId;
+        private final Long userId;
+        private final Format format;
+        private final Path file;
+        private final Date submittedAt = new Date();
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger updated = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final List<ProductImportStatus.RowError> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile String status = "QUEUED";
+        private volatile String message;
+        private volatile Date startedAt;
+        private volatile Date finishedAt;
+
+        private ImportJob(String id, Long tenantId, Long userId, Format format, Path file) {
+            this.id = id;
+            this.tenantId = tenantId;
+            this.userId = userId;
+            this.format = format;
+            this.file = file;
+        }
+
+        private void start() {
+            startedAt = new Date();
+            status = "RUNNING";
+        }
+
+        private void finish(String finalStatus, String finalMessage) {
+            message = finalMessage;
+            finishedAt = new Date();
+            status = finalStatus;
+        }
+
+        private void apply(BatchResult result) {
+            created.addAndGet(result.created());
+            updated.addAndGet(result.updated());
+            for (ProductImportStatus.RowError error : result.errors()) {
+                fail(error.line(), error.code(), error.message());
+            }
+        }
+
+        private void fail(int line, String code, String errorMessage) {
+            failed.incrementAndGet();
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ProductImportStatus.RowError(line, code, errorMessage));
+            }
+        }
+
+        private ProductImportStatus toStatus() {
+            List<ProductImportStatus.RowError> reportedErrors;
+            synchronized (errors) {
+                reportedErrors = List.copyOf(errors);
+            }
+            return new ProductImportStatus(id, status, format.name(), processed.get(), created.get(), updated.get(),
+                    failed.get(), reportedErrors, failed.get() > reportedErrors.size(), message, submittedAt,
+                    startedAt, finishedAt);
+        }
+    }
+}
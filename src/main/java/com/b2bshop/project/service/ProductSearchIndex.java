@@ -0,0 +1,246 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.ProductResponse;
+
+import java.text.Normalizer;
+import java.util.*;
+
+// Immutable inverted index over one shop's products. Terms are Turkish-lowercased and folded to ASCII so
+// "süt", "SÜT" and "sut" all match; scoring is BM25 with per-field weights.
+public final class ProductSearchIndex {
+
+    public record Hit(Long productId, double score) {
+    }
+
+    private static final Locale TURKISH = Locale.forLanguageTag("tr");
+    private static final float CODE_WEIGHT = 4f;
+    private static final float NAME_WEIGHT = 3f;
+    private static final float BRAND_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double PREFIX_FACTOR = 0.8;
+    private static final double FUZZY_FACTOR = 0.5;
+    private static final int MAX_EXPANSIONS = 64;
+
+    private final Map<String, Map<Long, Float>> postings;
+    private final Map<Long, Map<String, Float>> documents;
+    private final String[] sortedTerms;
+    private final double averageLength;
+
+    private ProductSearchIndex(Map<String, Map<Long, Float>> postings, Map<Long, Map<String, Float>> documents) {
+        this.postings = postings;
+        this.documents = documents;
+        this.sortedTerms = postings.keySet().toArray(new String[0]);
+        Arrays.sort(this.sortedTerms);
+        this.averageLength = documents.values().stream()
+                .mapToDouble(ProductSearchIndex::length)
+                .average()
+                .orElse(1.0);
+    }
+
+    public static ProductSearchIndex build(Collection<CatalogSnapshot.CatalogProduct> products) {
+        Map<String, Map<Long, Float>> postings = new HashMap<>();
+        Map<Long, Map<String, Float>> documents = new HashMap<>();
+        for (CatalogSnapshot.CatalogProduct product : products) {
+            Map<String, Float> terms = termsOf(product);
+            documents.put(product.id(), terms);
+            terms.forEach((term, weight) -> postings.computeIfAbsent(term, key -> new HashMap<>()).put(product.id(), weight));
+        }
+        return new ProductSearchIndex(postings, documents);
+    }
+
+    // Copy-on-write update for a batch of changed products (a null replacement removes the product). The term and
+    // document maps are copied once per batch, each posting list a product gained or lost a term in is copied once,
+    // and the terms are sorted once, so a catch-up costs one copy of the index rather than one per product.
+    public ProductSearchIndex withProducts(Map<Long, CatalogSnapshot.CatalogProduct> replacements) {
+        Map<String, Map<Long, Float>> newPostings = null;
+        Map<Long, Map<String, Float>> newDocuments = null;
+        Set<String> copiedTerms = new HashSet<>();
+        for (Map.Entry<Long, CatalogSnapshot.CatalogProduct> replacement : replacements.entrySet()) {
+            Long productId = replacement.getKey();
+            Map<String, Float> oldTerms = documents.getOrDefault(productId, Map.of());
+            Map<String, Float> newTerms = replacement.getValue() == null ? Map.of() : termsOf(replacement.getValue());
+            if (oldTerms.equals(newTerms)) {
+                continue;
+            }
+            if (newPostings == null) {
+                newPostings = new HashMap<>(postings);
+                newDocuments = new HashMap<>(documents);
+            }
+
+            for (String term : oldTerms.keySet()) {
+                if (!newTerms.containsKey(term)) {
+                    Map<Long, Float> posting = ownPosting(newPostings, copiedTerms, term);
+                    posting.remove(productId);
+                    if (posting.isEmpty()) {
+                        newPostings.remove(term);
+                        copiedTerms.remove(term);
+                    }
+                }
+            }
+            for (Map.Entry<String, Float> term : newTerms.entrySet()) {
+                if (!term.getValue().equals(oldTerms.get(term.getKey()))) {
+                    ownPosting(newPostings, copiedTerms, term.getKey()).put(productId, term.getValue());
+                }
+            }
+
+            if (replacement.getValue() == null) {
+                newDocuments.remove(productId);
+            } else {
+                newDocuments.put(productId, newTerms);
+            }
+        }
+        return newPostings == null ? this : new ProductSearchIndex(newPostings, newDocuments);
+    }
+
+    // The posting list of term in the new index, copied from the shared one the first time this update touches it.
+    private static Map<Long, Float> ownPosting(Map<String, Map<Long, Float>> newPostings, Set<String> copiedTerms,
+                                              String term) {
+        if (copiedTerms.add(term)) {
+            newPostings.put(term, new HashMap<>(newPostings.getOrDefault(term, Map.of())));
+        }
+        return newPostings.get(term);
+    }
+
+    // Every query token has to match (exactly, as a prefix or within the typo budget); hits are sorted by score.
+    public List<Hit> search(String query) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, Double> scores = null;
+        for (String token : tokens) {
+            Map<Long, Double> tokenScores = new HashMap<>();
+            for (Map.Entry<String, Double> expansion : expand(token).entrySet()) {
+                Map<Long, Float> posting = postings.get(expansion.getKey());
+                double idf = Math.log(1 + (documents.size() - posting.size() + 0.5) / (posting.size() + 0.5));
+                for (Map.Entry<Long, Float> entry : posting.entrySet()) {
+                    double tf = entry.getValue();
+                    double norm = K1 * (1 - B + B * length(documents.get(entry.getKey())) / averageLength);
+                    double score = expansion.getValue() * idf * tf * (K1 + 1) / (tf + norm);
+                    tokenScores.merge(entry.getKey(), score, Math::max);
+                }
+            }
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                scores.keySet().retainAll(tokenScores.keySet());
+                for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                    entry.setValue(entry.getValue() + tokenScores.get(entry.getKey()));
+                }
+            }
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(scores.size());
+        scores.forEach((productId, score) -> hits.add(new Hit(productId, score)));
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed().thenComparing(Hit::productId));
+        return hits;
+    }
+
+    private Map<String, Double> expand(String token) {
+        Map<String, Double> expansions = new LinkedHashMap<>();
+        if (postings.containsKey(token)) {
+            expansions.put(token, 1.0);
+        }
+
+        if (token.length() >= 2) {
+            int start = Arrays.binarySearch(sortedTerms, token);
+            start = start < 0 ? -start - 1 : start + 1;
+            for (int i = start; i < sortedTerms.length && expansions.size() < MAX_EXPANSIONS
+                    && sortedTerms[i].startsWith(token); i++) {
+                expansions.putIfAbsent(sortedTerms[i], PREFIX_FACTOR);
+            }
+        }
+
+        int maxEdits = token.length() >= 8 ? 2 : token.length() >= 4 ? 1 : 0;
+        if (maxEdits > 0) {
+            for (String term : sortedTerms) {
+                if (expansions.size() >= MAX_EXPANSIONS) {
+                    break;
+                }
+                if (Math.abs(term.length() - token.length()) <= maxEdits && !expansions.containsKey(term)
+                        && editDistance(token, term, maxEdits) <= maxEdits) {
+                    expansions.put(term, FUZZY_FACTOR);
+                }
+            }
+        }
+        return expansions;
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String folded = Normalizer.normalize(text.toLowerCase(TURKISH).replace('\u0131', 'i'), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "");
+        List<String> tokens = new ArrayList<>();
+        for (String token : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static Map<String, Float> termsOf(CatalogSnapshot.CatalogProduct product) {
+        ProductResponse view = product.view();
+        Map<String, Float> terms = new HashMap<>();
+        addTerms(terms, view.code(), CODE_WEIGHT);
+        addTerms(terms, view.gtin(), CODE_WEIGHT);
+        addTerms(terms, view.name(), NAME_WEIGHT);
+        if (view.brand() != null) {
+            addTerms(terms, view.brand().name(), BRAND_WEIGHT);
+        }
+        addTerms(terms, view.description(), DESCRIPTION_WEIGHT);
+        return terms;
+    }
+
+    private static void addTerms(Map<String, Float> terms, String text, float weight) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Float::sum);
+        }
+    }
+
+    private static double length(Map<String, Float> terms) {
+        double length = 0;
+        for (float weight : terms.values()) {
+            length += weight;
+        }
+        return Math.max(length, 1.0);
+    }
+
+    // Optimal string alignment distance (adjacent transpositions count as one edit), abandoned past maxEdits.
+    private static int editDistance(String a, String b, int maxEdits) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], previous2[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+}
@@ -1,19 +1,27 @@
 package com.b2bshop.project.service;
 
+import com.b2bshop.project.dto.CategorySummary;
+import com.b2bshop.project.dto.ImageResponse;
+import com.b2bshop.project.dto.NamedRef;
+import com.b2bshop.project.dto.ProductResponse;
+import com.b2bshop.project.exception.BadRequestException;
 import com.b2bshop.project.exception.ResourceNotFoundException;
 import com.b2bshop.project.model.*;
 import com.b2bshop.project.repository.ImageRepository;
 import com.b2bshop.project.repository.ProductRepository;
 import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.security.AuthenticatedUser;
+import com.b2bshop.project.util.ConditionalRequests;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.EntityManager;
-import jakarta.servlet.http.HttpServletRequest;
 import jakarta.transaction.Transactional;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,153 +30,400 @@ public class ProductService {
     private final EntityManager entityManager;
     private final ProductRepository productRepository;
     private final SecurityService securityService;
-    private final JwtService jwtService;
     private final UserRepository userRepository;
     private final ImageRepository imageRepository;
     private final BrandService brandService;
     private final CategoryService categoryService;
+    private final CatalogCache catalogCache;
+    private final CatalogChangeService catalogChangeService;
+    private final SalesRollupService salesRollupService;
 
-    public ProductService(ProductRepository productRepository, SecurityService securityService, JwtService jwtService,
+    public ProductService(ProductRepository productRepository, SecurityService securityService,
                           UserRepository userRepository, EntityManager entityManager, ImageRepository imageRepository,
-                          BrandService brandService, CategoryService categoryService) {
+                          BrandService brandService, CategoryService categoryService, CatalogCache catalogCache,
+                          CatalogChangeService catalogChangeService, SalesRollupService salesRollupService) {
         this.productRepository = productRepository;
         this.securityService = securityService;
-        this.jwtService = jwtService;
         this.userRepository = userRepository;
         this.entityManager = entityManager;
         this.imageRepository = imageRepository;
         this.brandService = brandService;
         this.categoryService = categoryService;
+        this.catalogCache = catalogCache;
+        this.catalogChangeService = catalogChangeService;
+        this.salesRollupService = salesRollupService;
     }
 
-    public List<Map<String, Object>> getAllProducts(HttpServletRequest request, Long categoryId, List<Long> brandIds) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        Long tenantId = securityService.returnTenantIdByUsernameOrToken("token", token);
-        String whereCondition = " ";
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new RuntimeException("User not found"));
-        Set<Role> userRoles = user.getAuthorities();
-        if (userRoles.contains(Role.ROLE_CUSTOMER_USER)) {
-            whereCondition = " AND product.isActive = true AND product.stock > 0 ";
-            tenantId = user.getCustomer().getShop().getTenantId();
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    static final String PRODUCT_COLUMNS = "SELECT product.id, product.name, product.description, " +
+            " product.salesPrice, product.grossPrice, product.vatRate, product.code, product.gtin, product.stock, " +
+            " product.isActive, brand.id as brandId, brand.name as brandName, " +
+            " category.id as categoryId, category.name as categoryName, " +
+            " parentCategory.id as parentCategoryId, parentCategory.name as parentCategoryName ";
+
+    static final String PRODUCT_JOINS = " FROM Product as product " +
+            " JOIN product.shop as shop " +
+            " LEFT JOIN product.brand as brand " +
+            " LEFT JOIN product.category as category " +
+            " LEFT JOIN category.parentCategory as parentCategory ";
+
+    public List<ProductResponse> getAllProducts(Long categoryId, List<Long> brandIds) {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        if (currentUser.hasRole(Role.ROLE_CUSTOMER_USER) && currentUser.shopTenantId() != null) {
+            CatalogSnapshot snapshot = catalogCache.get(currentUser.shopTenantId());
+            return snapshot.getProductsById().stream()
+                    .filter(customerFilter(snapshot, categoryId, brandIds))
+                    .map(CatalogSnapshot.CatalogProduct::view)
+                    .toList();
         }
 
+        ProductFilter filter = productFilter(categoryId, brandIds);
+
         Session session = entityManager.unwrap(Session.class);
-        String hqlQuery = "SELECT product.id, product.name, product.description, product.salesPrice, product.grossPrice, " +
-                " product.vatRate, product.code, product.gtin, product.stock, product.isActive, " +
-                " brand.id as brandId, brand.name as brandName, image.id as imageId, image.url as imageUrl, " +
-                " image.isThumbnail as imageIsThumbnail, " +
-                " category.id as categoryId, category.name as categoryName, " +
-                " parentCategory.id as parentCategoryId, parentCategory.name as parentCategoryName " +
-                " FROM Product as product " +
-                " JOIN product.shop as shop " +
-                " LEFT JOIN product.brand as brand " +
+        String hqlQuery = PRODUCT_COLUMNS +
+                " , image.id as imageId, image.url as imageUrl, image.isThumbnail as imageIsThumbnail " +
+                PRODUCT_JOINS +
                 " LEFT JOIN product.images as image " +
-                " LEFT JOIN product.category as category " +
-                " LEFT JOIN category.parentCategory as parentCategory " +
-                " WHERE 1 = 1 ";
+                filter.whereClause();
 
-        if (tenantId != null) {
-            hqlQuery += " AND shop.id = :tenantId";
+        Query<Object[]> query = session.createQuery(hqlQuery, Object[].class);
+        filter.parameters().forEach(query::setParameter);
+
+        List<Object[]> rows = query.list();
+        Map<Long, Object[]> productRows = new LinkedHashMap<>();
+        Map<Long, List<ImageResponse>> productImages = new HashMap<>();
+
+        for (Object[] row : rows) {
+            productRows.putIfAbsent((Long) row[0], row);
+            if (row[16] != null) {
+                productImages.computeIfAbsent((Long) row[0], productId -> new ArrayList<>())
+                        .add(toImageResponse(row[16], row[17], row[18]));
+            }
         }
 
-        if (brandIds != null && !brandIds.isEmpty()) {
-            hqlQuery += " AND brand.id IN :brandIds";
+        List<ProductResponse> products = new ArrayList<>(productRows.size());
+        productRows.forEach((productId, row) ->
+                products.add(toProductResponse(row, productImages.getOrDefault(productId, List.of()))));
+        return products;
+    }
+
+    // Read from catalog_version with one primary-key lookup. Customers are served from the cached snapshot, so
+    // while that is behind the counter the listing goes out untagged instead of pairing a newer tag with older
+    // data. Null when the listing is not scoped to a single shop.
+    public String getAllProductsETag() {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        Long tenantId = customer ? currentUser.shopTenantId() : currentUser.ownShopTenantId();
+        if (tenantId == null) {
+            return null;
+        }
+        CatalogVersion catalogVersion = entityManager.find(CatalogVersion.class, tenantId);
+        if (customer && !catalogCache.isCurrent(tenantId, catalogVersion)) {
+            return null;
+        }
+        return ConditionalRequests.etag("products", tenantId,
+                catalogVersion != null ? catalogVersion.getVersion() : 0, customer ? "c" : "s");
+    }
+
+    // Keyset page: products are fetched without the image join so the limit applies to products,
+    // then images for just that page are loaded in a second query.
+    public Map<String, Object> getProductPage(Long categoryId, List<Long> brandIds, Integer limit, String cursor,
+                                              String sort, boolean includeTotal, boolean includeFacets) {
+        ProductSort productSort = ProductSort.from(sort);
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        ProductCursor after = cursor != null && !cursor.isBlank() ? ProductCursor.decode(cursor, productSort) : null;
+
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        if (currentUser.hasRole(Role.ROLE_CUSTOMER_USER) && currentUser.shopTenantId() != null) {
+            CatalogSnapshot snapshot = catalogCache.get(currentUser.shopTenantId());
+            Map<String, Object> page = getSnapshotPage(snapshot, categoryId, brandIds, pageSize, after, productSort,
+                    includeTotal);
+            if (includeFacets) {
+                page.put("facets", listingFacets(snapshot, true, categoryId, brandIds));
+            }
+            return page;
+        }
+
+        ProductFilter filter = productFilter(categoryId, brandIds);
+        Session session = entityManager.unwrap(Session.class);
+        String hqlQuery = PRODUCT_COLUMNS + PRODUCT_JOINS + filter.whereClause();
+        // MySQL sorts NULL names first, so after a nameless product the rest of those come before every named one.
+        boolean afterNullName = after != null && productSort == ProductSort.NAME && after.lastName() == null;
+        if (after != null) {
+            hqlQuery += productSort != ProductSort.NAME ? " AND product.id > :lastId "
+                    : afterNullName ? " AND (product.name IS NOT NULL OR product.id > :lastId) "
+                    : " AND (product.name > :lastName OR (product.name = :lastName AND product.id > :lastId)) ";
+        }
+        hqlQuery += productSort == ProductSort.NAME ? " ORDER BY product.name, product.id " : " ORDER BY product.id ";
+
+        Query<Object[]> query = session.createQuery(hqlQuery, Object[].class);
+        filter.parameters().forEach(query::setParameter);
+        if (after != null) {
+            query.setParameter("lastId", after.lastId());
+            if (productSort == ProductSort.NAME && !afterNullName) {
+                query.setParameter("lastName", after.lastName());
+            }
+        }
+        query.setMaxResults(pageSize + 1);
+        List<Object[]> rows = query.list();
+
+        boolean hasMore = rows.size() > pageSize;
+        if (hasMore) {
+            rows = rows.subList(0, pageSize);
         }
 
+        Map<Long, List<ImageResponse>> productImages = new HashMap<>();
+        if (!rows.isEmpty()) {
+            Query<Object[]> imageQuery = session.createQuery("SELECT product.id, image.id, image.url, image.isThumbnail " +
+                    " FROM Product as product " +
+                    " JOIN product.images as image " +
+                    " WHERE product.id IN :productIds", Object[].class);
+            imageQuery.setParameter("productIds", rows.stream().map(row -> (Long) row[0]).toList());
+            for (Object[] row : imageQuery.list()) {
+                productImages.computeIfAbsent((Long) row[0], productId -> new ArrayList<>())
+                        .add(toImageResponse(row[1], row[2], row[3]));
+            }
+        }
+
+        List<ProductResponse> items = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            items.add(toProductResponse(row, productImages.getOrDefault((Long) row[0], List.of())));
+        }
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", items);
+        if (hasMore) {
+            Object[] last = rows.get(rows.size() - 1);
+            page.put("nextCursor", new ProductCursor(productSort, (Long) last[0], (String) last[1]).encode());
+        } else {
+            page.put("nextCursor", null);
+        }
+        if (includeTotal) {
+            Query<Long> countQuery = session.createQuery("SELECT COUNT(product.id) " + PRODUCT_JOINS
+                    + filter.whereClause(), Long.class);
+            filter.parameters().forEach(countQuery::setParameter);
+            page.put("total", countQuery.uniqueResult());
+        }
+        if (includeFacets && currentUser.ownShopTenantId() != null) {
+            page.put("facets", listingFacets(catalogCache.get(currentUser.ownShopTenantId()), false, categoryId, brandIds));
+        }
+        return page;
+    }
+
+    public Map<String, Object> searchProducts(String q, Long categoryId, List<Long> brandIds, Integer page, Integer size,
+                                              boolean includeFacets) {
+        int pageNumber = page == null ? 0 : page;
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : size;
+        if (pageNumber < 0 || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException("page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
+        }
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        boolean customer = currentUser.hasRole(Role.ROLE_CUSTOMER_USER);
+        Long tenantId = customer ? currentUser.shopTenantId() : currentUser.ownShopTenantId();
+        if (tenantId == null) {
+            throw new BadRequestException("Product search needs a shop context");
+        }
+
+        CatalogSnapshot snapshot = catalogCache.get(tenantId);
+        Predicate<CatalogSnapshot.CatalogProduct> filter = customer
+                ? customerFilter(snapshot, categoryId, brandIds)
+                : staffFilter(snapshot, categoryId, brandIds);
+        List<ProductSearchIndex.Hit> hits = snapshot.getSearchIndex().search(q);
+        List<ProductResponse> matches = new ArrayList<>();
+        for (ProductSearchIndex.Hit hit : hits) {
+            CatalogSnapshot.CatalogProduct product = snapshot.findProduct(hit.productId());
+            if (product != null && filter.test(product)) {
+                matches.add(product.view());
+            }
+        }
+
+        int from = (int) Math.min((long) pageNumber * pageSize, matches.size());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("items", matches.subList(from, Math.min(from + pageSize, matches.size())));
+        result.put("total", matches.size());
+        result.put("page", pageNumber);
+        result.put("size", pageSize);
+        if (includeFacets) {
+            CatalogFacets facets = snapshot.getFacets();
+            BitSet base = facets.ofProducts(hits.stream().map(ProductSearchIndex.Hit::productId).toList());
+            if (customer) {
+                base.and(facets.all(true));
+            }
+            result.put("facets", facets.count(snapshot, base, facets.brandMask(brandIds),
+                    facets.categoryMask(categoryId), customer));
+        }
+        return result;
+    }
+
+    private Map<String, Object> listingFacets(CatalogSnapshot snapshot, boolean customer, Long categoryId,
+                                              List<Long> brandIds) {
+        CatalogFacets facets = snapshot.getFacets();
+        return facets.count(snapshot, facets.all(customer), facets.brandMask(brandIds),
+                facets.categoryMask(categoryId), customer);
+    }
+
+    private Map<String, Object> getSnapshotPage(CatalogSnapshot snapshot, Long categoryId, List<Long> brandIds,
+                                                int pageSize, ProductCursor after, ProductSort productSort,
+                                                boolean includeTotal) {
+        Predicate<CatalogSnapshot.CatalogProduct> filter = customerFilter(snapshot, categoryId, brandIds);
+        Comparator<CatalogSnapshot.CatalogProduct> order = productSort == ProductSort.NAME
+                ? Comparator.comparing(CatalogSnapshot.CatalogProduct::name, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(CatalogSnapshot.CatalogProduct::id)
+                : Comparator.comparing(CatalogSnapshot.CatalogProduct::id);
+        CatalogSnapshot.CatalogProduct afterKey = after == null ? null
+                : new CatalogSnapshot.CatalogProduct(after.lastId(), after.lastName(), null, null, false, 0, null);
+
+        List<CatalogSnapshot.CatalogProduct> items = new ArrayList<>(pageSize);
+        boolean hasMore = false;
+        for (CatalogSnapshot.CatalogProduct product : productSort == ProductSort.NAME
+                ? snapshot.getProductsByName() : snapshot.getProductsById()) {
+            if ((afterKey != null && order.compare(product, afterKey) <= 0) || !filter.test(product)) {
+                continue;
+            }
+            if (items.size() == pageSize) {
+                hasMore = true;
+                break;
+            }
+            items.add(product);
+        }
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", items.stream().map(CatalogSnapshot.CatalogProduct::view).toList());
+        if (hasMore) {
+            CatalogSnapshot.CatalogProduct last = items.get(items.size() - 1);
+            page.put("nextCursor", new ProductCursor(productSort, last.id(), last.name()).encode());
+        } else {
+            page.put("nextCursor", null);
+        }
+        if (includeTotal) {
+            page.put("total", snapshot.getProductsById().stream().filter(filter).count());
+        }
+        return page;
+    }
+
+    private Predicate<CatalogSnapshot.CatalogProduct> customerFilter(CatalogSnapshot snapshot, Long categoryId,
+                                                                     List<Long> brandIds) {
+        return staffFilter(snapshot, categoryId, brandIds).and(CatalogSnapshot.CatalogProduct::isAvailable);
+    }
+
+    private Predicate<CatalogSnapshot.CatalogProduct> staffFilter(CatalogSnapshot snapshot, Long categoryId,
+                                                                  List<Long> brandIds) {
         Set<Long> categoryIds = null;
         if (categoryId != null) {
-            Category category = categoryService.findById(categoryId);
+            categoryIds = new HashSet<>();
+            categoryIds.add(categoryId);
+            CategoryTree.Node category = snapshot.findCategory(categoryId);
             if (category != null) {
-                categoryIds = new HashSet<>(category.getChildCategoryIds());
-                categoryIds.add(categoryId);
+                categoryIds.addAll(category.descendantIds());
             }
-            hqlQuery += " AND category.id IN :categoryIds";
         }
+        Set<Long> brandIdSet = brandIds != null && !brandIds.isEmpty() ? new HashSet<>(brandIds) : null;
+        Set<Long> finalCategoryIds = categoryIds;
+        return product -> (brandIdSet == null || brandIdSet.contains(product.brandId()))
+                && (finalCategoryIds == null || finalCategoryIds.contains(product.categoryId()));
+    }
 
-        hqlQuery += whereCondition;
+    private ProductFilter productFilter(Long categoryId, List<Long> brandIds) {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        Long tenantId = currentUser.tenantId();
+        Map<String, Object> parameters = new HashMap<>();
+        String whereClause = " WHERE 1 = 1 ";
+
+        if (currentUser.hasRole(Role.ROLE_CUSTOMER_USER)) {
+            whereClause += " AND product.isActive = true AND product.stock > 0 ";
+            tenantId = currentUser.shopTenantId();
+        }
 
-        Query query = session.createQuery(hqlQuery);
         if (tenantId != null) {
-            query.setParameter("tenantId", tenantId);
+            whereClause += " AND shop.id = :tenantId ";
+            parameters.put("tenantId", tenantId);
         }
+
         if (brandIds != null && !brandIds.isEmpty()) {
-            query.setParameter("brandIds", brandIds);
+            whereClause += " AND brand.id IN :brandIds ";
+            parameters.put("brandIds", brandIds);
         }
-        if (categoryId != null && categoryIds != null) {
-            query.setParameter("categoryIds", categoryIds);
+
+        // The closure table has a depth-0 row for the category itself, so this covers the whole subtree.
+        if (categoryId != null) {
+            whereClause += " AND category.id IN (SELECT closure.descendantId FROM CategoryClosure as closure " +
+                    " WHERE closure.ancestorId = :categoryId) ";
+            parameters.put("categoryId", categoryId);
         }
 
-        List<Object[]> rows = query.list();
-        Map<Long, Map<String, Object>> productsMap = new HashMap<>();
+        return new ProductFilter(whereClause, parameters);
+    }
 
-        for (Object[] row : rows) {
-            Long productId = (Long) row[0];
-            Map<String, Object> productMap = productsMap.get(productId);
-
-            if (productMap == null) {
-                productMap = new HashMap<>();
-                productMap.put("id", row[0]);
-                productMap.put("name", row[1]);
-                productMap.put("description", row[2]);
-                productMap.put("salesPrice", row[3]);
-                productMap.put("grossPrice", row[4]);
-                productMap.put("vatRate", row[5]);
-                productMap.put("code", row[6]);
-                productMap.put("gtin", row[7]);
-                productMap.put("stock", row[8]);
-                productMap.put("active", row[9]);
-
-                Map<String, Object> brandMap = new HashMap<>();
-                if (row[10] != null) {
-                    brandMap.put("id", row[10]);
-                    brandMap.put("name", row[11]);
-                } else {
-                    brandMap = null;
-                }
-                productMap.put("brand", brandMap);
-                productMap.put("images", new ArrayList<Map<String, Object>>());
-
-                Map<String, Object> categoryMap = new HashMap<>();
-                if (row[15] != null) {
-                    categoryMap.put("id", row[15]);
-                    categoryMap.put("name", row[16]);
-
-                    Map<String, Object> parentCategoryMap = new HashMap<>();
-                    if (row[17] != null) {
-                        parentCategoryMap.put("id", row[17]);
-                        parentCategoryMap.put("name", row[18]);
-                    } else {
-                        parentCategoryMap = null;
-                    }
-                    categoryMap.put("parentCategory", parentCategoryMap);
-                } else {
-                    categoryMap = null;
-                }
-                productMap.put("category", categoryMap);
+    static ProductResponse toProductResponse(Object[] row, List<ImageResponse> images) {
+        NamedRef brand = row[10] != null ? new NamedRef((Long) row[10], (String) row[11]) : null;
+        CategorySummary category = null;
+        if (row[12] != null) {
+            NamedRef parentCategory = row[14] != null ? new NamedRef((Long) row[14], (String) row[15]) : null;
+            category = new CategorySummary((Long) row[12], (String) row[13], parentCategory);
+        }
+        return new ProductResponse((Long) row[0], (String) row[1], (String) row[2], (Double) row[3], (Double) row[4],
+                (Double) row[5], (String) row[6], (String) row[7], (Integer) row[8], (Boolean) row[9], brand,
+                List.copyOf(images), category);
+    }
 
-                productsMap.put(productId, productMap);
-            }
+    static ImageResponse toImageResponse(Object id, Object url, Object isThumbnail) {
+        return new ImageResponse((Long) id, (String) url, (Boolean) isThumbnail);
+    }
+
+    private record ProductFilter(String whereClause, Map<String, Object> parameters) {
+    }
+
+    private enum ProductSort {
+        ID, NAME;
 
-            if (row[12] != null) {
-                Map<String, Object> imageMap = new HashMap<>();
-                imageMap.put("id", row[12]);
-                imageMap.put("url", row[13]);
-                imageMap.put("isThumbnail", row[14]);
-                ((List<Map<String, Object>>) productMap.get("images")).add(imageMap);
+        static ProductSort from(String sort) {
+            if (sort == null || sort.isBlank()) {
+                return ID;
+            }
+            try {
+                return valueOf(sort.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Unsupported sort: " + sort);
             }
         }
-
-        return new ArrayList<>(productsMap.values());
     }
 
+    // Opaque to clients: base64url of "sort:lastId:hasName:lastName". hasName is empty for a product without a name
+    // (and for id order), so a null name is told apart from one spelled "null".
+    private record ProductCursor(ProductSort sort, Long lastId, String lastName) {
+
+        String encode() {
+            String name = sort == ProductSort.NAME ? lastName : null;
+            String value = sort.name() + ":" + lastId + ":" + (name != null ? "1:" + name : ":");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static ProductCursor decode(String cursor, ProductSort expectedSort) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 4);
+                ProductSort sort = ProductSort.valueOf(parts[0]);
+                if (sort != expectedSort) {
+                    throw new BadRequestException("Cursor was issued for a different sort");
+                }
+                return new ProductCursor(sort, Long.parseLong(parts[1]), parts[2].isEmpty() ? null : parts[3]);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
+        }
+    }
 
     @Transactional
-    public Product createProduct(HttpServletRequest request, JsonNode json) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(() -> new RuntimeException("User not found"));
-        Shop shop = user.getShop();
+    public Product createProduct(JsonNode json) {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        User user = userRepository.findById(currentUser.userId())
+                .orElseThrow(() -> new ResourceNotFoundException("User not found by id: " + currentUser.userId()));
+        Shop shop = currentUser.ownShopTenantId() != null
+                ? entityManager.find(Shop.class, currentUser.ownShopTenantId()) : null;
 
         Brand brand = null;
         JsonNode brandNode = json.get("brand");
@@ -198,6 +453,8 @@ public class ProductService {
         product.setBrand(brand);
         product.setCategory(category);
         product.setDateCreated(new Date());
+        product.setChangeVersion(catalogChangeService.nextVersion(currentUser.ownShopTenantId(),
+                CatalogEntityType.PRODUCT));
 
         List<Image> images = new ArrayList<>();
         if (json.has("images")) {
@@ -213,6 +470,8 @@ public class ProductService {
 
         product = productRepository.save(product);
         imageRepository.saveAll(images);
+        salesRollupService.recordProductsCreated(currentUser.ownShopTenantId(), product.getDateCreated(), 1);
+        catalogCache.invalidateProduct(currentUser.ownShopTenantId(), product.getId());
 
         return product;
     }
@@ -273,7 +532,22 @@ public class ProductService {
             currentImages.addAll(updatedImages);
         }
 
-        return productRepository.save(product);
+        Long tenantId = product.getShop() != null ? product.getShop().getTenantId() : null;
+        product.setChangeVersion(catalogChangeService.nextVersion(tenantId, CatalogEntityType.PRODUCT));
+        product = productRepository.save(product);
+        catalogCache.invalidateProduct(tenantId, productId);
+        return product;
+    }
+
+    @Transactional
+    public void deleteProductById(Long productId) {
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new ResourceNotFoundException("Product could not be found by id: " + productId));
+        Long tenantId = product.getShop() != null ? product.getShop().getTenantId() : null;
+        catalogChangeService.recordDeletion(tenantId, CatalogEntityType.PRODUCT, productId);
+        productRepository.delete(product);
+        salesRollupService.recordProductDeleted(tenantId, product.getDateCreated());
+        catalogCache.invalidateProduct(tenantId, productId);
     }
 
     public boolean checkStockById(long productId, int quantity) {
@@ -301,62 +575,34 @@ public class ProductService {
 //        return product;
 //    }
 
-    public Map<String, Object> findProductById(Long id) {
+    public ProductResponse findProductById(Long id) {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        if (currentUser.hasRole(Role.ROLE_CUSTOMER_USER) && currentUser.shopTenantId() != null) {
+            CatalogSnapshot.CatalogProduct product = catalogCache.get(currentUser.shopTenantId()).findProduct(id);
+            if (product == null) {
+                throw new ResourceNotFoundException("Product not found with id: " + id);
+            }
+            return product.view();
+        }
+
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + id));
 
-        Map<String, Object> productMap = new HashMap<>();
-        productMap.put("id", product.getId());
-        productMap.put("name", product.getName());
-        productMap.put("description", product.getDescription());
-        productMap.put("salesPrice", product.getSalesPrice());
-        productMap.put("grossPrice", product.getGrossPrice());
-        productMap.put("vatRate", product.getVatRate());
-        productMap.put("code", product.getCode());
-        productMap.put("gtin", product.getGtin());
-        productMap.put("stock", product.getStock());
-        productMap.put("active", product.isActive());
-
-        Map<String, Object> brandMap = new HashMap<>();
         Brand brand = product.getBrand();
-        if (brand != null) {
-            brandMap.put("id", brand.getId());
-            brandMap.put("name", brand.getName());
-        } else {
-            brandMap = null;
-        }
-        productMap.put("brand", brandMap);
-
-        List<Map<String, Object>> imagesList = new ArrayList<>();
-        for (Image image : product.getImages()) {
-            Map<String, Object> imageMap = new HashMap<>();
-            imageMap.put("id", image.getId());
-            imageMap.put("url", image.getUrl());
-            imageMap.put("isThumbnail", image.getIsThumbnail());
-            imagesList.add(imageMap);
-        }
-        productMap.put("images", imagesList);
-
-        Map<String, Object> categoryMap = new HashMap<>();
         Category category = product.getCategory();
+        CategorySummary categorySummary = null;
         if (category != null) {
-            categoryMap.put("id", category.getId());
-            categoryMap.put("name", category.getName());
-
-            Map<String, Object> parentCategoryMap = new HashMap<>();
             Category parentCategory = category.getParentCategory();
-            if (parentCategory != null) {
-                parentCategoryMap.put("id", parentCategory.getId());
-                parentCategoryMap.put("name", parentCategory.getName());
-            } else {
-                parentCategoryMap = null;
-            }
-            categoryMap.put("parentCategory", parentCategoryMap);
-        } else {
-            categoryMap = null;
+            categorySummary = new CategorySummary(category.getId(), category.getName(), parentCategory != null
+                    ? new NamedRef(parentCategory.getId(), parentCategory.getName()) : null);
         }
-        productMap.put("category", categoryMap);
-
-        return productMap;
+        return new ProductResponse(product.getId(), product.getName(), product.getDescription(),
+                product.getSalesPrice(), product.getGrossPrice(), product.getVatRate(), product.getCode(),
+                product.getGtin(), product.getStock(), product.isActive(),
+                brand != null ? new NamedRef(brand.getId(), brand.getName()) : null,
+                product.getImages().stream()
+                        .map(image -> new ImageResponse(image.getId(), image.getUrl(), image.getIsThumbnail()))
+                        .toList(),
+                categorySummary);
     }
 }
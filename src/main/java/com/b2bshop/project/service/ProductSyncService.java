@@ -0,0 +1,242 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.ProductSyncResult;
+import com.b2bshop.project.exception.BadRequestException;
+import com.b2bshop.project.model.CatalogEntityType;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.util.*;
+
+// Price and stock sync for ERP pushes. Items are matched by code (or gtin) within the caller's shop, compared
+// with the current values and only rows that actually change are written, as one JDBC batch per chunk.
+@Service
+public class ProductSyncService {
+
+    private static final int MAX_ITEMS = 100_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SecurityService securityService;
+    private final CatalogCache catalogCache;
+    private final CatalogChangeService catalogChangeService;
+    private final int chunkSize;
+
+    public ProductSyncService(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate,
+                              PlatformTransactionManager transactionManager, SecurityService securityService,
+                              CatalogCache catalogCache, CatalogChangeService catalogChangeService,
+                              @Value("${product.sync.chunk-size:1000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.securityService = securityService;
+        this.catalogCache = catalogCache;
+        this.catalogChangeService = catalogChangeService;
+        this.chunkSize = chunkSize;
+    }
+
+    // Each chunk commits on its own, so a sync that fails half way leaves the earlier chunks applied;
+    // re-sending the same payload is safe because unchanged rows are skipped.
+    public ProductSyncResult syncPricesAndStock(JsonNode json) {
+        Long tenantId = securityService.getCurrentUser().ownShopTenantId();
+        if (tenantId == null) {
+            throw new BadRequestException("Price and stock sync needs a shop context");
+        }
+        JsonNode itemsNode = json != null && json.isObject() ? json.get("items") : json;
+        if (itemsNode == null || !itemsNode.isArray()) {
+            throw new BadRequestException("Body must be an array of items or an object with an items array");
+        }
+        if (itemsNode.size() > MAX_ITEMS) {
+            throw new BadRequestException("At most " + MAX_ITEMS + " items can be synced at once");
+        }
+
+        List<ProductSyncResult.RowError> invalid = new ArrayList<>();
+        List<SyncItem> items = new ArrayList<>(itemsNode.size());
+        Set<String> seenKeys = new HashSet<>();
+        for (int index = 0; index < itemsNode.size(); index++) {
+            try {
+                SyncItem item = toSyncItem(index, itemsNode.get(index));
+                if (!seenKeys.add(item.key())) {
+                    invalid.add(new ProductSyncResult.RowError(index, "Duplicate item for " + item.key()));
+                    continue;
+                }
+                items.add(item);
+            } catch (IllegalArgumentException e) {
+                invalid.add(new ProductSyncResult.RowError(index, e.getMessage()));
+            }
+        }
+
+        List<String> notFound = new ArrayList<>();
+        List<ProductSyncResult.Change> changes = new ArrayList<>();
+        int matched = 0;
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            List<SyncItem> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+            ChunkResult result = transactionTemplate.execute(status -> syncChunk(tenantId, chunk));
+            matched += result.matched();
+            notFound.addAll(result.notFound());
+            invalid.addAll(result.invalid());
+            changes.addAll(result.changes());
+        }
+
+        if (!changes.isEmpty()) {
+            catalogCache.invalidateTenant(tenantId);
+        }
+        return new ProductSyncResult(itemsNode.size(), matched, changes.size(), matched - changes.size(), notFound,
+                invalid, changes);
+    }
+
+    private ChunkResult syncChunk(Long tenantId, List<SyncItem> chunk) {
+        // Taken before the product rows, like every other catalog writer, so the two locks never deadlock.
+        Long version = catalogChangeService.nextVersion(tenantId, CatalogEntityType.PRODUCT);
+        List<String> codes = new ArrayList<>();
+        List<String> gtins = new ArrayList<>();
+        for (SyncItem item : chunk) {
+            (item.code() != null ? codes : gtins).add(item.code() != null ? item.code() : item.gtin());
+        }
+
+        // Rows are locked so order placement cannot decrement stock between our read and our write.
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("tenantId", tenantId);
+        String sql = "SELECT product.id, product.code, product.gtin, product.sales_price, product.gross_price, " +
+                " product.vat_rate, product.stock " +
+                " FROM product " +
+                " JOIN product_shop ON product_shop.product_id = product.id " +
+                " WHERE product_shop.tenant_id = :tenantId AND ( 1 = 0 ";
+        if (!codes.isEmpty()) {
+            sql += " OR product.code IN (:codes) ";
+            parameters.put("codes", codes);
+        }
+        if (!gtins.isEmpty()) {
+            sql += " OR product.gtin IN (:gtins) ";
+            parameters.put("gtins", gtins);
+        }
+        sql += " ) ORDER BY product.id FOR UPDATE";
+
+        Map<String, CurrentProduct> byCode = new HashMap<>();
+        Map<String, CurrentProduct> byGtin = new HashMap<>();
+        namedJdbcTemplate.query(sql, parameters, resultSet -> {
+            CurrentProduct current = new CurrentProduct(resultSet.getLong(1), resultSet.getString(2),
+                    resultSet.getObject(4, Double.class), resultSet.getObject(5, Double.class),
+                    resultSet.getObject(6, Double.class), resultSet.getInt(7));
+            if (current.code() != null) {
+                byCode.put(current.code(), current);
+            }
+            if (resultSet.getString(3) != null) {
+                byGtin.put(resultSet.getString(3), current);
+            }
+        });
+
+        List<String> notFound = new ArrayList<>();
+        List<ProductSyncResult.RowError> invalid = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<ProductSyncResult.Change> changes = new ArrayList<>();
+        Set<Long> touched = new HashSet<>();
+        int matched = 0;
+        for (SyncItem item : chunk) {
+            CurrentProduct current = item.code() != null ? byCode.get(item.code()) : byGtin.get(item.gtin());
+            if (current == null) {
+                notFound.add(item.key());
+                continue;
+            }
+            if (!touched.add(current.id())) {
+                invalid.add(new ProductSyncResult.RowError(item.index(), "Another item already updates this product"));
+                continue;
+            }
+            matched++;
+
+            Double salesPrice = item.salesPrice() != null ? item.salesPrice() : current.salesPrice();
+            Double grossPrice = item.grossPrice() != null ? item.grossPrice() : current.grossPrice();
+            Double vatRate = item.vatRate() != null ? item.vatRate() : current.vatRate();
+            int stock = item.stock() != null ? item.stock() : current.stock();
+            ProductSyncResult.Change change = new ProductSyncResult.Change(current.id(), current.code(),
+                    diff(current.salesPrice(), salesPrice), diff(current.grossPrice(), grossPrice),
+                    diff(current.vatRate(), vatRate), current.stock() != stock ? Arrays.asList(current.stock(), stock) : null);
+            if (change.salesPrice() == null && change.grossPrice() == null && change.vatRate() == null
+                    && change.stock() == null) {
+                continue;
+            }
+            updates.add(new Object[]{salesPrice, grossPrice, vatRate, stock, version, current.id()});
+            changes.add(change);
+        }
+
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE product SET sales_price = ?, gross_price = ?, vat_rate = ?, stock = ?, " +
+                    " change_version = ? WHERE id = ?", updates,
+                    new int[]{Types.DOUBLE, Types.DOUBLE, Types.DOUBLE, Types.INTEGER, Types.BIGINT, Types.BIGINT});
+        }
+        return new ChunkResult(matched, notFound, invalid, changes);
+    }
+
+    private static List<Double> diff(Double current, Double updated) {
+        return Objects.equals(current, updated) ? null : Arrays.asList(current, updated);
+    }
+
+    private static SyncItem toSyncItem(int index, JsonNode node) {
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Item is not an object");
+        }
+        String code = text(node, "code");
+        String gtin = text(node, "gtin");
+        if (code == null && gtin == null) {
+            throw new IllegalArgumentException("code or gtin is required");
+        }
+        SyncItem item = new SyncItem(index, code, gtin, price(node, "salesPrice"), price(node, "grossPrice"),
+                price(node, "vatRate"), stock(node));
+        if (item.salesPrice() == null && item.grossPrice() == null && item.vatRate() == null && item.stock() == null) {
+            throw new IllegalArgumentException("Nothing to update for " + item.key());
+        }
+        return item;
+    }
+
+    private static String text(JsonNode node, String name) {
+        JsonNode value = node.get(name);
+        if (value == null || value.isNull() || value.asText().isBlank()) {
+            return null;
+        }
+        return value.asText().trim();
+    }
+
+    private static Double price(JsonNode node, String name) {
+        JsonNode value = node.get(name);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.isNumber() || value.asDouble() < 0) {
+            throw new IllegalArgumentException(name + " must be a non-negative number");
+        }
+        return value.asDouble();
+    }
+
+    private static Integer stock(JsonNode node) {
+        JsonNode value = node.get("stock");
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.canConvertToInt() || !value.isIntegralNumber() || value.asInt() < 0) {
+            throw new IllegalArgumentException("stock must be a non-negative whole number");
+        }
+        return value.asInt();
+    }
+
+    private record SyncItem(int index, String code, String gtin, Double salesPrice, Double grossPrice, Double vatRate,
+                            Integer stock) {
+        String key() {
+            return code != null ? "code:" + code : "gtin:" + gtin;
+        }
+    }
+
+    private record CurrentProduct(long id, String code, Double salesPrice, Double grossPrice, Double vatRate,
+                                  int stock) {
+    }
+
+    private record ChunkResult(int matched, List<String> notFound, List<ProductSyncResult.RowError> invalid,
+                               List<ProductSyncResult.Change> changes) {
+    }
+}
@@ -0,0 +1,125 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.model.RefreshToken;
+import com.b2bshop.project.repository.RefreshTokenRepository;
+import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.security.AuthenticatedUser;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.*;
+
+@Service
+@Slf4j
+public class RefreshTokenService {
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepository;
+    private final UserService userService;
+    private final JwtService jwtService;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final Duration ttl;
+    private final Duration maxSession;
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository, UserRepository userRepository,
+                               UserService userService, JwtService jwtService,
+                               @Value("${security.refresh-token.ttl:P14D}") Duration ttl,
+                               @Value("${security.refresh-token.max-session:P90D}") Duration maxSession) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepository = userRepository;
+        this.userService = userService;
+        this.jwtService = jwtService;
+        this.ttl = ttl;
+        this.maxSession = maxSession;
+    }
+
+    public String issue(Long userId, int tokenVersion) {
+        Date now = new Date();
+        return save(userId, tokenVersion, UUID.randomUUID().toString(), now, now);
+    }
+
+    // Each refresh token is single use. Presenting one that was already used means it leaked,
+    // so the whole family (every token rotated from the same login) is revoked.
+    @Transactional(dontRollbackOn = BadCredentialsException.class)
+    public Map<String, String> refresh(String rawToken) {
+        RefreshToken refreshToken = refreshTokenRepository.findByTokenHashForUpdate(hash(rawToken))
+                .orElseThrow(() -> new BadCredentialsException("Invalid refresh token"));
+        Date now = new Date();
+
+        if (refreshToken.isRevoked() || refreshToken.getDateUsed() != null) {
+            log.warn("Refresh token reuse detected for user {}, revoking session {}",
+                    refreshToken.getUserId(), refreshToken.getFamilyId());
+            refreshTokenRepository.revokeFamily(refreshToken.getFamilyId());
+            throw new BadCredentialsException("Invalid refresh token");
+        }
+        if (refreshToken.getExpiresAt().before(now)) {
+            throw new BadCredentialsException("Refresh token expired");
+        }
+
+        int currentVersion = userRepository.findActiveTokenVersionById(refreshToken.getUserId()).orElse(-1);
+        if (currentVersion != refreshToken.getTokenVersion()) {
+            refreshTokenRepository.revokeFamily(refreshToken.getFamilyId());
+            throw new BadCredentialsException("Refresh token revoked");
+        }
+
+        refreshToken.setDateUsed(now);
+        refreshTokenRepository.save(refreshToken);
+
+        AuthenticatedUser principal = AuthenticatedUser.from(userService.findUserById(refreshToken.getUserId()));
+        Map<String, String> response = new HashMap<>();
+        response.put("token", (String) jwtService.generateToken(principal, currentVersion).get("token"));
+        response.put("refreshToken", save(refreshToken.getUserId(), currentVersion, refreshToken.getFamilyId(),
+                refreshToken.getSessionStarted(), now));
+        return response;
+    }
+
+    @Transactional
+    public void revokeAll(Long userId) {
+        refreshTokenRepository.revokeAllByUserId(userId);
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${security.refresh-token.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        refreshTokenRepository.deleteExpiredBefore(new Date());
+    }
+
+    private String save(Long userId, int tokenVersion, String familyId, Date sessionStarted, Date now) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        String rawToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        // Sliding expiry, capped by the absolute session lifetime measured from the original login.
+        long expiresAt = Math.min(now.getTime() + ttl.toMillis(), sessionStarted.getTime() + maxSession.toMillis());
+        refreshTokenRepository.save(RefreshToken.builder()
+                .tokenHash(hash(rawToken))
+                .userId(userId)
+                .familyId(familyId)
+                .tokenVersion(tokenVersion)
+                .sessionStarted(sessionStarted)
+                .expiresAt(new Date(expiresAt))
+                .dateCreated(now)
+                .build());
+        return rawToken;
+    }
+
+    private static String hash(String rawToken) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(rawToken.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.exception.BadRequestException;
+import com.b2bshop.project.model.Order;
+import com.b2bshop.project.model.OrderItem;
+import com.b2bshop.project.model.OrderStatus;
+import com.b2bshop.project.model.Role;
+import com.b2bshop.project.security.AuthenticatedUser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps the sales rollup tables (per shop, per customer and per product, by day) in step with orders, customers and
+// products. Writers record deltas while they run; the deltas of a transaction are merged per row and upserted just
+// before it commits, in key order, so the hot rows of the current day are locked as briefly as possible and two
+// writers never lock rows in opposite order.
+@Service
+@Slf4j
+public class SalesRollupService {
+
+    // Rows created before their date column was filled still count towards all-time totals.
+    static final LocalDate UNDATED = LocalDate.of(1970, 1, 1);
+
+    private static final Object PENDING_KEY = new Object();
+
+    private static final String SHOP_COLUMNS = "tenant_id, sales_date, order_count, revenue, net_revenue, tax, " +
+            " cancelled_count, cancelled_revenue, new_customers, new_products";
+
+    private static final String SHOP_UPSERT = "INSERT INTO sales_daily_rollup (" + SHOP_COLUMNS + ") " +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) AS delta " +
+            " ON DUPLICATE KEY UPDATE order_count = order_count + delta.order_count, " +
+            " revenue = revenue + delta.revenue, net_revenue = net_revenue + delta.net_revenue, " +
+            " tax = tax + delta.tax, cancelled_count = cancelled_count + delta.cancelled_count, " +
+            " cancelled_revenue = cancelled_revenue + delta.cancelled_revenue, " +
+            " new_customers = new_customers + delta.new_customers, new_products = new_products + delta.new_products";
+
+    private static final String CUSTOMER_COLUMNS = "tenant_id, customer_id, sales_date, order_count, revenue";
+
+    private static final String CUSTOMER_UPSERT = "INSERT INTO sales_customer_daily_rollup (" + CUSTOMER_COLUMNS +
+            ") VALUES (?, ?, ?, ?, ?) AS delta " +
+            " ON DUPLICATE KEY UPDATE order_count = order_count + delta.order_count, " +
+            " revenue = revenue + delta.revenue";
+
+    private static final String PRODUCT_COLUMNS = "tenant_id, product_id, sales_date, order_count, quantity, revenue";
+
+    private static final String PRODUCT_UPSERT = "INSERT INTO sales_product_daily_rollup (" + PRODUCT_COLUMNS + ") " +
+            " VALUES (?, ?, ?, ?, ?, ?) AS delta " +
+            " ON DUPLICATE KEY UPDATE order_count = order_count + delta.order_count, " +
+            " quantity = quantity + delta.quantity, revenue = revenue + delta.revenue";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SecurityService securityService;
+    private final ThreadPoolExecutor rebuildExecutor;
+
+    public SalesRollupService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              SecurityService securityService, MeterRegistry meterRegistry,
+                              @Value("${sales.rollup.rebuild-threads:2}") int rebuildThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.securityService = securityService;
+        // Each rebuild holds a connection for a whole shop, so only a few run at once and requests keep the rest of
+        // the pool. The queue holds one small task per shop and is left unbounded.
+        AtomicInteger threadCount = new AtomicInteger();
+        this.rebuildExecutor = new ThreadPoolExecutor(rebuildThreads, rebuildThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sales-rollup-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        ExecutorServiceMetrics.monitor(meterRegistry, rebuildExecutor, "salesRollup");
+    }
+
+    public void recordOrderPlaced(Order order) {
+        Long tenantId = order.getShop() != null ? order.getShop().getTenantId() : null;
+        Pending pending = pending(tenantId);
+        if (pending != null) {
+            boolean cancelled = order.getOrderStatus() == OrderStatus.CANCELED;
+            pending.shop(tenantId, order.getOrderDate()).addOrder(order, cancelled, 1);
+            if (!cancelled) {
+                pending.addPlacedOrder(tenantId, order, 1);
+            }
+        }
+    }
+
+    // Only a move into or out of CANCELED changes the totals.
+    public void recordStatusChange(Order order, OrderStatus previousStatus) {
+        boolean wasCancelled = previousStatus == OrderStatus.CANCELED;
+        boolean cancelled = order.getOrderStatus() == OrderStatus.CANCELED;
+        if (wasCancelled == cancelled) {
+            return;
+        }
+        Long tenantId = order.getShop() != null ? order.getShop().getTenantId() : null;
+        Pending pending = pending(tenantId);
+        if (pending != null) {
+            Delta delta = pending.shop(tenantId, order.getOrderDate());
+            delta.addOrder(order, wasCancelled, -1);
+            delta.addOrder(order, cancelled, 1);
+            pending.addPlacedOrder(tenantId, order, cancelled ? -1 : 1);
+        }
+    }
+
+    public void recordCustomerCreated(Long tenantId, Date dateCreated) {
+        Pending pending = pending(tenantId);
+        if (pending != null) {
+            pending.shop(tenantId, dateCreated).newCustomers++;
+        }
+    }
+
+    public void recordProductsCreated(Long tenantId, Date dateCreated, int count) {
+        Pending pending = pending(tenantId);
+        if (pending != null) {
+            pending.shop(tenantId, dateCreated).newProducts += count;
+        }
+    }
+
+    // Taken off the day the product was created, so the rollups keep counting the products that still exist.
+    public void recordProductDeleted(Long tenantId, Date dateCreated) {
+        recordProductsCreated(tenantId, dateCreated, -1);
+    }
+
+    private Pending pending(Long tenantId) {
+        if (tenantId == null) {
+            return null;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Sales rollups can only be updated inside a transaction");
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(PENDING_KEY);
+        if (pending == null) {
+            Pending created = new Pending();
+            pending = created;
+            TransactionSynchronizationManager.bindResource(PENDING_KEY, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    created.shops.forEach((key, delta) -> jdbcTemplate.update(SHOP_UPSERT, delta.parameters(key)));
+                    created.customers.forEach((key, delta) -> jdbcTemplate.update(CUSTOMER_UPSERT,
+                            key.tenantId(), key.entityId(), key.salesDate(), delta.orderCount, delta.revenue));
+                    created.products.forEach((key, delta) -> jdbcTemplate.update(PRODUCT_UPSERT,
+                            key.tenantId(), key.entityId(), key.salesDate(), delta.orderCount, delta.quantity,
+                            delta.revenue));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_KEY);
+                }
+            });
+        }
+        return pending;
+    }
+
+    // Timestamps loaded by Hibernate are java.sql subclasses, so go through the epoch millis.
+    static LocalDate toSalesDate(Date date) {
+        return date == null ? UNDATED
+                : Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    public Map<String, Object> rebuild() {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        if (currentUser.hasRole(Role.ROLE_SYSTEM_OWNER)) {
+            return Map.of("tenants", rebuildAll());
+        }
+        Long tenantId = currentUser.ownShopTenantId();
+        if (tenantId == null) {
+            throw new BadRequestException("Rebuilding sales rollups needs a shop context");
+        }
+        rebuildTenant(tenantId);
+        return Map.of("tenants", 1);
+    }
+
+    // The tables start out empty when they are introduced, so fill them from the existing history once.
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillRollups() {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM sales_daily_rollup) " +
+                " AND (EXISTS (SELECT 1 FROM sales_product_daily_rollup) OR NOT EXISTS (SELECT 1 FROM orders))",
+                Boolean.class))) {
+            return;
+        }
+        rebuildAllAsync().thenAccept(rebuilt -> log.info("Backfilled sales rollups for {} shops", rebuilt));
+    }
+
+    public int rebuildAll() {
+        return rebuildAllAsync().join();
+    }
+
+    // Shops are independent, so they are recomputed in parallel on the rebuild executor, each in its own
+    // transaction.
+    private CompletableFuture<Integer> rebuildAllAsync() {
+        List<Long> tenantIds = jdbcTemplate.queryForList("SELECT tenant_id FROM shop", Long.class);
+        AtomicInteger rebuilt = new AtomicInteger();
+        CompletableFuture<?>[] rebuilds = tenantIds.stream()
+                .map(tenantId -> CompletableFuture.runAsync(() -> {
+                    try {
+                        rebuildTenant(tenantId);
+                        rebuilt.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        log.warn("Sales rollup rebuild failed for tenant {}", tenantId, e);
+                    }
+                }, rebuildExecutor))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(rebuilds).thenApply(ignored -> rebuilt.get());
+    }
+
+    // The deletes run first and lock the shop's rollup rows and the gaps between them, so incremental writers wait
+    // until this transaction commits. The aggregates are plain consistent reads whose snapshot is only taken after
+    // that, so they include every writer that committed before and none of those still waiting.
+    public void rebuildTenant(Long tenantId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM sales_daily_rollup WHERE tenant_id = ?", tenantId);
+            jdbcTemplate.update("DELETE FROM sales_customer_daily_rollup WHERE tenant_id = ?", tenantId);
+            jdbcTemplate.update("DELETE FROM sales_product_daily_rollup WHERE tenant_id = ?", tenantId);
+            Map<LocalDate, Delta> days = new TreeMap<>();
+
+            jdbcTemplate.query("SELECT DATE(order_date) AS sales_date, order_status = ? AS cancelled, COUNT(*), " +
+                    " SUM(COALESCE(total_price, 0)), SUM(COALESCE(without_tax_price, 0)), " +
+                    " SUM(COALESCE(total_tax, 0)) " +
+                    " FROM orders " +
+                    " WHERE shop_id = ? " +
+                    " GROUP BY sales_date, cancelled", resultSet -> {
+                Delta delta = dayOf(days, resultSet);
+                if (resultSet.getBoolean(2)) {
+                    delta.cancelledCount += resultSet.getLong(3);
+                    delta.cancelledRevenue += resultSet.getDouble(4);
+                } else {
+                    delta.orderCount += resultSet.getLong(3);
+                    delta.revenue += resultSet.getDouble(4);
+                    delta.netRevenue += resultSet.getDouble(5);
+                    delta.tax += resultSet.getDouble(6);
+                }
+            }, OrderStatus.CANCELED.name(), tenantId);
+
+            jdbcTemplate.query("SELECT DATE(customer.date_created), COUNT(*) " +
+                    " FROM customer " +
+                    " JOIN customer_shop ON customer_shop.tenant_id = customer.tenant_id " +
+                    " WHERE customer_shop.shop_id = ? " +
+                    " GROUP BY DATE(customer.date_created)", resultSet -> {
+                dayOf(days, resultSet).newCustomers += resultSet.getLong(2);
+            }, tenantId);
+
+            jdbcTemplate.query("SELECT DATE(product.date_created), COUNT(*) " +
+                    " FROM product " +
+                    " JOIN product_shop ON product_shop.product_id = product.id " +
+                    " WHERE product_shop.tenant_id = ? " +
+                    " GROUP BY DATE(product.date_created)", resultSet -> {
+                dayOf(days, resultSet).newProducts += resultSet.getLong(2);
+            }, tenantId);
+
+            jdbcTemplate.batchUpdate("INSERT INTO sales_daily_rollup (" + SHOP_COLUMNS + ") " +
+                            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    days.entrySet().stream()
+                            .map(day -> day.getValue().parameters(new Key(tenantId, day.getKey())))
+                            .toList());
+
+            // Customer and product rollups only count placed orders; undated orders go to the UNDATED day.
+            List<Object[]> customerRows = jdbcTemplate.query("SELECT customer_id, " +
+                    " COALESCE(DATE(order_date), ?) AS sales_date, COUNT(*), SUM(COALESCE(total_price, 0)) " +
+                    " FROM orders " +
+                    " WHERE shop_id = ? AND (order_status IS NULL OR order_status <> ?) " +
+                    " GROUP BY customer_id, sales_date", (resultSet, rowNum) -> new Object[]{tenantId,
+                    resultSet.getLong(1), resultSet.getObject(2, LocalDate.class), resultSet.getLong(3),
+                    resultSet.getDouble(4)}, UNDATED, tenantId, OrderStatus.CANCELED.name());
+            jdbcTemplate.batchUpdate("INSERT INTO sales_customer_daily_rollup (" + CUSTOMER_COLUMNS + ") " +
+                    " VALUES (?, ?, ?, ?, ?)", customerRows);
+
+            List<Object[]> productRows = jdbcTemplate.query("SELECT order_item.ref_product_id, " +
+                    " COALESCE(DATE(orders.order_date), ?) AS sales_date, COUNT(DISTINCT orders.id), " +
+                    " SUM(order_item.quantity), SUM(COALESCE(order_item.gross_price, 0) * order_item.quantity) " +
+                    " FROM orders " +
+                    " JOIN orders_order_items ON orders_order_items.order_id = orders.id " +
+                    " JOIN order_item ON order_item.id = orders_order_items.order_items_id " +
+                    " WHERE orders.shop_id = ? AND order_item.ref_product_id IS NOT NULL " +
+                    " AND (orders.order_status IS NULL OR orders.order_status <> ?) " +
+                    " GROUP BY order_item.ref_product_id, sales_date", (resultSet, rowNum) -> new Object[]{tenantId,
+                    resultSet.getLong(1), resultSet.getObject(2, LocalDate.class), resultSet.getLong(3),
+                    resultSet.getLong(4), resultSet.getDouble(5)}, UNDATED, tenantId, OrderStatus.CANCELED.name());
+            jdbcTemplate.batchUpdate("INSERT INTO sales_product_daily_rollup (" + PRODUCT_COLUMNS + ") " +
+                    " VALUES (?, ?, ?, ?, ?, ?)", productRows);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdown();
+    }
+
+    private static Delta dayOf(Map<LocalDate, Delta> days, ResultSet resultSet) throws SQLException {
+        LocalDate salesDate = resultSet.getObject(1, LocalDate.class);
+        return days.computeIfAbsent(salesDate != null ? salesDate : UNDATED, day -> new Delta());
+    }
+
+    private record Key(Long tenantId, LocalDate salesDate) {
+    }
+
+    private record EntityKey(Long tenantId, Long entityId, LocalDate salesDate) {
+    }
+
+    // Deltas of one transaction. Sorted maps give every writer the same lock order.
+    private static final class Pending {
+        private static final Comparator<EntityKey> ENTITY_KEY_ORDER = Comparator.comparing(EntityKey::tenantId)
+                .thenComparing(EntityKey::entityId)
+                .thenComparing(EntityKey::salesDate);
+
+        final Map<Key, Delta> shops = new TreeMap<>(
+                Comparator.comparing(Key::tenantId).thenComparing(Key::salesDate));
+        final Map<EntityKey, EntityDelta> customers = new TreeMap<>(ENTITY_KEY_ORDER);
+        final Map<EntityKey, EntityDelta> products = new TreeMap<>(ENTITY_KEY_ORDER);
+
+        Delta shop(Long tenantId, Date date) {
+            return shops.computeIfAbsent(new Key(tenantId, toSalesDate(date)), key -> new Delta());
+        }
+
+        // Adds (sign 1) or removes (sign -1) a placed order from its customer's and its products' rollups.
+        void addPlacedOrder(Long tenantId, Order order, int sign) {
+            LocalDate salesDate = toSalesDate(order.getOrderDate());
+            double totalPrice = order.getTotalPrice() != null ? order.getTotalPrice() : 0.0;
+            if (order.getCustomer() != null) {
+                EntityKey customerKey = new EntityKey(tenantId, order.getCustomer().getTenantId(), salesDate);
+                EntityDelta customer = customers.computeIfAbsent(customerKey, key -> new EntityDelta());
+                customer.orderCount += sign;
+                customer.revenue += sign * totalPrice;
+            }
+            Set<Long> counted = new HashSet<>();
+            for (OrderItem item : order.getOrderItems() != null ? order.getOrderItems() : List.<OrderItem>of()) {
+                if (item.getRefProductId() == null) {
+                    continue;
+                }
+                EntityDelta product = products.computeIfAbsent(
+                        new EntityKey(tenantId, item.getRefProductId(), salesDate), key -> new EntityDelta());
+                if (counted.add(item.getRefProductId())) {
+                    product.orderCount += sign;
+                }
+                product.quantity += (long) sign * item.getQuantity();
+                double grossPrice = item.getGrossPrice() != null ? item.getGrossPrice() : 0.0;
+                product.revenue += sign * grossPrice * item.getQuantity();
+            }
+        }
+    }
+
+    private static final class Delta {
+        long orderCount;
+        double revenue;
+        double netRevenue;
+        double tax;
+        long cancelledCount;
+        double cancelledRevenue;
+        long newCustomers;
+        long newProducts;
+
+        void addOrder(Order order, boolean cancelled, int sign) {
+            double totalPrice = order.getTotalPrice() != null ? order.getTotalPrice() : 0.0;
+            if (cancelled) {
+                cancelledCount += sign;
+                cancelledRevenue += sign * totalPrice;
+            } else {
+                orderCount += sign;
+                revenue += sign * totalPrice;
+                netRevenue += sign * (order.getWithoutTaxPrice() != null ? order.getWithoutTaxPrice() : 0.0);
+                tax += sign * (order.getTotalTax() != null ? order.getTotalTax() : 0.0);
+            }
+        }
+
+        Object[] parameters(Key key) {
+            return new Object[]{key.tenantId(), key.salesDate(), orderCount, revenue, netRevenue, tax,
+                    cancelledCount, cancelledRevenue, newCustomers, newProducts};
+        }
+    }
+
+    private static final class EntityDelta {
+        long orderCount;
+        long quantity;
+        double revenue;
+    }
+}
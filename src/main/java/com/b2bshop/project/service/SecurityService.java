@@ -2,6 +2,10 @@ package com.b2bshop.project.service;
 
 import com.b2bshop.project.model.User;
 import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.security.AuthenticatedUser;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -14,6 +18,14 @@ public class SecurityService {
         this.userRepository = userRepository;
     }
 
+    public AuthenticatedUser getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser currentUser) {
+            return currentUser;
+        }
+        throw new AuthenticationCredentialsNotFoundException("No authenticated user for this request");
+    }
+
     public Long returnTenantIdByUsernameOrToken(String strType, String strValue) {
         Long response = null;
         if (strType.equals("userName")) {
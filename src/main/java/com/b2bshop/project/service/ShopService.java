@@ -18,12 +18,14 @@ public class ShopService {
     private final ShopRepository shopRepository;
     private final UserRepository userRepository;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final UserCache userCache;
 
-    public ShopService(ShopRepository shopRepository,
-                       UserRepository userRepository, BCryptPasswordEncoder passwordEncoder) {
+    public ShopService(ShopRepository shopRepository, UserRepository userRepository,
+                       BCryptPasswordEncoder passwordEncoder, UserCache userCache) {
         this.shopRepository = shopRepository;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userCache = userCache;
     }
 
     public Shop createShop(CreateShopRequest request) {
@@ -51,6 +53,7 @@ public class ShopService {
         user.setAccountNonLocked(true);
         user.setCredentialsNonExpired(true);
         userRepository.save(user);
+        userCache.invalidate(user.getId());
 
         return shopRepository.save(shop);
     }
@@ -64,6 +67,7 @@ public class ShopService {
         shop.setAboutUs(newShop.getAboutUs());
         shop.setPrivacyPolicy(newShop.getPrivacyPolicy());
         shopRepository.save(shop);
+        userRepository.findIdsByShopTenantId(shopId).forEach(userCache::invalidate);
         return shop;
     }
 
@@ -0,0 +1,60 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+// Detached, fully initialised User graphs for read paths. Write paths must load users from the repository.
+@Component
+public class UserCache {
+
+    public static final String REGION = "user";
+
+    private final Cache<Long, User> usersById;
+    private final Cache<String, User> usersByUsername;
+    private final CacheInvalidationService cacheInvalidationService;
+
+    public UserCache(@Value("${cache.user.maximum-size:10000}") long maximumSize,
+                     @Value("${cache.user.ttl:PT10M}") Duration ttl,
+                     MeterRegistry meterRegistry,
+                     CacheInvalidationService cacheInvalidationService) {
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.usersByUsername = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.cacheInvalidationService = cacheInvalidationService;
+        CaffeineCacheMetrics.monitor(meterRegistry, usersById, "usersById");
+        CaffeineCacheMetrics.monitor(meterRegistry, usersByUsername, "usersByUsername");
+        cacheInvalidationService.register(REGION, key -> evictLocal(Long.valueOf(key)));
+    }
+
+    public User getById(Long userId, Function<Long, User> loader) {
+        return usersById.get(userId, loader);
+    }
+
+    public User getByUsername(String username, Function<String, User> loader) {
+        return usersByUsername.get(username, loader);
+    }
+
+    public void invalidate(Long userId) {
+        cacheInvalidationService.publish(REGION, userId);
+    }
+
+    private void evictLocal(Long userId) {
+        usersById.invalidate(userId);
+        usersByUsername.asMap().values().removeIf(user -> userId.equals(user.getId()));
+    }
+}
@@ -3,11 +3,11 @@ package com.b2bshop.project.service;
 import com.b2bshop.project.exception.ResourceNotFoundException;
 import com.b2bshop.project.model.*;
 import com.b2bshop.project.repository.UserRepository;
+import com.b2bshop.project.security.AuthenticatedUser;
 import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.persistence.NoResultException;
-import jakarta.servlet.http.HttpServletRequest;
 import org.hibernate.Session;
 import org.hibernate.query.Query;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -23,39 +23,35 @@ public class UserService implements UserDetailsService {
 
     private final UserRepository userRepository;
     private final BCryptPasswordEncoder passwordEncoder;
-    private final JwtService jwtService;
     private final CustomerService customerService;
+    private final SecurityService securityService;
+    private final UserCache userCache;
     private final EntityManager entityManager;
 
-    public UserService(UserRepository userRepository, BCryptPasswordEncoder passwordEncoder, JwtService jwtService, CustomerService customerService, EntityManager entityManager) {
+    public UserService(UserRepository userRepository, BCryptPasswordEncoder passwordEncoder, CustomerService customerService,
+                       SecurityService securityService, UserCache userCache, EntityManager entityManager) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
-        this.jwtService = jwtService;
         this.customerService = customerService;
+        this.securityService = securityService;
+        this.userCache = userCache;
         this.entityManager = entityManager;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Optional<User> user = userRepository.findByUsername(username);
-        return user.orElseThrow(EntityNotFoundException::new);
+        return userCache.getByUsername(username, name -> userRepository.findByUsername(name)
+                .orElseThrow(EntityNotFoundException::new));
     }
 
-    public User getMe(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        Optional<User> user = userRepository.findByUsername(userName);
-        Long userId = user.get().getId();
-
-        return findUserById(userId);
+    public User getMe() {
+        return findUserById(securityService.getCurrentUser().userId());
     }
 
-    public User createUser(HttpServletRequest request, JsonNode json) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName).orElseThrow(()
-                -> new ResourceNotFoundException("User not found by name: " + userName));
-        Shop shop = user.getShop();
+    public User createUser(JsonNode json) {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        Shop shop = currentUser.ownShopTenantId() != null
+                ? entityManager.find(Shop.class, currentUser.ownShopTenantId()) : null;
         Set<Role> authorities = new HashSet<>();
         authorities.add(Role.valueOf(json.get("authorities").asText()));
 
@@ -79,12 +75,15 @@ public class UserService implements UserDetailsService {
             newUser.setShop(shop);
         }
 
-        return userRepository.save(newUser);
+        User savedUser = userRepository.save(newUser);
+        userCache.invalidate(savedUser.getId());
+        return savedUser;
     }
 
     public User updateUserById(Long userId, User newUser) {
         User oldUser = (userRepository.findById(userId).orElseThrow(()
                 -> new RuntimeException("User not found")));
+        boolean revokeTokens = tokenClaimsChanged(oldUser, newUser);
         oldUser.setName(newUser.getName());
         oldUser.setUsername(newUser.getUsername());
         oldUser.setEmail(newUser.getEmail());
@@ -93,33 +92,46 @@ public class UserService implements UserDetailsService {
         oldUser.setShop(newUser.getShop());
         oldUser.setCustomer(newUser.getCustomer());
         oldUser.setActive(newUser.isActive());
+        if (revokeTokens) {
+            oldUser.setTokenVersion(oldUser.getTokenVersion() + 1);
+        }
         userRepository.save(oldUser);
+        userCache.invalidate(userId);
         return oldUser;
     }
 
+    private boolean tokenClaimsChanged(User oldUser, User newUser) {
+        return oldUser.isActive() != newUser.isActive()
+                || !Objects.equals(oldUser.getUsername(), newUser.getUsername())
+                || !Objects.equals(oldUser.getAuthorities(), newUser.getAuthorities())
+                || !Objects.equals(oldUser.getShop() != null ? oldUser.getShop().getTenantId() : null,
+                newUser.getShop() != null ? newUser.getShop().getTenantId() : null)
+                || !Objects.equals(oldUser.getCustomer() != null ? oldUser.getCustomer().getTenantId() : null,
+                newUser.getCustomer() != null ? newUser.getCustomer().getTenantId() : null);
+    }
+
+    public void deleteUserById(Long userId) {
+        userRepository.deleteById(userId);
+        userCache.invalidate(userId);
+    }
+
     public User findUserById(Long id) {
-        return userRepository.findById(id).orElseThrow(()
-                -> new ResourceNotFoundException("User could not find by id: " + id));
+        return userCache.getById(id, userId -> userRepository.findById(userId).orElseThrow(()
+                -> new ResourceNotFoundException("User could not find by id: " + userId)));
     }
 
     public User findUserByName(String name) {
-        return userRepository.findByUsername(name).orElseThrow(()
-                -> new ResourceNotFoundException("User could not find by name: " + name));
+        return userCache.getByUsername(name, userName -> userRepository.findByUsername(userName).orElseThrow(()
+                -> new ResourceNotFoundException("User could not find by name: " + userName)));
     }
 
-    public List<User> getAllUsers(HttpServletRequest request) {
-        String token = request.getHeader("Authorization").split("Bearer ")[1];
-        String userName = jwtService.extractUser(token);
-        User user = userRepository.findByUsername(userName)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-        Set<Role> userRoles = user.getAuthorities();
-
-        if (userRoles.contains(Role.ROLE_CUSTOMER_USER)) {
-            return userRepository.findAllByCustomerTenantId(user.getCustomer().getTenantId());
-        } else if (userRoles.contains(Role.ROLE_SHOP_OWNER)) {
-            Long shopTenantId = user.getShop().getTenantId();
-            return userRepository.findAllByCustomerShopTenantId(shopTenantId);
-        } else if (userRoles.contains(Role.ROLE_SYSTEM_OWNER)) {
+    public List<User> getAllUsers() {
+        AuthenticatedUser currentUser = securityService.getCurrentUser();
+        if (currentUser.hasRole(Role.ROLE_CUSTOMER_USER)) {
+            return userRepository.findAllByCustomerTenantId(currentUser.customerTenantId());
+        } else if (currentUser.hasRole(Role.ROLE_SHOP_OWNER)) {
+            return userRepository.findAllByCustomerShopTenantId(currentUser.shopTenantId());
+        } else if (currentUser.hasRole(Role.ROLE_SYSTEM_OWNER)) {
             return userRepository.findAll();
         } else {
             return List.of();
@@ -127,6 +139,10 @@ public class UserService implements UserDetailsService {
     }
 
     public User findUserByUserName(String userName) {
+        return userCache.getByUsername(userName, this::loadUserByUserName);
+    }
+
+    private User loadUserByUserName(String userName) {
         Session session = entityManager.unwrap(Session.class);
         String hqlQuery = "SELECT user " +
                 " FROM User as user " +
@@ -144,14 +160,17 @@ public class UserService implements UserDetailsService {
 
     public Map<String, String> updatePassword(Long userId, JsonNode json) {
         Map<String, String> response = new HashMap<>();
-        User user = findUserById(userId);
+        User user = userRepository.findById(userId).orElseThrow(()
+                -> new ResourceNotFoundException("User could not find by id: " + userId));
 
         String existingPassword = json.get("existPassword").asText();
         String newPassword = json.get("newPassword").asText();
 
         if (passwordEncoder.matches(existingPassword, user.getPassword())) {
             user.setPassword(passwordEncoder.encode(newPassword));
+            user.setTokenVersion(user.getTokenVersion() + 1);
             userRepository.save(user);
+            userCache.invalidate(userId);
             response.put("success", "true");
             return response;
         } else {
@@ -0,0 +1,33 @@
+package com.b2bshop.project.util;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+public final class ConditionalRequests {
+
+    // Bodies depend on the caller's shop and role, so only the client may keep them and it has to revalidate.
+    private static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+    private ConditionalRequests() {
+    }
+
+    public static String etag(Object... parts) {
+        StringBuilder tag = new StringBuilder("\"");
+        for (int i = 0; i < parts.length; i++) {
+            tag.append(i == 0 ? "" : "-").append(parts[i]);
+        }
+        return tag.append('"').toString();
+    }
+
+    // Sets the ETag and caching headers and returns true (with the status already set to 304) when the client's
+    // If-None-Match still matches. A null etag means the resource is not versioned and is always served in full.
+    public static boolean notModified(ServletWebRequest request, String etag) {
+        if (etag == null) {
+            return false;
+        }
+        request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        request.getResponse().setHeader(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION);
+        return request.checkNotModified(etag);
+    }
+}
@@ -0,0 +1,42 @@
+package com.b2bshop.project.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// RFC 4180 counterpart of CsvReader: fields containing commas, quotes or line breaks are quoted, quotes doubled,
+// null written as an empty field. Records end with CRLF.
+public final class CsvWriter {
+
+    private final Writer writer;
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void writeRecord(Object... fields) throws IOException {
+        for (int index = 0; index < fields.length; index++) {
+            if (index > 0) {
+                writer.write(',');
+            }
+            if (fields[index] != null) {
+                writeField(fields[index].toString());
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeField(String value) throws IOException {
+        boolean quote = false;
+        for (int index = 0; index < value.length() && !quote; index++) {
+            char c = value.charAt(index);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
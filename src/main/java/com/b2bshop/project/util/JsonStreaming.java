@@ -0,0 +1,31 @@
+package com.b2bshop.project.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+
+public final class JsonStreaming {
+
+    private JsonStreaming() {
+    }
+
+    // Writes the items as a JSON array element by element, so large lists never get buffered as one tree or string.
+    // Elements go through the generator's buffer without a flush each; closing the generator flushes once.
+    public static void writeArray(HttpServletResponse response, ObjectMapper objectMapper, Iterable<?> items)
+            throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            for (Object item : items) {
+                writer.writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        }
+    }
+}
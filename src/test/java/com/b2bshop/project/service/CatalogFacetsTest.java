@@ -0,0 +1,78 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.NamedRef;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogFacetsTest {
+
+	// Gıda > Süt > Peynir (inactive), and Temizlik on its own.
+	private static final CategoryTree TREE = new CategoryTree(1, List.of(
+			new CategoryTree.Entry(1L, "Gıda", true, null),
+			new CategoryTree.Entry(2L, "Süt", true, 1L),
+			new CategoryTree.Entry(3L, "Peynir", false, 2L),
+			new CategoryTree.Entry(4L, "Temizlik", true, null)));
+
+	private static final CatalogSnapshot SNAPSHOT = new CatalogSnapshot(1L, CatalogSnapshot.Versions.NONE, List.of(
+			product(10L, 100L, 2L, 120.0, 5),
+			product(11L, 101L, 3L, 50.0, 0),
+			product(12L, 100L, 4L, 3000.0, 2),
+			product(13L, null, 1L, null, 1)),
+			List.of(new NamedRef(100L, "Pınar"), new NamedRef(101L, "Sütaş")), TREE);
+
+	@Test
+	void categoryMaskCoversTheWholeSubtree() {
+		CatalogFacets facets = SNAPSHOT.getFacets();
+		assertEquals(facets.ofProducts(List.of(10L, 11L, 13L)), facets.categoryMask(1L));
+		assertEquals(facets.ofProducts(List.of(11L)), facets.categoryMask(3L));
+		assertTrue(facets.categoryMask(99L).isEmpty());
+		assertNull(facets.categoryMask(null));
+	}
+
+	@Test
+	void countsEveryFacetWithoutFilters() {
+		CatalogFacets facets = SNAPSHOT.getFacets();
+		Map<String, Object> counts = facets.count(SNAPSHOT, facets.all(false), null, null, false);
+
+		assertEquals(List.of(List.of(100L, 2), List.of(101L, 1)), idCounts(counts.get("brands")));
+		assertEquals(List.of(List.of(1L, 3), List.of(2L, 2), List.of(3L, 1), List.of(4L, 1)),
+				idCounts(counts.get("categories")));
+		assertEquals(3, counts.get("inStock"));
+		assertEquals(List.of(0.0, 100.0, 2500.0), priceFroms(counts.get("priceRanges")));
+	}
+
+	@Test
+	void eachFacetIgnoresItsOwnFilter() {
+		CatalogFacets facets = SNAPSHOT.getFacets();
+		Map<String, Object> counts = facets.count(SNAPSHOT, facets.all(true), facets.brandMask(List.of(100L)),
+				facets.categoryMask(2L), true);
+
+		assertEquals(List.of(List.of(100L, 1)), idCounts(counts.get("brands")));
+		assertEquals(List.of(List.of(1L, 1), List.of(2L, 1), List.of(4L, 1)), idCounts(counts.get("categories")));
+		assertEquals(1, counts.get("inStock"));
+		assertEquals(List.of(100.0), priceFroms(counts.get("priceRanges")));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<List<Object>> idCounts(Object facets) {
+		return ((List<Map<String, Object>>) facets).stream()
+				.map(facet -> List.of(facet.get("id"), facet.get("count")))
+				.toList();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> priceFroms(Object prices) {
+		return ((List<Map<String, Object>>) prices).stream().map(price -> price.get("from")).toList();
+	}
+
+	private static CatalogSnapshot.CatalogProduct product(Long id, Long brandId, Long categoryId, Double grossPrice,
+														  int stock) {
+		Object[] row = {id, "Ürün " + id, null, grossPrice, grossPrice, 0.2, "P-" + id, null, stock, true, brandId,
+				null, categoryId, null, null, null};
+		return new CatalogSnapshot.CatalogProduct(id, (String) row[1], brandId, categoryId, true, stock,
+				ProductService.toProductResponse(row, List.of()));
+	}
+}
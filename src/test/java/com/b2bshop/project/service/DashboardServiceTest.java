@@ -0,0 +1,83 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.SalesTimeseries;
+import com.b2bshop.project.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Bucketing and gap filling of the sales timeseries, without a database.
+class DashboardServiceTest {
+
+	@Test
+	void bucketStartsAtDayMondayAndFirstOfMonth() {
+		LocalDate sunday = LocalDate.of(2026, 3, 1);
+		assertEquals(sunday, DashboardService.Granularity.DAY.bucketStart(sunday));
+		assertEquals(LocalDate.of(2026, 2, 23), DashboardService.Granularity.WEEK.bucketStart(sunday));
+		assertEquals(LocalDate.of(2026, 2, 23),
+				DashboardService.Granularity.WEEK.bucketStart(LocalDate.of(2026, 2, 23)));
+		assertEquals(LocalDate.of(2026, 2, 1),
+				DashboardService.Granularity.MONTH.bucketStart(LocalDate.of(2026, 2, 28)));
+	}
+
+	@Test
+	void nextAndBetweenStepOneBucket() {
+		LocalDate january = LocalDate.of(2026, 1, 1);
+		assertEquals(LocalDate.of(2026, 2, 1), DashboardService.Granularity.MONTH.next(january));
+		assertEquals(LocalDate.of(2026, 1, 8), DashboardService.Granularity.WEEK.next(january));
+		assertEquals(11, DashboardService.Granularity.MONTH.between(january, LocalDate.of(2026, 12, 1)));
+		assertEquals(52, DashboardService.Granularity.WEEK.between(LocalDate.of(2025, 12, 29),
+				LocalDate.of(2026, 12, 28)));
+		assertEquals(0, DashboardService.Granularity.DAY.between(january, january));
+	}
+
+	@Test
+	void parsesGranularityCaseInsensitively() {
+		assertEquals(DashboardService.Granularity.DAY, DashboardService.Granularity.from(null));
+		assertEquals(DashboardService.Granularity.WEEK, DashboardService.Granularity.from("Week"));
+		assertThrows(BadRequestException.class, () -> DashboardService.Granularity.from("year"));
+	}
+
+	@Test
+	void sumsDaysIntoWeeksAndFillsEmptyWeeksWithZeros() {
+		List<Object[]> rows = List.of(
+				new Object[]{LocalDate.of(2026, 3, 2), 2L, 100.0, 5L},
+				new Object[]{LocalDate.of(2026, 3, 8), 1L, 50.0, 1L},
+				new Object[]{LocalDate.of(2026, 3, 18), 4L, 10.0, 2L});
+
+		List<SalesTimeseries.Point> series = DashboardService.toSeries(DashboardService.Granularity.WEEK,
+				LocalDate.of(2026, 3, 2), LocalDate.of(2026, 3, 23), rows, true);
+
+		assertEquals(List.of(
+				new SalesTimeseries.Point(LocalDate.of(2026, 3, 2), 3, 150.0, 6L),
+				new SalesTimeseries.Point(LocalDate.of(2026, 3, 9), 0, 0.0, 0L),
+				new SalesTimeseries.Point(LocalDate.of(2026, 3, 16), 4, 10.0, 2L),
+				new SalesTimeseries.Point(LocalDate.of(2026, 3, 23), 0, 0.0, 0L)), series);
+	}
+
+	@Test
+	void monthlySeriesCrossesYearEndAndOmitsQuantity() {
+		List<Object[]> rows = List.<Object[]>of(new Object[]{LocalDate.of(2026, 1, 31), 1L, 20.0, 0});
+
+		List<SalesTimeseries.Point> series = DashboardService.toSeries(DashboardService.Granularity.MONTH,
+				LocalDate.of(2025, 12, 1), LocalDate.of(2026, 2, 1), rows, false);
+
+		assertEquals(List.of(
+				new SalesTimeseries.Point(LocalDate.of(2025, 12, 1), 0, 0.0, null),
+				new SalesTimeseries.Point(LocalDate.of(2026, 1, 1), 1, 20.0, null),
+				new SalesTimeseries.Point(LocalDate.of(2026, 2, 1), 0, 0.0, null)), series);
+	}
+
+	@Test
+	void nullSumsCountAsZero() {
+		List<Object[]> rows = List.<Object[]>of(new Object[]{LocalDate.of(2026, 3, 5), null, null, null});
+
+		List<SalesTimeseries.Point> series = DashboardService.toSeries(DashboardService.Granularity.DAY,
+				LocalDate.of(2026, 3, 5), LocalDate.of(2026, 3, 5), rows, true);
+
+		assertEquals(List.of(new SalesTimeseries.Point(LocalDate.of(2026, 3, 5), 0, 0.0, 0L)), series);
+	}
+}
@@ -0,0 +1,290 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.OrderFilterRequest;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.query.Query;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Creates the schema from the entities on a throwaway MySQL, loads synthetic orders and checks with EXPLAIN that
+// the order list filters are served by the indexes declared on Order. The queries are built from OrderService's own
+// HQL fragments and run through Hibernate; a statement inspector captures the SQL Hibernate generates, and that SQL
+// is explained with the same parameter values.
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class OrderFilterQueryPlanTest {
+
+	private static final int SHOPS = 40;
+	private static final int CUSTOMERS_PER_SHOP = 10;
+	private static final int USERS = 500;
+	private static final int ADDRESSES = SHOPS * CUSTOMERS_PER_SHOP;
+	private static final int ORDERS = 50_000;
+	private static final int PAGE_ROWS = 51;
+	private static final String[] STATUSES = {"CREATED", "APPROVED", "COMPLETED", "CANCELED"};
+	private static final LocalDateTime FIRST_ORDER = LocalDateTime.of(2023, 1, 1, 0, 0);
+	private static final Pattern PARAMETER = Pattern.compile(":(\\w+)");
+	private static final Pattern ORDERS_ALIAS = Pattern.compile("\\bfrom orders (\\w+)");
+
+	@Container
+	static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0")
+			.withUrlParam("rewriteBatchedStatements", "true");
+
+	@DynamicPropertySource
+	static void datasource(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", mysql::getJdbcUrl);
+		registry.add("spring.datasource.username", mysql::getUsername);
+		registry.add("spring.datasource.password", mysql::getPassword);
+		registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+	}
+
+	@TestConfiguration
+	static class CaptureConfig {
+		@Bean
+		CapturedStatements capturedStatements() {
+			return new CapturedStatements();
+		}
+
+		@Bean
+		HibernatePropertiesCustomizer statementInspector(CapturedStatements capturedStatements) {
+			return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, capturedStatements);
+		}
+	}
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private CapturedStatements capturedStatements;
+
+	@BeforeAll
+	void loadOrders() {
+		jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+			try (Statement statement = connection.createStatement()) {
+				// The joined customers, users and addresses exist so the join plans are realistic; shops are not
+				// joined and are left out.
+				statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+			}
+			try (PreparedStatement insert = connection.prepareStatement(
+					"INSERT INTO customer (tenant_id, name, is_active) VALUES (?, ?, true)")) {
+				for (int shop = 1; shop <= SHOPS; shop++) {
+					for (int customer = 0; customer < CUSTOMERS_PER_SHOP; customer++) {
+						insert.setLong(1, shop * 1000L + customer);
+						insert.setString(2, "Customer " + shop + "-" + customer);
+						insert.addBatch();
+					}
+				}
+				insert.executeBatch();
+			}
+			try (PreparedStatement insert = connection.prepareStatement("INSERT INTO user (id, name, is_enabled, " +
+					" account_non_locked, account_non_expired, credentials_non_expired, is_active, token_version) " +
+					" VALUES (?, ?, true, true, true, true, true, 0)")) {
+				for (int user = 1; user <= USERS; user++) {
+					insert.setLong(1, user);
+					insert.setString(2, "User " + user);
+					insert.addBatch();
+				}
+				insert.executeBatch();
+			}
+			try (PreparedStatement insert = connection.prepareStatement(
+					"INSERT INTO address (id, city, address_line) VALUES (?, 'City', ?)")) {
+				for (int address = 1; address <= ADDRESSES; address++) {
+					insert.setLong(1, address);
+					insert.setString(2, "Street " + address);
+					insert.addBatch();
+				}
+				insert.executeBatch();
+			}
+			try (PreparedStatement insert = connection.prepareStatement("INSERT INTO orders (shop_id, customer_id, " +
+					" created_by_id, invoice_address_id, receiver_address_id, order_number, order_date, order_status, " +
+					" total_price) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+				for (int index = 0; index < ORDERS; index++) {
+					long shopId = index % SHOPS + 1;
+					long addressId = index % ADDRESSES + 1;
+					insert.setLong(1, shopId);
+					insert.setLong(2, shopId * 1000 + index / SHOPS % CUSTOMERS_PER_SHOP);
+					insert.setLong(3, index % USERS + 1);
+					insert.setLong(4, addressId);
+					insert.setLong(5, addressId);
+					insert.setString(6, "ORD-" + index);
+					insert.setTimestamp(7, Timestamp.valueOf(FIRST_ORDER.plusMinutes(index * 20L)));
+					insert.setString(8, STATUSES[index / SHOPS % STATUSES.length]);
+					insert.setDouble(9, 100.0 + index % 900);
+					insert.addBatch();
+					if (index % 5_000 == 4_999) {
+						insert.executeBatch();
+					}
+				}
+				insert.executeBatch();
+			}
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+				statement.execute("ANALYZE TABLE orders, customer, user, address");
+			}
+			return null;
+		});
+	}
+
+	@Test
+	void shopStatusAndDateRangeUsesShopStatusDateIndex() {
+		OrderService.OrderFilter filter = OrderService.orderFilter(false, 7L, new OrderFilterRequest(
+				List.of("APPROVED"), LocalDate.of(2023, 3, 1), LocalDate.of(2023, 3, 31), null, null, null));
+		assertEquals("idx_orders_shop_status_date", explainOrders(filter, OrderService.ORDER_PAGE_ORDER,
+				Map.of(), PAGE_ROWS).get("key"));
+	}
+
+	@Test
+	void shopAndDateRangeUsesShopDateIndex() {
+		OrderService.OrderFilter filter = OrderService.orderFilter(false, 7L, new OrderFilterRequest(
+				null, LocalDate.of(2023, 3, 1), LocalDate.of(2023, 3, 31), null, null, null));
+		assertEquals("idx_orders_shop_date", explainOrders(filter, OrderService.ORDER_PAGE_ORDER,
+				Map.of(), PAGE_ROWS).get("key"));
+	}
+
+	@Test
+	void nextPageUsesShopDateIndex() {
+		OrderService.OrderFilter filter = OrderService.orderFilter(false, 7L, new OrderFilterRequest(
+				null, LocalDate.of(2023, 3, 1), LocalDate.of(2023, 3, 31), null, null, null));
+		Map<String, Object> cursor = Map.of("lastDate", date(2023, 3, 15), "lastId", 30_000L);
+		assertEquals("idx_orders_shop_date", explainOrders(filter,
+				OrderService.ORDER_PAGE_KEYSET + OrderService.ORDER_PAGE_ORDER, cursor, PAGE_ROWS).get("key"));
+	}
+
+	@Test
+	void customerAndDateRangeUsesCustomerDateIndex() {
+		OrderService.OrderFilter filter = OrderService.orderFilter(true, 7003L, new OrderFilterRequest(
+				null, LocalDate.of(2023, 3, 1), LocalDate.of(2023, 5, 31), null, null, null));
+		assertEquals("idx_orders_customer_date", explainOrders(filter, OrderService.ORDER_PAGE_ORDER,
+				Map.of(), PAGE_ROWS).get("key"));
+	}
+
+	@Test
+	void orderNumberPrefixUsesOrderNumberIndex() {
+		OrderService.OrderFilter filter = OrderService.orderFilter(false, 15L, new OrderFilterRequest(
+				null, null, null, null, null, "ORD-1234"));
+		Map<String, Object> plan = explainOrders(filter, OrderService.ORDER_LIST_ORDER, Map.of(), null);
+		assertEquals("order_number", indexedColumn((String) plan.get("key")));
+	}
+
+	// Runs the order header query the way OrderService.findOrderHeaders builds it, then explains the captured SQL
+	// and returns the plan row of the orders table, which must also be the table the join starts from.
+	private Map<String, Object> explainOrders(OrderService.OrderFilter filter, String orderClause,
+											  Map<String, Object> extraParameters, Integer maxResults) {
+		String hql = OrderService.ORDER_HEADER_COLUMNS + OrderService.ORDER_HEADER_JOINS + filter.whereClause() +
+				orderClause;
+		Map<String, Object> parameters = new HashMap<>(filter.parameters());
+		parameters.putAll(extraParameters);
+
+		capturedStatements.clear();
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			Query<Object[]> query = entityManager.unwrap(Session.class).createQuery(hql, Object[].class);
+			parameters.forEach(query::setParameter);
+			if (maxResults != null) {
+				query.setMaxResults(maxResults);
+			}
+			query.getResultList();
+		});
+		String sql = capturedStatements.last("orders");
+
+		// Hibernate binds in the order the parameters appear in the query, with collections expanded and the row
+		// limit last.
+		List<Object> values = new ArrayList<>();
+		Matcher parameter = PARAMETER.matcher(hql);
+		while (parameter.find()) {
+			Object value = parameters.get(parameter.group(1));
+			if (value instanceof Collection<?> collection) {
+				collection.forEach(element -> values.add(jdbcValue(element)));
+			} else {
+				values.add(jdbcValue(value));
+			}
+		}
+		if (maxResults != null) {
+			values.add(maxResults);
+		}
+		assertEquals(values.size(), sql.chars().filter(c -> c == '?').count(), sql);
+
+		Matcher alias = ORDERS_ALIAS.matcher(sql);
+		assertTrue(alias.find(), sql);
+		List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, values.toArray());
+		assertEquals(alias.group(1), plan.get(0).get("table"), plan.toString());
+		return plan.get(0);
+	}
+
+	private String indexedColumn(String indexName) {
+		return jdbcTemplate.queryForObject("SELECT column_name FROM information_schema.statistics " +
+				" WHERE table_schema = DATABASE() AND table_name = 'orders' AND index_name = ? AND seq_in_index = 1",
+				String.class, indexName);
+	}
+
+	private static Object jdbcValue(Object value) {
+		return value instanceof Enum<?> constant ? constant.name() : value;
+	}
+
+	private static Date date(int year, int month, int day) {
+		return Timestamp.valueOf(LocalDateTime.of(year, month, day, 0, 0));
+	}
+
+	static final class CapturedStatements implements StatementInspector {
+		private final List<String> statements = new CopyOnWriteArrayList<>();
+
+		@Override
+		public String inspect(String sql) {
+			statements.add(sql);
+			return sql;
+		}
+
+		void clear() {
+			statements.clear();
+		}
+
+		String last(String table) {
+			for (int index = statements.size() - 1; index >= 0; index--) {
+				if (statements.get(index).contains(" from " + table + " ")) {
+					return statements.get(index);
+				}
+			}
+			throw new AssertionError("No statement on " + table + " in " + statements);
+		}
+	}
+}
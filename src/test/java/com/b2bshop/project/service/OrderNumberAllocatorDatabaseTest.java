@@ -0,0 +1,110 @@
+package com.b2bshop.project.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs several allocators (standing in for app nodes) against the real order_number_sequence upsert on a throwaway
+// MySQL. Each allocated number is written to orders the way createOrder does it, after allocation and in its own
+// transaction, so the unique constraint on order_number rejects any number handed out twice.
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderNumberAllocatorDatabaseTest {
+
+	private static final int NODES = 3;
+	private static final int THREADS = 16;
+	private static final int ORDERS_PER_THREAD = 200;
+	private static final long[] TENANTS = {7L, 42L};
+	private static final int BLOCK_SIZE = 25;
+
+	@Container
+	static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+	@DynamicPropertySource
+	static void datasource(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", mysql::getJdbcUrl);
+		registry.add("spring.datasource.username", mysql::getUsername);
+		registry.add("spring.datasource.password", mysql::getPassword);
+		registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+		// Only order numbers matter here, so the orders' parent rows are not created.
+		registry.add("spring.datasource.hikari.connection-init-sql", () -> "SET FOREIGN_KEY_CHECKS = 0");
+	}
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void parallelOrdersAcrossNodesGetUniqueNumbersWithBoundedGaps() throws Exception {
+		List<OrderNumberAllocator> nodes = new ArrayList<>();
+		for (int node = 0; node < NODES; node++) {
+			nodes.add(new OrderNumberAllocator(jdbcTemplate, transactionManager, BLOCK_SIZE));
+		}
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int thread = 0; thread < THREADS; thread++) {
+			int seed = thread;
+			futures.add(executor.submit(() -> {
+				start.await();
+				Random random = new Random(seed);
+				for (int order = 0; order < ORDERS_PER_THREAD; order++) {
+					long tenantId = TENANTS[random.nextInt(TENANTS.length)];
+					String orderNumber = nodes.get(random.nextInt(NODES)).next(tenantId);
+					transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+							"INSERT INTO orders (shop_id, customer_id, created_by_id, order_number, order_date, " +
+									" order_status, total_price) VALUES (?, 1, 1, ?, ?, 'CREATED', 0)",
+							tenantId, orderNumber, Timestamp.valueOf(LocalDateTime.now())));
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(5, TimeUnit.MINUTES);
+		}
+		executor.shutdown();
+
+		assertEquals(THREADS * ORDERS_PER_THREAD,
+				jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT order_number) FROM orders", Integer.class));
+		for (long tenantId : TENANTS) {
+			List<String> orderNumbers = jdbcTemplate.queryForList(
+					"SELECT order_number FROM orders WHERE shop_id = ?", String.class, tenantId);
+			long reservedUntil = jdbcTemplate.queryForObject(
+					"SELECT reserved_until FROM order_number_sequence WHERE tenant_id = ?", Long.class, tenantId);
+			assertEquals(0, reservedUntil % BLOCK_SIZE);
+			for (String orderNumber : orderNumbers) {
+				assertTrue(orderNumber.startsWith(tenantId + "-"), orderNumber);
+				long sequence = Long.parseLong(orderNumber.substring(orderNumber.lastIndexOf('-') + 1));
+				assertTrue(sequence >= 1 && sequence <= reservedUntil, orderNumber);
+			}
+			// Only the unused rest of each node's current block is missing from the sequence.
+			assertTrue(reservedUntil - orderNumbers.size() < (long) NODES * BLOCK_SIZE,
+					"tenant " + tenantId + " reserved " + reservedUntil + " for " + orderNumbers.size() + " orders");
+		}
+	}
+}
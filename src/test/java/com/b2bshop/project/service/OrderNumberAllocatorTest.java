@@ -0,0 +1,98 @@
+package com.b2bshop.project.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Drives several allocators (standing in for app nodes) that share one in-memory block source from many threads
+// and checks that no order number is handed out twice.
+class OrderNumberAllocatorTest {
+
+	private static final int NODES = 3;
+	private static final int THREADS = 16;
+	private static final int ORDERS_PER_THREAD = 2_000;
+	private static final long[] TENANTS = {7L, 42L, 1_001L};
+	private static final int BLOCK_SIZE = 50;
+
+	private final Clock clock = Clock.fixed(Instant.parse("2026-10-18T10:15:30Z"), ZoneOffset.UTC);
+
+	@Test
+	void formatsTenantDateAndSequence() {
+		OrderNumberAllocator allocator = new OrderNumberAllocator(new FakeBlockSource(), BLOCK_SIZE, clock);
+		assertEquals("42-261018-000001", allocator.next(42L));
+		assertEquals("42-261018-000002", allocator.next(42L));
+		assertEquals("7-261018-000001", allocator.next(7L));
+	}
+
+	@Test
+	void parallelOrdersAcrossNodesNeverShareANumber() throws Exception {
+		FakeBlockSource blockSource = new FakeBlockSource();
+		List<OrderNumberAllocator> nodes = new ArrayList<>();
+		for (int node = 0; node < NODES; node++) {
+			nodes.add(new OrderNumberAllocator(blockSource, BLOCK_SIZE, clock));
+		}
+
+		Set<String> orderNumbers = ConcurrentHashMap.newKeySet();
+		AtomicInteger duplicates = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int thread = 0; thread < THREADS; thread++) {
+			int seed = thread;
+			futures.add(executor.submit(() -> {
+				start.await();
+				Random random = new Random(seed);
+				for (int order = 0; order < ORDERS_PER_THREAD; order++) {
+					OrderNumberAllocator node = nodes.get(random.nextInt(NODES));
+					if (!orderNumbers.add(node.next(TENANTS[random.nextInt(TENANTS.length)]))) {
+						duplicates.incrementAndGet();
+					}
+				}
+				return null;
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(1, TimeUnit.MINUTES);
+		}
+		executor.shutdown();
+
+		assertEquals(0, duplicates.get());
+		assertEquals(THREADS * ORDERS_PER_THREAD, orderNumbers.size());
+		// Every node/tenant pair wastes at most the rest of its current block.
+		int total = THREADS * ORDERS_PER_THREAD;
+		assertTrue(blockSource.reservations.get() <= total / BLOCK_SIZE + NODES * TENANTS.length);
+	}
+
+	@Test
+	void blockSourceIsAskedOncePerBlock() {
+		FakeBlockSource blockSource = new FakeBlockSource();
+		OrderNumberAllocator allocator = new OrderNumberAllocator(blockSource, BLOCK_SIZE, clock);
+		for (int order = 0; order < BLOCK_SIZE * 4; order++) {
+			allocator.next(7L);
+		}
+		assertEquals(4, blockSource.reservations.get());
+		allocator.next(7L);
+		assertEquals(5, blockSource.reservations.get());
+	}
+
+	// Same contract as the order_number_sequence upsert: atomically moves the tenant's counter by a block.
+	private static final class FakeBlockSource implements OrderNumberAllocator.BlockSource {
+		private final Map<Long, AtomicLong> counters = new ConcurrentHashMap<>();
+		private final AtomicInteger reservations = new AtomicInteger();
+
+		@Override
+		public long reserve(long tenantId, int blockSize) {
+			reservations.incrementAndGet();
+			return counters.computeIfAbsent(tenantId, id -> new AtomicLong()).addAndGet(blockSize);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.b2bshop.project.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexTest {
+
+	private static final List<CatalogSnapshot.CatalogProduct> PRODUCTS = List.of(
+			product(1L, "Tam Yağlı SÜT", "SUT-1", "Günlük inek sütü", "Pınar"),
+			product(2L, "Beyaz Peynir", "PYN-2", "Klasik beyaz peynir", "Sütaş"),
+			product(3L, "Bitter Çikolata", "CKL-3", "Yüzde yetmiş kakao", "Ülker"),
+			product(4L, "Işık Ampul", "AMP-4", "Led ampul", null),
+			product(5L, "Kakao", "KKO-5", "Çikolata için kakao", "Ülker"));
+
+	@Test
+	void tokenizeFoldsTurkishCharactersAndSplitsOnPunctuation() {
+		assertEquals(List.of("sut", "icecek", "seker", "isik", "cay", "gida"),
+				ProductSearchIndex.tokenize("SÜT-İçecek, ŞEKER; Işık çay/GIDA"));
+		assertEquals(List.of(), ProductSearchIndex.tokenize("  -- "));
+		assertEquals(List.of(), ProductSearchIndex.tokenize(null));
+	}
+
+	@Test
+	void matchesRegardlessOfCaseAndTurkishLetters() {
+		ProductSearchIndex index = ProductSearchIndex.build(PRODUCTS);
+		assertEquals(1L, index.search("süt").get(0).productId());
+		assertEquals(1L, index.search("SUT").get(0).productId());
+		assertEquals(List.of(4L), ids(index.search("ışık")));
+		assertEquals(List.of(4L), ids(index.search("ISIK")));
+	}
+
+	@Test
+	void matchesPrefixes() {
+		ProductSearchIndex index = ProductSearchIndex.build(PRODUCTS);
+		assertEquals(Set.of(3L, 5L), Set.copyOf(ids(index.search("cikol"))));
+		assertEquals(List.of(2L), ids(index.search("peyn")));
+	}
+
+	@Test
+	void toleratesTyposOnLongerTokensOnly() {
+		ProductSearchIndex index = ProductSearchIndex.build(PRODUCTS);
+		assertEquals(List.of(2L), ids(index.search("peynri")));
+		assertEquals(Set.of(3L, 5L), Set.copyOf(ids(index.search("cikolaat"))));
+		assertEquals(List.of(), ids(index.search("amx")));
+	}
+
+	@Test
+	void everyTokenHasToMatch() {
+		ProductSearchIndex index = ProductSearchIndex.build(PRODUCTS);
+		assertEquals(List.of(2L), ids(index.search("beyaz peynir")));
+		assertEquals(List.of(), ids(index.search("beyaz ampul")));
+	}
+
+	@Test
+	void nameMatchesRankAboveDescriptionMatches() {
+		ProductSearchIndex index = ProductSearchIndex.build(List.of(
+				product(10L, "Defter", "KAL-10", "Kalem ile birlikte", null),
+				product(11L, "Kalem", "K-11", "Mavi", null)));
+		assertEquals(List.of(11L, 10L), ids(index.search("kalem")));
+	}
+
+	@Test
+	void batchUpdateMatchesAFreshBuild() {
+		ProductSearchIndex original = ProductSearchIndex.build(PRODUCTS);
+		Map<Long, CatalogSnapshot.CatalogProduct> replacements = new HashMap<>();
+		replacements.put(2L, product(2L, "Kaşar Peynir", "PYN-2", "Taze kaşar", "Sütaş"));
+		replacements.put(4L, null);
+		replacements.put(6L, product(6L, "Çikolatalı Süt", "SUT-6", "Kakaolu süt", "Pınar"));
+
+		ProductSearchIndex updated = original.withProducts(replacements);
+
+		List<CatalogSnapshot.CatalogProduct> expected = new ArrayList<>();
+		for (CatalogSnapshot.CatalogProduct product : PRODUCTS) {
+			if (!replacements.containsKey(product.id())) {
+				expected.add(product);
+			}
+		}
+		replacements.values().stream().filter(Objects::nonNull).forEach(expected::add);
+		ProductSearchIndex rebuilt = ProductSearchIndex.build(expected);
+		for (String query : List.of("süt", "peynir", "kasar", "beyaz", "ampul", "cikol", "kakao", "pinar")) {
+			List<ProductSearchIndex.Hit> expectedHits = rebuilt.search(query);
+			List<ProductSearchIndex.Hit> hits = updated.search(query);
+			assertEquals(ids(expectedHits), ids(hits), query);
+			for (int i = 0; i < hits.size(); i++) {
+				assertEquals(expectedHits.get(i).score(), hits.get(i).score(), 1e-9, query);
+			}
+		}
+		// The original index is left as it was.
+		assertEquals(List.of(4L), ids(original.search("ampul")));
+		assertEquals(Set.of(1L, 2L), Set.copyOf(ids(original.search("sut"))));
+	}
+
+	@Test
+	void unchangedProductsKeepTheSameIndex() {
+		ProductSearchIndex index = ProductSearchIndex.build(PRODUCTS);
+		assertSame(index, index.withProducts(Map.of(1L, PRODUCTS.get(0))));
+		assertSame(index, index.withProducts(Collections.singletonMap(99L, null)));
+	}
+
+	private static List<Long> ids(List<ProductSearchIndex.Hit> hits) {
+		return hits.stream().map(ProductSearchIndex.Hit::productId).toList();
+	}
+
+	private static CatalogSnapshot.CatalogProduct product(Long id, String name, String code, String description,
+														  String brand) {
+		Object[] row = {id, name, description, 100.0, 120.0, 0.2, code, null, 10, true, brand != null ? id : null,
+				brand, null, null, null, null};
+		return new CatalogSnapshot.CatalogProduct(id, name, (Long) row[10], null, true, 10,
+				ProductService.toProductResponse(row, List.of()));
+	}
+}
@@ -0,0 +1,191 @@
+package com.b2bshop.project.service;
+
+import com.b2bshop.project.dto.*;
+import com.b2bshop.project.model.OrderStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Compares bytes allocated by the calling thread to build and serialise list responses as HashMap trees (the
+// previous approach) and as typed records, for synthetic product and order rows. Records must allocate at most
+// MAX_RECORD_SHARE of what the maps do; well under that is expected, since records drop the map entries, tables
+// and nested maps, so anything close to it means the typed responses regressed.
+class ResponseAllocationBenchmarkTest {
+
+	private static final int PRODUCTS = 5_000;
+	private static final int ORDERS = 1_000;
+	private static final int ITEMS_PER_ORDER = 5;
+	private static final int ROUNDS = 5;
+	private static final double MAX_RECORD_SHARE = 0.8;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void productListAllocatesLessWithRecords() {
+		List<Object[]> rows = productRows();
+		long maps = measure(() -> rows.stream().map(ResponseAllocationBenchmarkTest::toProductMap).toList());
+		long records = measure(() -> rows.stream()
+				.map(row -> ProductService.toProductResponse(row,
+						List.of(ProductService.toImageResponse(row[0], "https://cdn/" + row[0], true))))
+				.toList());
+		assertAllocatesLess("GET /api/product", maps, records);
+	}
+
+	@Test
+	void orderListAllocatesLessWithRecords() {
+		long maps = measure(ResponseAllocationBenchmarkTest::orderMaps);
+		long records = measure(ResponseAllocationBenchmarkTest::orderRecords);
+		assertAllocatesLess("GET /api/order", maps, records);
+	}
+
+	private long measure(Supplier<List<?>> build) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		// warm-up so class loading and JIT do not count towards the first variant
+		serialise(build.get());
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = threads.getCurrentThreadAllocatedBytes();
+			serialise(build.get());
+			best = Math.min(best, threads.getCurrentThreadAllocatedBytes() - before);
+		}
+		return best;
+	}
+
+	private void serialise(List<?> items) {
+		try {
+			objectMapper.writeValue(OutputStream.nullOutputStream(), items);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void assertAllocatesLess(String endpoint, long maps, long records) {
+		assertTrue(records <= maps * MAX_RECORD_SHARE, () -> String.format(
+				"%s: records allocated %,d bytes, more than %.0f%% of the %,d bytes allocated with maps", endpoint,
+				records, 100 * MAX_RECORD_SHARE, maps));
+	}
+
+	private static List<Object[]> productRows() {
+		List<Object[]> rows = new ArrayList<>(PRODUCTS);
+		for (long id = 1; id <= PRODUCTS; id++) {
+			rows.add(new Object[]{id, "Product " + id, "Description of product " + id, 100.0 + id, 120.0 + id, 0.2,
+					"P" + id, "869" + id, (int) (id % 50), true, id % 20, "Brand " + id % 20, id % 40,
+					"Category " + id % 40, id % 5 == 0 ? null : 1000L, "Root"});
+		}
+		return rows;
+	}
+
+	private static Map<String, Object> toProductMap(Object[] row) {
+		Map<String, Object> productMap = new HashMap<>();
+		productMap.put("id", row[0]);
+		productMap.put("name", row[1]);
+		productMap.put("description", row[2]);
+		productMap.put("salesPrice", row[3]);
+		productMap.put("grossPrice", row[4]);
+		productMap.put("vatRate", row[5]);
+		productMap.put("code", row[6]);
+		productMap.put("gtin", row[7]);
+		productMap.put("stock", row[8]);
+		productMap.put("active", row[9]);
+		Map<String, Object> brandMap = new HashMap<>();
+		brandMap.put("id", row[10]);
+		brandMap.put("name", row[11]);
+		productMap.put("brand", brandMap);
+		List<Map<String, Object>> images = new ArrayList<>();
+		images.add(imageMap(row[0]));
+		productMap.put("images", images);
+		Map<String, Object> categoryMap = new HashMap<>();
+		categoryMap.put("id", row[12]);
+		categoryMap.put("name", row[13]);
+		Map<String, Object> parentCategoryMap = null;
+		if (row[14] != null) {
+			parentCategoryMap = new HashMap<>();
+			parentCategoryMap.put("id", row[14]);
+			parentCategoryMap.put("name", row[15]);
+		}
+		categoryMap.put("parentCategory", parentCategoryMap);
+		productMap.put("category", categoryMap);
+		return productMap;
+	}
+
+	private static Map<String, Object> imageMap(Object id) {
+		Map<String, Object> image = new HashMap<>();
+		image.put("id", id);
+		image.put("url", "https://cdn/" + id);
+		image.put("isThumbnail", true);
+		return image;
+	}
+
+	private static List<Map<String, Object>> orderMaps() {
+		List<Map<String, Object>> orders = new ArrayList<>(ORDERS);
+		for (long orderId = 1; orderId <= ORDERS; orderId++) {
+			Map<String, Object> order = new HashMap<>();
+			order.put("orderId", orderId);
+			order.put("orderNumber", "ORD-" + orderId);
+			order.put("orderNote", "note");
+			order.put("orderDate", new Date(orderId));
+			order.put("createdById", 7L);
+			order.put("createdByName", "Buyer");
+			order.put("totalPrice", 600.0);
+			order.put("withoutTaxPrice", 500.0);
+			order.put("totalTax", 100.0);
+			Map<String, Object> status = new HashMap<>();
+			status.put("id", OrderStatus.CREATED.getId());
+			status.put("status", OrderStatus.CREATED.getStatus());
+			order.put("orderStatus", status);
+			List<Map<String, Object>> items = new ArrayList<>();
+			for (long itemId = 1; itemId <= ITEMS_PER_ORDER; itemId++) {
+				Map<String, Object> item = new HashMap<>();
+				item.put("id", orderId * 10 + itemId);
+				item.put("name", "Item " + itemId);
+				item.put("grossPrice", 120.0);
+				item.put("salesPrice", 100.0);
+				item.put("quantity", 1);
+				item.put("refProductId", itemId);
+				List<Map<String, Object>> images = new ArrayList<>();
+				images.add(imageMap(itemId));
+				item.put("images", images);
+				items.add(item);
+			}
+			order.put("orderItems", items);
+			order.put("invoiceAddress", addressMap(orderId));
+			order.put("receiverAddress", addressMap(orderId));
+			Map<String, Object> customer = new HashMap<>();
+			customer.put("id", 3L);
+			customer.put("name", "Customer");
+			order.put("customer", customer);
+			orders.add(order);
+		}
+		return orders;
+	}
+
+	private static Map<String, Object> addressMap(long id) {
+		Map<String, Object> address = new HashMap<>();
+		address.put("id", id);
+		address.put("address", "Street " + id);
+		address.put("city", "Istanbul");
+		return address;
+	}
+
+	private static List<OrderResponse> orderRecords() {
+		List<OrderResponse> orders = new ArrayList<>(ORDERS);
+		for (long orderId = 1; orderId <= ORDERS; orderId++) {
+			List<OrderItemResponse> items = new ArrayList<>();
+			for (long itemId = 1; itemId <= ITEMS_PER_ORDER; itemId++) {
+				items.add(new OrderItemResponse(orderId * 10 + itemId, "Item " + itemId, 120.0, 100.0, 1, itemId,
+						List.of(new ImageResponse(itemId, "https://cdn/" + itemId, true))));
+			}
+			orders.add(new OrderResponse(orderId, "ORD-" + orderId, "note", new Date(orderId), 7L, "Buyer", 600.0,
+					500.0, 100.0, OrderStatusResponse.from(OrderStatus.CREATED), items,
+					new AddressSummary(orderId, "Street " + orderId, "Istanbul"),
+					new AddressSummary(orderId, "Street " + orderId, "Istanbul"), new NamedRef(3L, "Customer")));
+		}
+		return orders;
+	}
+}
@@ -0,0 +1,67 @@
+package com.b2bshop.project.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvReaderTest {
+
+	@Test
+	void readsPlainRecords() throws IOException {
+		assertEquals(List.of(List.of("code", "name"), List.of("A-1", "Süt"), List.of("A-2", "")),
+				readAll("code,name\nA-1,Süt\nA-2,\n"));
+	}
+
+	@Test
+	void quotedFieldsKeepCommasAndEscapedQuotes() throws IOException {
+		assertEquals(List.of(List.of("A-1", "Peynir, beyaz", "15\" tepsi", "")),
+				readAll("A-1,\"Peynir, beyaz\",\"15\"\" tepsi\",\"\""));
+	}
+
+	@Test
+	void quotedFieldsKeepLineBreaks() throws IOException {
+		CsvReader reader = new CsvReader(new StringReader(
+				"code,description\r\nA-1,\"first\r\nsecond\nthird\"\r\nA-2,x\r\n"));
+		assertEquals(List.of("code", "description"), reader.next());
+		assertEquals(List.of("A-1", "first\r\nsecond\nthird"), reader.next());
+		assertEquals(2, reader.recordLine());
+		assertEquals(List.of("A-2", "x"), reader.next());
+		assertEquals(5, reader.recordLine());
+		assertNull(reader.next());
+	}
+
+	@Test
+	void crlfAndBlankLinesSeparateRecords() throws IOException {
+		assertEquals(List.of(List.of("a", "b"), List.of("c", "d"), List.of("e", "f")),
+				readAll("a,b\r\n\r\nc,d\re,f"));
+	}
+
+	@Test
+	void skipsLeadingByteOrderMark() throws IOException {
+		assertEquals(List.of(List.of("code", "name"), List.of("\uFEFFA-1", "x")),
+				readAll("\uFEFFcode,name\r\n\uFEFFA-1,x\r\n"));
+		assertEquals(List.of(List.of("code")), readAll("\uFEFF\"code\""));
+		assertEquals(List.of(), readAll("\uFEFF"));
+	}
+
+	@Test
+	void rejectsUnterminatedQuote() {
+		IOException e = assertThrows(IOException.class, () -> readAll("a,b\nc,\"d\n"));
+		assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+	}
+
+	private static List<List<String>> readAll(String csv) throws IOException {
+		CsvReader reader = new CsvReader(new StringReader(csv));
+		List<List<String>> records = new ArrayList<>();
+		List<String> record;
+		while ((record = reader.next()) != null) {
+			records.add(record);
+		}
+		return records;
+	}
+}